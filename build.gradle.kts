@@ -91,6 +91,11 @@ sourceSets {
             compileClasspath = sourceSets.main.get().compileClasspath
         }
     }
+    // JMH benchmarks, run with "gradlew jmh". Reuses the test environment bootstrap from the test source set
+    create("jmh") {
+        compileClasspath += sourceSets.main.get().output + sourceSets.test.get().output
+        runtimeClasspath += sourceSets.main.get().output + sourceSets.test.get().output
+    }
 }
 
 val shade: Configuration by configurations.creating
@@ -102,6 +107,12 @@ configurations {
     testImplementation {
         extendsFrom(getByName("minecraft"))
     }
+    getByName("jmhImplementation") {
+        extendsFrom(testImplementation.get())
+    }
+    getByName("jmhRuntimeOnly") {
+        extendsFrom(testRuntimeOnly.get())
+    }
 }
 
 repositories {
@@ -144,6 +155,9 @@ dependencies {
     testImplementation("org.spongepowered:launchwrappertestsuite:1.0-SNAPSHOT")
     compileOnly("io.github.opencubicchunks:cubicchunks-api:1.12.2-0.0-SNAPSHOT")
 
+    "jmhImplementation"("org.openjdk.jmh:jmh-core:1.36")
+    "jmhAnnotationProcessor"("org.openjdk.jmh:jmh-generator-annprocess:1.36")
+
     if (hasCubicChunksBuild) {
         testImplementation("io.github.opencubicchunks:cubicchunks-api:1.12.2-0.0-SNAPSHOT")
         runtimeOnly("io.github.opencubicchunks:cubicchunks:1.12.2-0.0-SNAPSHOT")
@@ -191,6 +205,8 @@ mixinGen {
 tasks {
     test {
         systemProperty("lwts.tweaker", "cubicchunks.tweaker.MixinTweakerServer")
+        // set to true to regenerate world generation regression golden files
+        systemProperty("cubicgen.regression.update", System.getProperty("cubicgen.regression.update", "false"))
         jvmArgs("-Dmixin.debug.verbose=true", //verbose mixin output for easier debugging of mixins
                 "-Dmixin.checks.interfaces=true", //check if all interface methods are overriden in mixin
                 "-Dmixin.env.remapRefMap=true")
@@ -199,6 +215,19 @@ tasks {
         }
     }
 
+    val jmh by creating(JavaExec::class) {
+        group = "verification"
+        description = "Runs JMH benchmarks. Extra JMH arguments can be passed with -PjmhArgs=\"...\""
+        dependsOn("jmhClasses")
+        classpath = sourceSets["jmh"].runtimeClasspath
+        mainClass.set("org.openjdk.jmh.Main")
+        jvmArgs("-Djava.awt.headless=true")
+        val jmhArgs = project.findProperty("jmhArgs") as String?
+        if (jmhArgs != null) {
+            args(jmhArgs.split(Regex("\\s+")))
+        }
+    }
+
     compileJava {
         options.isDeprecation = true
         options.compilerArgs.add("-Xlint:unchecked")
@@ -0,0 +1,121 @@
+/*
+ *  This file is part of Cubic World Generation, licensed under the MIT License (MIT).
+ *
+ *  Copyright (c) 2015-2020 contributors
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ */
+package io.github.opencubicchunks.cubicchunks.cubicgen.benchmark;
+
+import io.github.opencubicchunks.cubicchunks.cubicgen.cache.HashCacheDoubles;
+import io.github.opencubicchunks.cubicchunks.cubicgen.common.biome.IBiomeBlockReplacer;
+import io.github.opencubicchunks.cubicchunks.cubicgen.customcubic.CustomCubicWorldType;
+import io.github.opencubicchunks.cubicchunks.cubicgen.customcubic.CustomGeneratorSettings;
+import io.github.opencubicchunks.cubicchunks.cubicgen.customcubic.builder.BiomeSource;
+import io.github.opencubicchunks.cubicchunks.cubicgen.customcubic.builder.IBuilder;
+import io.github.opencubicchunks.cubicchunks.cubicgen.customcubic.builder.NoiseSource;
+import io.github.opencubicchunks.cubicchunks.cubicgen.testutil.MinecraftEnvironment;
+import net.minecraft.util.math.Vec3i;
+import net.minecraft.world.World;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the building blocks of terrain generation: noise builders, value caches and biome lookups.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 3)
+@Measurement(iterations = 5, time = 3)
+@Fork(1)
+@State(Scope.Thread)
+public class NoiseBenchmark {
+
+    private static final Vec3i CUBE_SCALE = new Vec3i(4, 8, 4);
+
+    private IBuilder terrainNoise;
+    private HashCacheDoubles<Vec3i> hashCache;
+    private Vec3i[] cacheKeys;
+    private BiomeSource biomeSource;
+    private int index;
+
+    @Setup public void setUp() {
+        MinecraftEnvironment.initCubicBiomes();
+        // similar to the selector, low and high noise of the default preset
+        IBuilder selector = perlin(1, 8).mul(25.0 / 6).add(0.5).clamp(0, 1);
+        IBuilder low = perlin(2, 16);
+        IBuilder high = perlin(3, 16);
+        terrainNoise = selector.lerp(low, high);
+
+        hashCache = HashCacheDoubles.create(16 * 16 * 16, v -> v.getX() * 31.0 + v.getY() * 17.0 + v.getZ());
+        // a cube worth of lattice points, with half of them repeated
+        cacheKeys = new Vec3i[150];
+        for (int i = 0; i < cacheKeys.length; i++) {
+            int j = i % 75;
+            cacheKeys[i] = new Vec3i(j % 5, j / 25, (j / 5) % 5);
+        }
+
+        CustomGeneratorSettings settings = CustomGeneratorSettings.defaults();
+        World world = MinecraftEnvironment.createWorld(TerrainGeneratorBenchmark.SEED, "");
+        biomeSource = new BiomeSource(world, settings.createBiomeBlockReplacerConfig(),
+                CustomCubicWorldType.makeBiomeProvider(world, settings), 2);
+    }
+
+    private static IBuilder perlin(long seed, int octaves) {
+        return NoiseSource.perlin().seed(seed).normalizeTo(-1, 1).frequency(684.412 / 8.0 / 32768.0).octaves(octaves).create();
+    }
+
+    @Benchmark public void forEachScaledCube(Blackhole bh) {
+        int cubeX = index++;
+        terrainNoise.forEachScaled(new Vec3i(cubeX * 4, 0, 0), new Vec3i(cubeX * 4 + 4, 2, 4), CUBE_SCALE,
+                (x, y, z, dx, dy, dz, v) -> bh.consume(v));
+    }
+
+    @Benchmark public double[] fillGridCube() {
+        int cubeX = index++;
+        double[] lattice = new double[5 * 3 * 5];
+        terrainNoise.fillGrid(lattice, cubeX * 16, 0, 0, 5, 3, 5, 4, 8, 4);
+        return lattice;
+    }
+
+    @Benchmark public double hashCacheDoublesGet() {
+        return hashCache.get(cacheKeys[index++ % cacheKeys.length]);
+    }
+
+    @Benchmark public double biomeSourceHeight() {
+        int i = index++;
+        return biomeSource.getHeight(i * 4, 0, 0) + biomeSource.getVolatility(i * 4, 0, 0);
+    }
+
+    @Benchmark public List<IBiomeBlockReplacer>[] biomeSourceReplacersForCube() {
+        return biomeSource.getReplacersForCube(index++, 0);
+    }
+}
@@ -0,0 +1,103 @@
+/*
+ *  This file is part of Cubic World Generation, licensed under the MIT License (MIT).
+ *
+ *  Copyright (c) 2015-2020 contributors
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ */
+package io.github.opencubicchunks.cubicchunks.cubicgen.benchmark;
+
+import io.github.opencubicchunks.cubicchunks.api.worldgen.CubePrimer;
+import io.github.opencubicchunks.cubicchunks.cubicgen.customcubic.CustomTerrainGenerator;
+import io.github.opencubicchunks.cubicchunks.cubicgen.flat.FlatTerrainProcessor;
+import io.github.opencubicchunks.cubicchunks.cubicgen.preset.FlatGeneratorSettings;
+import io.github.opencubicchunks.cubicchunks.cubicgen.testutil.MinecraftEnvironment;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures how many cubes per second the terrain generators can generate.
+ * <p>
+ * Each invocation generates a cube that hasn't been generated before, walking along the x axis in 16 cube tall columns
+ * around sea level, so both caches and the fast path for cubes far from the surface are used like in a real world.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class TerrainGeneratorBenchmark {
+
+    static final long SEED = 42;
+
+    @State(Scope.Thread)
+    public static class CustomGenerator {
+
+        @Param({
+                "default",
+                "/assets/cubicworldgen/presets/test3_CC808_ZekkensHoneycombUnderground_V6.json5",
+                "/assets/cubicworldgen/presets/test4_CC80X_IslandsOre_V6.json5",
+                "/assets/cubicworldgen/presets/test5_CC77X_WozatRealisticMountains_V6.json5"
+        })
+        public String preset;
+
+        CustomTerrainGenerator generator;
+        int cubeIndex;
+
+        @Setup public void setUp() {
+            String json = "default".equals(preset) ? "" : MinecraftEnvironment.readResource(preset);
+            generator = MinecraftEnvironment.createTerrainGenerator(json, SEED);
+            cubeIndex = 0;
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class FlatGenerator {
+
+        FlatTerrainProcessor generator;
+        int cubeIndex;
+
+        @Setup public void setUp() {
+            MinecraftEnvironment.init();
+            generator = new FlatTerrainProcessor(MinecraftEnvironment.createWorld(SEED, new FlatGeneratorSettings().toJson()));
+            cubeIndex = 0;
+        }
+    }
+
+    @Benchmark public CubePrimer customGenerateCube(CustomGenerator state) {
+        int i = state.cubeIndex++;
+        return state.generator.generateCube(i >> 4, (i & 15) - 8, 0);
+    }
+
+    @Benchmark public CubePrimer flatGenerateCube(FlatGenerator state) {
+        int i = state.cubeIndex++;
+        return state.generator.generateCube(i >> 4, (i & 15) - 8, 0);
+    }
+}
@@ -25,6 +25,7 @@ package io.github.opencubicchunks.cubicchunks.cubicgen;
 
 import javax.annotation.ParametersAreNonnullByDefault;
 
+import io.github.opencubicchunks.cubicchunks.cubicgen.cache.CachePolicy;
 import mcp.MethodsReturnNonnullByDefault;
 import net.minecraftforge.common.config.Config;
 import net.minecraftforge.common.config.ConfigManager;
@@ -50,6 +51,51 @@ public class CustomCubicConfig {
     @Config.Comment("GUI scroll animation time (not in any specific unit, more = slower)")
     public static int guiScrollAnimationTime = 300;
 
+    @Config.LangKey("cubicgen.config.generation_threads")
+    @Config.Comment("Amount of threads used to generate terrain when many cubes are requested at once. "
+            + "0 uses one thread for each available processor. Requires restart.")
+    @Config.RangeInt(min = 0, max = 256)
+    public static int generationThreads = 0;
+
+    @Config.LangKey("cubicgen.config.lattice_cache_size")
+    @Config.Comment("Amount of terrain noise samples cached by each generator thread. Samples on cube borders are shared "
+            + "with neighboring cubes, so caching them avoids computing the same noise again. 0 disables the cache. "
+            + "Applies to worlds loaded after the change.")
+    @Config.RangeInt(min = 0, max = 1 << 20)
+    public static int latticeCacheSize = 4096;
+
+    @Config.LangKey("cubicgen.config.cache_policy")
+    @Config.Comment("How biome and 2d noise caches are organized. DIRECT_MAPPED is the fastest for lookups, but keys that "
+            + "map to the same slot evict each other. TWO_WAY and FOUR_WAY set-associative caches avoid that for a small "
+            + "cost. LRU checks every entry and is only suitable for small caches. Can be overridden per preset using the "
+            + "\"cubicgen:cache_policy\" replacer config option. Applies to worlds loaded after the change.")
+    public static CachePolicy cachePolicy = CachePolicy.DIRECT_MAPPED;
+
+    @Config.LangKey("cubicgen.config.biome_chunk_cache_size")
+    @Config.Comment("Amount of chunk columns of biomes and biome block replacers cached by each generator thread. "
+            + "Can be overridden per preset using the \"cubicgen:biome_chunk_cache_size\" replacer config option.")
+    @Config.RangeInt(min = 1, max = 1 << 16)
+    public static int biomeChunkCacheSize = 9;
+
+    @Config.LangKey("cubicgen.config.biome_section_cache_size")
+    @Config.Comment("Amount of 4x4 block biome height and volatility values cached by each generator thread, "
+            + "rounded up to whole 32x32 block regions. "
+            + "Can be overridden per preset using the \"cubicgen:biome_section_cache_size\" replacer config option.")
+    @Config.RangeInt(min = 1, max = 1 << 20)
+    public static int biomeSectionCacheSize = 256;
+
+    @Config.LangKey("cubicgen.config.noise_2d_cache_size")
+    @Config.Comment("Amount of 2d terrain noise values cached by each generator thread. "
+            + "Can be overridden per preset using the \"cubicgen:noise_2d_cache_size\" replacer config option.")
+    @Config.RangeInt(min = 1, max = 1 << 20)
+    public static int noise2dCacheSize = 256;
+
+    @Config.LangKey("cubicgen.config.column_data_store")
+    @Config.Comment("Store biomes and 2d terrain generator inputs of generated cube columns in the world save folder, "
+            + "so they don't have to be computed again after a restart or when generating cubes above or below. "
+            + "Uses about 860 kB per 512x512 block region for each preset and cube area. Applies to worlds loaded after the change.")
+    public static boolean columnDataStore = false;
+
     @SubscribeEvent
     public static void onConfigChanged(ConfigChangedEvent.OnConfigChangedEvent event) {
         if (event.getModID().equals(CustomCubicMod.MODID)) {
@@ -47,6 +47,7 @@ import io.github.opencubicchunks.cubicchunks.cubicgen.customcubic.populator.Snow
 import io.github.opencubicchunks.cubicchunks.cubicgen.customcubic.populator.SwampDecorator;
 import io.github.opencubicchunks.cubicchunks.cubicgen.customcubic.populator.TaigaDecorator;
 import io.github.opencubicchunks.cubicchunks.cubicgen.flat.FlatCubicWorldType;
+import io.github.opencubicchunks.cubicchunks.cubicgen.profiler.CommandCubicGenProfile;
 import mcp.MethodsReturnNonnullByDefault;
 import net.minecraft.command.CommandBase;
 import net.minecraft.command.CommandException;
@@ -55,6 +56,7 @@ import net.minecraft.entity.player.EntityPlayer;
 import net.minecraft.server.MinecraftServer;
 import net.minecraft.util.ResourceLocation;
 import net.minecraft.util.text.TextComponentString;
+import net.minecraft.world.World;
 import net.minecraft.world.WorldServer;
 import net.minecraft.world.biome.Biome;
 import net.minecraft.world.biome.BiomeBeach;
@@ -76,6 +78,7 @@ import net.minecraft.world.biome.BiomeSwamp;
 import net.minecraft.world.biome.BiomeTaiga;
 import net.minecraftforge.common.DimensionManager;
 import net.minecraftforge.event.RegistryEvent;
+import net.minecraftforge.event.world.WorldEvent;
 import net.minecraftforge.fml.common.Mod;
 import net.minecraftforge.fml.common.event.FMLPostInitializationEvent;
 import net.minecraftforge.fml.common.event.FMLPreInitializationEvent;
@@ -161,6 +164,9 @@ public class CustomCubicMod {
                 }
             }
         });
+
+        PermissionAPI.registerNode(CommandCubicGenProfile.PERMISSION, DefaultPermissionLevel.OP, "Allows to run the /cubicgen_profile command");
+        evt.registerServerCommand(new CommandCubicGenProfile());
     }
 
     @Mod.EventHandler
@@ -168,6 +174,30 @@ public class CustomCubicMod {
         CubicBiome.postInit();
     }
 
+    @SubscribeEvent
+    public static void onWorldLoad(WorldEvent.Load evt) {
+        World world = evt.getWorld();
+        if (world.isRemote || !((ICubicWorld) world).isCubicWorld()) {
+            return;
+        }
+        ICubeGenerator cubeGenerator = ((ICubicWorldServer) world).getCubeGenerator();
+        if (cubeGenerator instanceof CustomTerrainGenerator) {
+            ((CustomTerrainGenerator) cubeGenerator).prepareStructures();
+        }
+    }
+
+    @SubscribeEvent
+    public static void onWorldUnload(WorldEvent.Unload evt) {
+        World world = evt.getWorld();
+        if (world.isRemote || !((ICubicWorld) world).isCubicWorld()) {
+            return;
+        }
+        ICubeGenerator cubeGenerator = ((ICubicWorldServer) world).getCubeGenerator();
+        if (cubeGenerator instanceof CustomTerrainGenerator) {
+            ((CustomTerrainGenerator) cubeGenerator).close();
+        }
+    }
+
     @SubscribeEvent
     public static void registerRegistries(RegistryEvent.NewRegistry evt) {
         CubicBiome.init();
@@ -41,12 +41,17 @@ public class StructureGenUtil {
     public static boolean scanWallsForBlock(CubePrimer cube,
             StructureBoundingBox boundingBox,
             Predicate<IBlockState> predicate) {
-        int minX = boundingBox.minX;
-        int minY = boundingBox.minY;
-        int minZ = boundingBox.minZ;
-        int maxX = boundingBox.maxX;
-        int maxY = boundingBox.maxY;
-        int maxZ = boundingBox.maxZ;
+        return scanWallsForBlock(cube, boundingBox.minX, boundingBox.minY, boundingBox.minZ,
+                boundingBox.maxX, boundingBox.maxY, boundingBox.maxZ, predicate);
+    }
+
+    /**
+     * Same as {@link #scanWallsForBlock(CubePrimer, StructureBoundingBox, Predicate)}, with min coordinates inclusive and
+     * max coordinates exclusive. Doesn't need a bounding box allocated for each check.
+     */
+    public static boolean scanWallsForBlock(CubePrimer cube,
+            int minX, int minY, int minZ, int maxX, int maxY, int maxZ,
+            Predicate<IBlockState> predicate) {
         // xy planes
         for (int x = minX; x < maxX; ++x) {
             for (int y = minY; y < maxY; ++y) {
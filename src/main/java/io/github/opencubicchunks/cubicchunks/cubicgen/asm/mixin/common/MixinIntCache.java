@@ -0,0 +1,57 @@
+/*
+ *  This file is part of Cubic World Generation, licensed under the MIT License (MIT).
+ *
+ *  Copyright (c) 2015-2020 contributors
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ */
+package io.github.opencubicchunks.cubicchunks.cubicgen.asm.mixin.common;
+
+import io.github.opencubicchunks.cubicchunks.cubicgen.common.biome.ThreadLocalIntCache;
+import net.minecraft.world.gen.layer.IntCache;
+import org.spongepowered.asm.mixin.Mixin;
+import org.spongepowered.asm.mixin.injection.At;
+import org.spongepowered.asm.mixin.injection.Inject;
+import org.spongepowered.asm.mixin.injection.callback.CallbackInfo;
+import org.spongepowered.asm.mixin.injection.callback.CallbackInfoReturnable;
+
+/**
+ * Makes {@link IntCache} use the per-thread pool of {@link ThreadLocalIntCache} while a thread generates biomes with
+ * {@code CubicBiomeProvider}. All other callers, including vanilla and other mods, keep using the global vanilla pool.
+ */
+@Mixin(IntCache.class)
+public class MixinIntCache {
+
+    @Inject(method = "getIntCache", at = @At("HEAD"), cancellable = true)
+    private static void onGetIntCache(int size, CallbackInfoReturnable<int[]> cir) {
+        ThreadLocalIntCache cache = ThreadLocalIntCache.getActive();
+        if (cache != null) {
+            cir.setReturnValue(cache.getIntCache(size));
+        }
+    }
+
+    @Inject(method = "resetIntCache", at = @At("HEAD"), cancellable = true)
+    private static void onResetIntCache(CallbackInfo ci) {
+        ThreadLocalIntCache cache = ThreadLocalIntCache.getActive();
+        if (cache != null) {
+            cache.resetIntCache();
+            ci.cancel();
+        }
+    }
+}
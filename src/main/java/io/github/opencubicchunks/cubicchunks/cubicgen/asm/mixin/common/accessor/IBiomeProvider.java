@@ -23,6 +23,7 @@
  */
 package io.github.opencubicchunks.cubicchunks.cubicgen.asm.mixin.common.accessor;
 
+import net.minecraft.world.biome.BiomeCache;
 import net.minecraft.world.biome.BiomeProvider;
 import net.minecraft.world.gen.layer.GenLayer;
 import org.spongepowered.asm.mixin.Mixin;
@@ -32,4 +33,5 @@ import org.spongepowered.asm.mixin.gen.Accessor;
 public interface IBiomeProvider {
     @Accessor void setGenBiomes(GenLayer value);
     @Accessor void setBiomeIndexLayer(GenLayer value);
+    @Accessor BiomeCache getBiomeCache();
 }
@@ -0,0 +1,92 @@
+/*
+ *  This file is part of Cubic World Generation, licensed under the MIT License (MIT).
+ *
+ *  Copyright (c) 2015-2020 contributors
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ */
+package io.github.opencubicchunks.cubicchunks.cubicgen.cache;
+
+import mcp.MethodsReturnNonnullByDefault;
+
+import java.util.Locale;
+
+import javax.annotation.Nullable;
+import javax.annotation.ParametersAreNonnullByDefault;
+
+/**
+ * How entries of a fixed size cache are organized. The cache is split into sets of {@link #ways(int)} entries, and the hash
+ * of a key selects the set. Within a set the least recently used entry is replaced.
+ * <p>
+ * Direct-mapped caches are the fastest, but two keys that map to the same slot evict each other every time they
+ * are used alternately. Set-associative caches avoid that at the cost of checking a few more keys on each lookup.
+ */
+@ParametersAreNonnullByDefault
+@MethodsReturnNonnullByDefault
+public enum CachePolicy {
+    DIRECT_MAPPED(1),
+    TWO_WAY(2),
+    FOUR_WAY(4),
+    /**
+     * Fully associative, each lookup checks every entry. Only suitable for small caches.
+     */
+    LRU(0);
+
+    private final int ways;
+
+    CachePolicy(int ways) {
+        this.ways = ways;
+    }
+
+    /**
+     * @return amount of entries in each set for a cache of the given size
+     */
+    public int ways(int size) {
+        return ways == 0 ? Math.max(size, 1) : Math.max(1, Math.min(ways, size));
+    }
+
+    /**
+     * @return amount of sets for a cache of the given size. Size is rounded down to a multiple of {@link #ways(int)}.
+     */
+    public int sets(int size) {
+        return Math.max(1, size / ways(size));
+    }
+
+    /**
+     * Parses a policy name, case insensitive. Accepts enum constant names and "direct", "2way", "4way" and "lru".
+     */
+    @Nullable
+    public static CachePolicy parse(String name) {
+        switch (name.toLowerCase(Locale.ROOT).replace("-", "_")) {
+            case "direct":
+            case "direct_mapped":
+                return DIRECT_MAPPED;
+            case "2way":
+            case "two_way":
+                return TWO_WAY;
+            case "4way":
+            case "four_way":
+                return FOUR_WAY;
+            case "lru":
+                return LRU;
+            default:
+                return null;
+        }
+    }
+}
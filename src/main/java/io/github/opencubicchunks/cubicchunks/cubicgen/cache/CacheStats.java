@@ -0,0 +1,214 @@
+/*
+ *  This file is part of Cubic World Generation, licensed under the MIT License (MIT).
+ *
+ *  Copyright (c) 2015-2020 contributors
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ */
+package io.github.opencubicchunks.cubicchunks.cubicgen.cache;
+
+import blue.endless.jankson.JsonObject;
+import blue.endless.jankson.JsonPrimitive;
+import io.github.opencubicchunks.cubicchunks.cubicgen.profiler.GenerationProfiler;
+import mcp.MethodsReturnNonnullByDefault;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import javax.annotation.ParametersAreNonnullByDefault;
+
+/**
+ * Hit, miss and eviction counters of generator caches, grouped by cache name (for example {@code BiomeSource.biomeDataCache}).
+ * All caches with the same name share the statistics.
+ * <p>
+ * Statistics are only recorded while {@link GenerationProfiler} is enabled. Each thread has its own counters, which are summed
+ * up when a snapshot is requested, so the numbers are approximate while generation is running. Like {@link GenerationProfiler},
+ * reset only starts a new epoch, and each thread clears its own counters when it next records something.
+ */
+@ParametersAreNonnullByDefault
+@MethodsReturnNonnullByDefault
+public final class CacheStats {
+
+    private static final Map<String, CacheStats> caches = new ConcurrentHashMap<>();
+    private static final ThreadLocal<Map<String, Counter>> localCounters = ThreadLocal.withInitial(HashMap::new);
+    // incremented on reset, counters from older epochs are cleared lazily by the thread that owns them
+    private static volatile int epoch = 0;
+
+    private final String name;
+    private final List<Counter> counters = new CopyOnWriteArrayList<>();
+
+    private CacheStats(String name) {
+        this.name = name;
+    }
+
+    /**
+     * Returns the counter for the cache with the given name for the current thread. Caches are expected to be used
+     * only by the thread that created them, so they should get the counter once, when created.
+     * <p>
+     * The counter is registered under the name when it first records something, so a counter that is replaced before
+     * it's used (for example by {@code named()} of a cache) doesn't show up in statistics.
+     */
+    public static Counter counter(String name) {
+        return localCounters.get().computeIfAbsent(name, Counter::new);
+    }
+
+    public static void reset() {
+        epoch++;
+    }
+
+    /**
+     * @return statistics of all caches that have been used since the last reset, sorted by name
+     */
+    public static List<Snapshot> snapshot() {
+        List<Snapshot> result = new ArrayList<>();
+        int currentEpoch = epoch;
+        for (CacheStats stats : caches.values()) {
+            long hits = 0, misses = 0, evictions = 0, recomputeNanos = 0;
+            for (Counter counter : stats.counters) {
+                if (counter.epoch != currentEpoch) {
+                    continue;
+                }
+                hits += counter.hits;
+                misses += counter.misses;
+                evictions += counter.evictions;
+                recomputeNanos += counter.recomputeNanos;
+            }
+            if (hits + misses > 0) {
+                result.add(new Snapshot(stats.name, hits, misses, evictions, recomputeNanos));
+            }
+        }
+        result.sort((a, b) -> a.getName().compareTo(b.getName()));
+        return result;
+    }
+
+    /**
+     * Counters are only written by the thread that owns them, the fields are volatile so that snapshots taken on other
+     * threads see complete values.
+     */
+    public static final class Counter {
+
+        private final String name;
+        private boolean registered;
+        private volatile int epoch;
+        private volatile long hits;
+        private volatile long misses;
+        private volatile long evictions;
+        private volatile long recomputeNanos;
+
+        private Counter(String name) {
+            this.name = name;
+        }
+
+        public void hit() {
+            if (GenerationProfiler.isEnabled()) {
+                update();
+                hits++;
+            }
+        }
+
+        /**
+         * Records a cache miss.
+         *
+         * @param evicted true if a different entry had to be removed to store the new value
+         * @param recomputeStart value returned by {@link GenerationProfiler#start()} before computing the value
+         */
+        public void miss(boolean evicted, long recomputeStart) {
+            if (recomputeStart == 0) {
+                return;
+            }
+            long nanos = System.nanoTime() - recomputeStart;
+            update();
+            recomputeNanos += nanos;
+            misses++;
+            if (evicted) {
+                evictions++;
+            }
+        }
+
+        private void update() {
+            int currentEpoch = CacheStats.epoch;
+            if (!registered) {
+                caches.computeIfAbsent(name, CacheStats::new).counters.add(this);
+                registered = true;
+            } else if (this.epoch == currentEpoch) {
+                return;
+            }
+            this.hits = 0;
+            this.misses = 0;
+            this.evictions = 0;
+            this.recomputeNanos = 0;
+            this.epoch = currentEpoch;
+        }
+    }
+
+    public static final class Snapshot {
+
+        private final String name;
+        private final long hits;
+        private final long misses;
+        private final long evictions;
+        private final long recomputeNanos;
+
+        private Snapshot(String name, long hits, long misses, long evictions, long recomputeNanos) {
+            this.name = name;
+            this.hits = hits;
+            this.misses = misses;
+            this.evictions = evictions;
+            this.recomputeNanos = recomputeNanos;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public long getHits() {
+            return hits;
+        }
+
+        public long getMisses() {
+            return misses;
+        }
+
+        public long getEvictions() {
+            return evictions;
+        }
+
+        public long getRecomputeNanos() {
+            return recomputeNanos;
+        }
+
+        public double getHitRate() {
+            return hits + misses == 0 ? 0 : hits / (double) (hits + misses);
+        }
+
+        public JsonObject toJson() {
+            JsonObject obj = new JsonObject();
+            obj.put("hits", new JsonPrimitive(hits));
+            obj.put("misses", new JsonPrimitive(misses));
+            obj.put("evictions", new JsonPrimitive(evictions));
+            obj.put("hitRate", new JsonPrimitive(getHitRate()));
+            obj.put("recomputeNanos", new JsonPrimitive(recomputeNanos));
+            return obj;
+        }
+    }
+}
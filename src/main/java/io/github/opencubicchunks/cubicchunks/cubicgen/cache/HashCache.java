@@ -23,6 +23,7 @@
  */
 package io.github.opencubicchunks.cubicchunks.cubicgen.cache;
 
+import io.github.opencubicchunks.cubicchunks.cubicgen.profiler.GenerationProfiler;
 import mcp.MethodsReturnNonnullByDefault;
 
 import java.util.function.Function;
@@ -38,6 +39,7 @@ public class HashCache<K, V> {
     private final K[] keys;
     private final ToIntFunction<K> hashFunction;
     private final Function<K, V> source;
+    private CacheStats.Counter stats = CacheStats.counter("HashCache");
 
     @SuppressWarnings("uncecked")
     private HashCache(int size, ToIntFunction<K> hashCode, Function<K, V> source) {
@@ -50,8 +52,13 @@ public class HashCache<K, V> {
     public V get(K key) {
         int index = index(hashFunction.applyAsInt(key));
         if (!key.equals(keys[index])) {
+            long t = GenerationProfiler.start();
+            boolean evicted = keys[index] != null;
             keys[index] = key;
             cache[index] = source.apply(key);
+            stats.miss(evicted, t);
+        } else {
+            stats.hit();
         }
         return cache[index];
     }
@@ -60,6 +67,14 @@ public class HashCache<K, V> {
         return Math.floorMod(hash, cache.length);
     }
 
+    /**
+     * Sets the name under which statistics of this cache are reported, see {@link CacheStats}.
+     */
+    public HashCache<K, V> named(String name) {
+        this.stats = CacheStats.counter(name);
+        return this;
+    }
+
     public static <K, V> HashCache<K, V> create(int size, Function<K, V> source) {
         return create(size, k -> k.hashCode(), source);
     }
@@ -23,6 +23,7 @@
  */
 package io.github.opencubicchunks.cubicchunks.cubicgen.cache;
 
+import io.github.opencubicchunks.cubicchunks.cubicgen.profiler.GenerationProfiler;
 import mcp.MethodsReturnNonnullByDefault;
 
 import java.util.function.ToDoubleFunction;
@@ -38,6 +39,7 @@ public class HashCacheDoubles<K> {
     private final K[] keys;
     private final ToIntFunction<K> hashFunction;
     private final ToDoubleFunction<K> source;
+    private CacheStats.Counter stats = CacheStats.counter("HashCacheDoubles");
 
     @SuppressWarnings("unchecked")
     private HashCacheDoubles(int size, ToIntFunction<K> hashCode, ToDoubleFunction<K> source) {
@@ -50,8 +52,13 @@ public class HashCacheDoubles<K> {
     public double get(K key) {
         int index = index(hashFunction.applyAsInt(key));
         if (!key.equals(keys[index])) {
+            long t = GenerationProfiler.start();
+            boolean evicted = keys[index] != null;
             keys[index] = key;
             cache[index] = source.applyAsDouble(key);
+            stats.miss(evicted, t);
+        } else {
+            stats.hit();
         }
         return cache[index];
     }
@@ -60,6 +67,14 @@ public class HashCacheDoubles<K> {
         return Math.floorMod(hash, cache.length);
     }
 
+    /**
+     * Sets the name under which statistics of this cache are reported, see {@link CacheStats}.
+     */
+    public HashCacheDoubles<K> named(String name) {
+        this.stats = CacheStats.counter(name);
+        return this;
+    }
+
     public static <K> HashCacheDoubles<K> create(int size, ToDoubleFunction<K> source) {
         return create(size, k -> k.hashCode(), source);
     }
@@ -0,0 +1,139 @@
+/*
+ *  This file is part of Cubic World Generation, licensed under the MIT License (MIT).
+ *
+ *  Copyright (c) 2015-2020 contributors
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ */
+package io.github.opencubicchunks.cubicchunks.cubicgen.cache;
+
+import io.github.opencubicchunks.cubicchunks.cubicgen.profiler.GenerationProfiler;
+import mcp.MethodsReturnNonnullByDefault;
+
+import java.util.function.LongToDoubleFunction;
+import java.util.function.LongToIntFunction;
+
+import javax.annotation.ParametersAreNonnullByDefault;
+
+/**
+ * A cache of double values keyed by primitive long. Equivalent to {@link HashCacheDoubles}, but doesn't need
+ * an object allocated for each lookup. Coordinates are expected to be packed into the key by the caller.
+ * <p>
+ * Direct-mapped by default, see {@link CachePolicy} for other ways to organize entries.
+ */
+@ParametersAreNonnullByDefault
+@MethodsReturnNonnullByDefault
+public class LongKeyedDoubleCache {
+
+    private final double[] cache;
+    private final long[] keys;
+    private final boolean[] present;
+    private final LongToIntFunction hashFunction;
+    private final LongToDoubleFunction source;
+    // entries of a set are stored next to each other, most recently used first
+    private final int ways;
+    private final int sets;
+    private CacheStats.Counter stats = CacheStats.counter("LongKeyedDoubleCache");
+
+    private LongKeyedDoubleCache(int size, CachePolicy policy, LongToIntFunction hashCode, LongToDoubleFunction source) {
+        this.ways = policy.ways(size);
+        this.sets = policy.sets(size);
+        this.cache = new double[ways * sets];
+        this.keys = new long[ways * sets];
+        this.present = new boolean[ways * sets];
+        this.hashFunction = hashCode;
+        this.source = source;
+    }
+
+    public double get(long key) {
+        if (ways != 1) {
+            return getAssociative(key);
+        }
+        int index = index(hashFunction.applyAsInt(key));
+        if (!present[index] || keys[index] != key) {
+            long t = GenerationProfiler.start();
+            double value = source.applyAsDouble(key);
+            stats.miss(present[index], t);
+            keys[index] = key;
+            cache[index] = value;
+            present[index] = true;
+            return value;
+        }
+        stats.hit();
+        return cache[index];
+    }
+
+    private double getAssociative(long key) {
+        int start = index(hashFunction.applyAsInt(key)) * ways;
+        int end = start + ways;
+        // entries are never removed, so empty slots are always at the end of a set
+        for (int i = start; i < end && present[i]; i++) {
+            if (keys[i] == key) {
+                double value = cache[i];
+                // move to front
+                System.arraycopy(cache, start, cache, start + 1, i - start);
+                System.arraycopy(keys, start, keys, start + 1, i - start);
+                cache[start] = value;
+                keys[start] = key;
+                stats.hit();
+                return value;
+            }
+        }
+        long t = GenerationProfiler.start();
+        double value = source.applyAsDouble(key);
+        stats.miss(present[end - 1], t);
+        System.arraycopy(cache, start, cache, start + 1, ways - 1);
+        System.arraycopy(keys, start, keys, start + 1, ways - 1);
+        System.arraycopy(present, start, present, start + 1, ways - 1);
+        cache[start] = value;
+        keys[start] = key;
+        present[start] = true;
+        return value;
+    }
+
+    private int index(int hash) {
+        return Math.floorMod(hash, sets);
+    }
+
+    /**
+     * Sets the name under which statistics of this cache are reported, see {@link CacheStats}.
+     */
+    public LongKeyedDoubleCache named(String name) {
+        this.stats = CacheStats.counter(name);
+        return this;
+    }
+
+    public static LongKeyedDoubleCache create(int size, LongToDoubleFunction source) {
+        return create(size, k -> (int) (k ^ (k >>> 32)), source);
+    }
+
+    public static LongKeyedDoubleCache create(int size, LongToIntFunction hashCode, LongToDoubleFunction source) {
+        return create(size, CachePolicy.DIRECT_MAPPED, hashCode, source);
+    }
+
+    /**
+     * @param size maximum amount of entries, rounded down to a multiple of {@link CachePolicy#ways(int)}
+     * @param policy how entries are organized
+     * @param hashCode hash function, selects one of {@link CachePolicy#sets(int)} sets
+     * @param source the source of values
+     */
+    public static LongKeyedDoubleCache create(int size, CachePolicy policy, LongToIntFunction hashCode, LongToDoubleFunction source) {
+        return new LongKeyedDoubleCache(size, policy, hashCode, source);
+    }
+}
@@ -0,0 +1,245 @@
+/*
+ *  This file is part of Cubic World Generation, licensed under the MIT License (MIT).
+ *
+ *  Copyright (c) 2015-2020 contributors
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ */
+package io.github.opencubicchunks.cubicchunks.cubicgen.cache;
+
+import com.google.common.hash.Hashing;
+import io.github.opencubicchunks.cubicchunks.cubicgen.CustomCubicMod;
+import mcp.MethodsReturnNonnullByDefault;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import javax.annotation.Nullable;
+import javax.annotation.ParametersAreNonnullByDefault;
+
+/**
+ * Disk-backed store of 2d generation data of cube columns: biome ids and terrain generator inputs that depend only on x, z,
+ * the preset and the seed. Columns are grouped into region files of 32x32 columns (512x512 blocks) that are memory-mapped,
+ * so reading a stored column is about as fast as reading it from memory.
+ * <p>
+ * Each column is a fixed size record, so columns can be written in any order. A region file is created with all columns
+ * missing, and a column is written the first time it's generated.
+ * <p>
+ * The header of each region file contains the full key the data was generated for, and files with a different key are
+ * cleared when opened, so a directory name collision can't mix data of different presets.
+ */
+@ParametersAreNonnullByDefault
+@MethodsReturnNonnullByDefault
+public class RegionColumnDataStore {
+
+    public static final int BIOMES_SIZE = 16 * 16;
+    /** Amount of values in each array of doubles stored for a column */
+    public static final int VALUES_SIZE = 5 * 5;
+    /** Amount of arrays of doubles stored for a column */
+    public static final int VALUE_ARRAYS = 3;
+
+    private static final int MAGIC = 0x43574732; // "CWG2"
+    private static final int VERSION = 2;
+    private static final int REGION_BITS = 5;
+    private static final int REGION_SIZE = 1 << REGION_BITS;
+    // magic, version, record size and key length, followed by the key
+    private static final int HEADER_FIELDS_SIZE = 16;
+    // present flag, biome ids and values
+    private static final int RECORD_SIZE = 1 + BIOMES_SIZE + VALUE_ARRAYS * VALUES_SIZE * Double.BYTES;
+    private static final int MAX_OPEN_REGIONS = 16;
+
+    private final File directory;
+    private final byte[] key;
+    private final int headerSize;
+    private final int fileSize;
+    private final Map<Long, MappedByteBuffer> regions = new LinkedHashMap<Long, MappedByteBuffer>(MAX_OPEN_REGIONS, 0.75f, true) {
+        @Override protected boolean removeEldestEntry(Map.Entry<Long, MappedByteBuffer> eldest) {
+            if (size() > MAX_OPEN_REGIONS) {
+                eldest.getValue().force();
+                return true;
+            }
+            return false;
+        }
+    };
+    private volatile boolean failed;
+
+    /**
+     * @param directory directory with region files, see {@link #directoryName(String)}
+     * @param key string that uniquely identifies everything stored data depends on, like the preset, the seed and the biome registry
+     */
+    public RegionColumnDataStore(File directory, String key) {
+        this.directory = directory;
+        this.key = key.getBytes(StandardCharsets.UTF_8);
+        this.headerSize = HEADER_FIELDS_SIZE + this.key.length;
+        this.fileSize = headerSize + REGION_SIZE * REGION_SIZE * RECORD_SIZE;
+    }
+
+    /**
+     * Returns a name of a directory for region files of the given key.
+     */
+    public static String directoryName(String key) {
+        return Hashing.sha256().hashString(key, StandardCharsets.UTF_8).toString();
+    }
+
+    /**
+     * Reads stored data of a cube column.
+     *
+     * @return false if the column is not stored, in which case contents of the arrays are undefined
+     */
+    public boolean read(int cubeX, int cubeZ, byte[] biomes, double[]... values) {
+        MappedByteBuffer buffer = getRegion(cubeX, cubeZ);
+        if (buffer == null) {
+            return false;
+        }
+        int offset = recordOffset(cubeX, cubeZ);
+        synchronized (buffer) {
+            if (buffer.get(offset) == 0) {
+                return false;
+            }
+            offset++;
+            for (int i = 0; i < BIOMES_SIZE; i++) {
+                biomes[i] = buffer.get(offset++);
+            }
+            for (double[] array : values) {
+                for (int i = 0; i < VALUES_SIZE; i++) {
+                    array[i] = buffer.getDouble(offset);
+                    offset += Double.BYTES;
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Stores data of a cube column. Biome ids must be in the range of a byte, and there must be {@link #VALUE_ARRAYS} value arrays.
+     */
+    public void write(int cubeX, int cubeZ, byte[] biomes, double[]... values) {
+        MappedByteBuffer buffer = getRegion(cubeX, cubeZ);
+        if (buffer == null) {
+            return;
+        }
+        int offset = recordOffset(cubeX, cubeZ);
+        synchronized (buffer) {
+            int pos = offset + 1;
+            for (int i = 0; i < BIOMES_SIZE; i++) {
+                buffer.put(pos++, biomes[i]);
+            }
+            for (double[] array : values) {
+                for (int i = 0; i < VALUES_SIZE; i++) {
+                    buffer.putDouble(pos, array[i]);
+                    pos += Double.BYTES;
+                }
+            }
+            // mark as present last, so that a partially written column isn't used after a crash
+            buffer.put(offset, (byte) 1);
+        }
+    }
+
+    /**
+     * Writes all changes to disk and closes all region files. Reading and writing after that does nothing, as if the store
+     * failed to open files.
+     * <p>
+     * Mapped buffers can't be unmapped explicitly, the memory is released once they are garbage collected.
+     */
+    public synchronized void close() {
+        for (MappedByteBuffer buffer : regions.values()) {
+            synchronized (buffer) {
+                buffer.force();
+            }
+        }
+        regions.clear();
+        failed = true;
+    }
+
+    @Nullable
+    private synchronized MappedByteBuffer getRegion(int cubeX, int cubeZ) {
+        if (failed) {
+            return null;
+        }
+        int regionX = cubeX >> REGION_BITS;
+        int regionZ = cubeZ >> REGION_BITS;
+        long key = ((long) regionZ << 32) | (regionX & 0xFFFFFFFFL);
+        MappedByteBuffer buffer = regions.get(key);
+        if (buffer == null) {
+            try {
+                buffer = openRegion(new File(directory, "r." + regionX + "." + regionZ + ".bin"));
+            } catch (IOException e) {
+                CustomCubicMod.LOGGER.error("Failed to open 2d generation data region file, disabling 2d data store in " + directory, e);
+                failed = true;
+                return null;
+            }
+            regions.put(key, buffer);
+        }
+        return buffer;
+    }
+
+    private MappedByteBuffer openRegion(File file) throws IOException {
+        File parent = file.getParentFile();
+        if (!parent.isDirectory() && !parent.mkdirs()) {
+            throw new IOException("Couldn't create directory " + parent);
+        }
+        // the mapping stays valid after the file is closed
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            boolean valid = raf.length() == fileSize;
+            if (!valid) {
+                raf.setLength(fileSize);
+            }
+            MappedByteBuffer buffer = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, fileSize);
+            if (valid && isHeaderValid(buffer)) {
+                return buffer;
+            }
+            // new, truncated, from a different version or for a different key: start over with all columns missing
+            for (int i = 0; i < REGION_SIZE * REGION_SIZE; i++) {
+                buffer.put(headerSize + i * RECORD_SIZE, (byte) 0);
+            }
+            buffer.putInt(0, MAGIC);
+            buffer.putInt(4, VERSION);
+            buffer.putInt(8, RECORD_SIZE);
+            buffer.putInt(12, key.length);
+            for (int i = 0; i < key.length; i++) {
+                buffer.put(HEADER_FIELDS_SIZE + i, key[i]);
+            }
+            return buffer;
+        }
+    }
+
+    private boolean isHeaderValid(MappedByteBuffer buffer) {
+        if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION || buffer.getInt(8) != RECORD_SIZE || buffer.getInt(12) != key.length) {
+            return false;
+        }
+        for (int i = 0; i < key.length; i++) {
+            if (buffer.get(HEADER_FIELDS_SIZE + i) != key[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private int recordOffset(int cubeX, int cubeZ) {
+        int localX = cubeX & (REGION_SIZE - 1);
+        int localZ = cubeZ & (REGION_SIZE - 1);
+        return headerSize + (localX | localZ << REGION_BITS) * RECORD_SIZE;
+    }
+}
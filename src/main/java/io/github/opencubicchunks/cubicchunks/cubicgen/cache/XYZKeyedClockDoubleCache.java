@@ -0,0 +1,182 @@
+/*
+ *  This file is part of Cubic World Generation, licensed under the MIT License (MIT).
+ *
+ *  Copyright (c) 2015-2020 contributors
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ */
+package io.github.opencubicchunks.cubicchunks.cubicgen.cache;
+
+import io.github.opencubicchunks.cubicchunks.cubicgen.profiler.GenerationProfiler;
+import mcp.MethodsReturnNonnullByDefault;
+
+import javax.annotation.ParametersAreNonnullByDefault;
+
+/**
+ * A cache of double values keyed by 3 int coordinates, with a fixed capacity. Unlike {@link XYZKeyedDoubleCache},
+ * entries are not overwritten by other keys with the same hash. It uses open addressing with linear probing, and when
+ * the cache is full, an entry that hasn't been used recently is evicted using the clock algorithm.
+ */
+@ParametersAreNonnullByDefault
+@MethodsReturnNonnullByDefault
+public class XYZKeyedClockDoubleCache {
+
+    private final double[] values;
+    // x, y and z of each key are stored next to each other
+    private final int[] keys;
+    private final boolean[] present;
+    // clock reference bit, set when an entry is used, cleared when the clock hand passes it
+    private final boolean[] referenced;
+    private final int mask;
+    private final int capacity;
+    private final XYZKeyedDoubleCache.Source source;
+    private CacheStats.Counter stats = CacheStats.counter("XYZKeyedClockDoubleCache");
+    private int size;
+    private int clockHand;
+
+    private XYZKeyedClockDoubleCache(int capacity, XYZKeyedDoubleCache.Source source) {
+        // keep load factor at most 0.5 so that probe sequences stay short
+        int tableSize = Integer.highestOneBit(Math.max(capacity, 1) * 2 - 1) << 1;
+        this.values = new double[tableSize];
+        this.keys = new int[tableSize * 3];
+        this.present = new boolean[tableSize];
+        this.referenced = new boolean[tableSize];
+        this.mask = tableSize - 1;
+        this.capacity = capacity;
+        this.source = source;
+    }
+
+    public double get(int x, int y, int z) {
+        int index = hash(x, y, z) & mask;
+        while (present[index]) {
+            int keyIndex = index * 3;
+            if (keys[keyIndex] == x && keys[keyIndex + 1] == y && keys[keyIndex + 2] == z) {
+                referenced[index] = true;
+                stats.hit();
+                return values[index];
+            }
+            index = (index + 1) & mask;
+        }
+        long t = GenerationProfiler.start();
+        double value = source.get(x, y, z);
+        boolean evict = capacity != 0 && size >= capacity;
+        stats.miss(evict, t);
+        if (capacity == 0) {
+            return value;
+        }
+        if (evict) {
+            evict();
+            // entries may have moved, find the free slot again
+            index = hash(x, y, z) & mask;
+            while (present[index]) {
+                index = (index + 1) & mask;
+            }
+        }
+        int keyIndex = index * 3;
+        keys[keyIndex] = x;
+        keys[keyIndex + 1] = y;
+        keys[keyIndex + 2] = z;
+        values[index] = value;
+        present[index] = true;
+        referenced[index] = false;
+        size++;
+        return value;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int capacity() {
+        return capacity;
+    }
+
+    private void evict() {
+        while (true) {
+            int index = clockHand;
+            clockHand = (clockHand + 1) & mask;
+            if (!present[index]) {
+                continue;
+            }
+            if (referenced[index]) {
+                referenced[index] = false;
+                continue;
+            }
+            remove(index);
+            return;
+        }
+    }
+
+    /**
+     * Removes entry at the given index, and moves entries after it back so that every entry is still reachable
+     * by linear probing from its hash.
+     */
+    private void remove(int index) {
+        int free = index;
+        int i = index;
+        while (true) {
+            i = (i + 1) & mask;
+            if (!present[i]) {
+                break;
+            }
+            int keyIndex = i * 3;
+            int home = hash(keys[keyIndex], keys[keyIndex + 1], keys[keyIndex + 2]) & mask;
+            // the entry can be moved to the free slot only if the free slot is between its home slot and current slot
+            boolean canMove = free <= i ? (home <= free || home > i) : (home <= free && home > i);
+            if (canMove) {
+                move(i, free);
+                free = i;
+            }
+        }
+        present[free] = false;
+        referenced[free] = false;
+        size--;
+    }
+
+    private void move(int from, int to) {
+        System.arraycopy(keys, from * 3, keys, to * 3, 3);
+        values[to] = values[from];
+        present[to] = true;
+        referenced[to] = referenced[from];
+    }
+
+    private static int hash(int x, int y, int z) {
+        int h = x * 0x9E3779B1 + y * 0x85EBCA77 + z * 0xC2B2AE3D;
+        return h ^ (h >>> 15);
+    }
+
+    /**
+     * Sets the name under which statistics of this cache are reported, see {@link CacheStats}.
+     */
+    public XYZKeyedClockDoubleCache named(String name) {
+        this.stats = CacheStats.counter(name);
+        return this;
+    }
+
+    /**
+     * @param capacity maximum number of entries, 0 disables caching
+     * @param source the source of values
+     */
+    public static XYZKeyedClockDoubleCache create(int capacity, XYZKeyedDoubleCache.Source source) {
+        if (capacity < 0) {
+            throw new IllegalArgumentException("Capacity must not be negative, but was " + capacity);
+        }
+        return new XYZKeyedClockDoubleCache(capacity, source);
+    }
+}
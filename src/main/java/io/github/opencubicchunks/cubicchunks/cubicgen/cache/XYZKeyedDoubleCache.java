@@ -0,0 +1,95 @@
+/*
+ *  This file is part of Cubic World Generation, licensed under the MIT License (MIT).
+ *
+ *  Copyright (c) 2015-2020 contributors
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ */
+package io.github.opencubicchunks.cubicchunks.cubicgen.cache;
+
+import io.github.opencubicchunks.cubicchunks.cubicgen.profiler.GenerationProfiler;
+import mcp.MethodsReturnNonnullByDefault;
+
+import javax.annotation.ParametersAreNonnullByDefault;
+
+/**
+ * A direct-mapped cache of double values keyed by 3 int coordinates. Full 32-bit coordinates don't fit in a single long, so
+ * the key is stored as 3 separate ints. Equivalent to {@link HashCacheDoubles} with {@code Vec3i} keys, but doesn't
+ * allocate anything on lookup.
+ */
+@ParametersAreNonnullByDefault
+@MethodsReturnNonnullByDefault
+public class XYZKeyedDoubleCache {
+
+    private final double[] cache;
+    // x, y and z of each key are stored next to each other
+    private final int[] keys;
+    private final boolean[] present;
+    private final ICoordHash hashFunction;
+    private final Source source;
+    private CacheStats.Counter stats = CacheStats.counter("XYZKeyedDoubleCache");
+
+    private XYZKeyedDoubleCache(int size, ICoordHash hashCode, Source source) {
+        this.cache = new double[size];
+        this.keys = new int[size * 3];
+        this.present = new boolean[size];
+        this.hashFunction = hashCode;
+        this.source = source;
+    }
+
+    public double get(int x, int y, int z) {
+        int index = index(hashFunction.hash(x, y, z));
+        int keyIndex = index * 3;
+        if (!present[index] || keys[keyIndex] != x || keys[keyIndex + 1] != y || keys[keyIndex + 2] != z) {
+            long t = GenerationProfiler.start();
+            double value = source.get(x, y, z);
+            stats.miss(present[index], t);
+            keys[keyIndex] = x;
+            keys[keyIndex + 1] = y;
+            keys[keyIndex + 2] = z;
+            cache[index] = value;
+            present[index] = true;
+            return value;
+        }
+        stats.hit();
+        return cache[index];
+    }
+
+    private int index(int hash) {
+        return Math.floorMod(hash, cache.length);
+    }
+
+    /**
+     * Sets the name under which statistics of this cache are reported, see {@link CacheStats}.
+     */
+    public XYZKeyedDoubleCache named(String name) {
+        this.stats = CacheStats.counter(name);
+        return this;
+    }
+
+    public static XYZKeyedDoubleCache create(int size, ICoordHash hashCode, Source source) {
+        return new XYZKeyedDoubleCache(size, hashCode, source);
+    }
+
+    @FunctionalInterface
+    public interface Source {
+
+        double get(int x, int y, int z);
+    }
+}
@@ -32,6 +32,7 @@ import io.github.opencubicchunks.cubicchunks.cubicgen.customcubic.populator.Anim
 import io.github.opencubicchunks.cubicchunks.cubicgen.customcubic.populator.DefaultDecorator;
 import io.github.opencubicchunks.cubicchunks.cubicgen.customcubic.populator.PrePopulator;
 import io.github.opencubicchunks.cubicchunks.cubicgen.customcubic.populator.SurfaceSnowPopulator;
+import io.github.opencubicchunks.cubicchunks.cubicgen.profiler.ProfiledPopulator;
 import mcp.MethodsReturnNonnullByDefault;
 import net.minecraft.util.ResourceLocation;
 import net.minecraft.world.biome.Biome;
@@ -47,6 +48,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.function.Function;
 
+import javax.annotation.Nullable;
 import javax.annotation.ParametersAreNonnullByDefault;
 
 //
@@ -56,9 +58,12 @@ public final class CubicBiome extends IForgeRegistryEntry.Impl<CubicBiome> {
 
     public static IForgeRegistry<CubicBiome> REGISTRY;
     private static final Map<Biome, CubicBiome> biomeMapping = new IdentityHashMap<>();
+    // indexed by biome id, see getIndex
+    private static CubicBiome[] byIndex = new CubicBiome[0];
     private static boolean isPostInit = false;
 
     private final Biome originalBiome;
+    private int index = -1;
     private final List<IBiomeBlockReplacerProvider> blockReplacers = new ArrayList<>();
     private Function<CustomGeneratorSettings, ICubicPopulator> decoratorProvider;
 
@@ -115,6 +120,17 @@ public final class CubicBiome extends IForgeRegistryEntry.Impl<CubicBiome> {
                 biomeMapping.put(biome, newBiome);
             }
         }
+
+        int maxId = -1;
+        for (Biome biome : ForgeRegistries.BIOMES) {
+            maxId = Math.max(maxId, Biome.getIdForBiome(biome));
+        }
+        byIndex = new CubicBiome[maxId + 1];
+        for (Biome biome : ForgeRegistries.BIOMES) {
+            CubicBiome cubicBiome = biomeMapping.get(biome);
+            cubicBiome.index = Biome.getIdForBiome(biome);
+            byIndex[cubicBiome.index] = cubicBiome;
+        }
     }
 
     private CubicBiome(Builder builder) {
@@ -122,7 +138,7 @@ public final class CubicBiome extends IForgeRegistryEntry.Impl<CubicBiome> {
         this.blockReplacers.addAll(builder.blockReplacers);
         this.decoratorProvider = conf -> {
             CubicPopulatorList list = new CubicPopulatorList();
-            builder.decorators.forEach(func -> list.add(func.apply(conf)));
+            builder.decorators.forEach(func -> list.add(ProfiledPopulator.wrap(func.apply(conf))));
             return list;
         };
 
@@ -133,6 +149,14 @@ public final class CubicBiome extends IForgeRegistryEntry.Impl<CubicBiome> {
         return this.originalBiome;
     }
 
+    /**
+     * Returns a small non-negative integer unique to this biome, less than {@link #getIndexCount()}. This is the id of the
+     * vanilla biome, so it can be used to index arrays of per-biome data instead of looking it up in a map.
+     */
+    public int getIndex() {
+        return index;
+    }
+
     @Override
     public String toString() {
         return this.getRegistryName().toString();
@@ -162,6 +186,21 @@ public final class CubicBiome extends IForgeRegistryEntry.Impl<CubicBiome> {
         return biomeMapping.get(vanillaBiome);
     }
 
+    /**
+     * Returns the cubic biome with the given {@link #getIndex() index}, or null if there is no biome with that index.
+     */
+    @Nullable
+    public static CubicBiome getCubic(int index) {
+        return index >= 0 && index < byIndex.length ? byIndex[index] : null;
+    }
+
+    /**
+     * Returns the size of arrays indexed by {@link #getIndex()}.
+     */
+    public static int getIndexCount() {
+        return byIndex.length;
+    }
+
     public static IBiomeBlockReplacerProvider terrainShapeReplacer() {
         return TerrainShapeReplacer.provider();
     }
@@ -0,0 +1,195 @@
+/*
+ *  This file is part of Cubic World Generation, licensed under the MIT License (MIT).
+ *
+ *  Copyright (c) 2015-2020 contributors
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ */
+package io.github.opencubicchunks.cubicchunks.cubicgen.common.biome;
+
+import io.github.opencubicchunks.cubicchunks.cubicgen.asm.mixin.common.accessor.IBiomeProvider;
+import mcp.MethodsReturnNonnullByDefault;
+import net.minecraft.init.Biomes;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.world.WorldType;
+import net.minecraft.world.biome.Biome;
+import net.minecraft.world.biome.BiomeCache;
+import net.minecraft.world.biome.BiomeProvider;
+import net.minecraft.world.biome.BiomeProviderSingle;
+import net.minecraft.world.gen.ChunkGeneratorSettings;
+import net.minecraft.world.gen.layer.GenLayer;
+import net.minecraft.world.gen.layer.IntCache;
+import net.minecraft.world.storage.WorldInfo;
+
+import java.util.List;
+import java.util.Random;
+
+import javax.annotation.Nullable;
+import javax.annotation.ParametersAreNonnullByDefault;
+
+/**
+ * Thread safe version of the vanilla {@link BiomeProvider}, generating the same biomes for the same world seed and settings.
+ * <p>
+ * {@link GenLayer} keeps per-position random state in the layer objects, so each thread gets its own copy of the layers.
+ * While the layers of this provider run, {@link IntCache} uses a per-thread pool, see {@link ThreadLocalIntCache}. Only access
+ * to the shared {@link BiomeCache} is synchronized.
+ */
+@ParametersAreNonnullByDefault
+@MethodsReturnNonnullByDefault
+public class CubicBiomeProvider extends BiomeProvider {
+
+    // the InitBiomeGens event may be handled by code that isn't thread safe, so layers are created one thread at a time
+    private static final Object LAYER_INIT_LOCK = new Object();
+
+    /** genBiomes and biomeIndexLayer of each thread */
+    private final ThreadLocal<GenLayer[]> layers;
+    private final BiomeCache biomeCache;
+
+    public CubicBiomeProvider(WorldInfo info) {
+        long seed = info.getSeed();
+        WorldType worldType = info.getTerrainType();
+        String options = info.getGeneratorOptions();
+        ChunkGeneratorSettings settings = worldType == WorldType.CUSTOMIZED && !options.isEmpty()
+                ? ChunkGeneratorSettings.Factory.jsonToFactory(options).build() : null;
+
+        this.layers = ThreadLocal.withInitial(() -> {
+            synchronized (LAYER_INIT_LOCK) {
+                return getModdedBiomeGenerators(worldType, seed, GenLayer.initializeAllBiomeGenerators(seed, worldType, settings));
+            }
+        });
+        // vanilla code may still access the layers directly
+        GenLayer[] mainLayers = layers.get();
+        ((IBiomeProvider) this).setGenBiomes(mainLayers[0]);
+        ((IBiomeProvider) this).setBiomeIndexLayer(mainLayers[1]);
+        this.biomeCache = ((IBiomeProvider) this).getBiomeCache();
+    }
+
+    /**
+     * Returns true if this biome provider can be used. It depends on CWG mixins, which aren't applied outside of the game,
+     * for example in unit tests.
+     */
+    public static boolean isAvailable() {
+        return IBiomeProvider.class.isAssignableFrom(BiomeProvider.class);
+    }
+
+    /**
+     * Returns true if the given biome provider can be used by multiple threads at the same time without locking.
+     */
+    public static boolean isThreadSafe(BiomeProvider provider) {
+        return provider instanceof CubicBiomeProvider || provider instanceof BiomeProviderSingle;
+    }
+
+    @Override
+    public Biome getBiome(BlockPos pos, Biome defaultBiome) {
+        synchronized (biomeCache) {
+            return biomeCache.getBiome(pos.getX(), pos.getZ(), defaultBiome);
+        }
+    }
+
+    @Override
+    public Biome[] getBiomesForGeneration(@Nullable Biome[] biomes, int x, int z, int width, int height) {
+        if (biomes == null || biomes.length < width * height) {
+            biomes = new Biome[width * height];
+        }
+        int[] ids = getInts(0, x, z, width, height);
+        for (int i = 0; i < width * height; i++) {
+            biomes[i] = Biome.getBiome(ids[i], Biomes.DEFAULT);
+        }
+        return biomes;
+    }
+
+    @Override
+    public Biome[] getBiomes(@Nullable Biome[] listToReuse, int x, int z, int width, int length, boolean cacheFlag) {
+        if (listToReuse == null || listToReuse.length < width * length) {
+            listToReuse = new Biome[width * length];
+        }
+        if (cacheFlag && width == 16 && length == 16 && (x & 15) == 0 && (z & 15) == 0) {
+            synchronized (biomeCache) {
+                System.arraycopy(biomeCache.getCachedBiomes(x, z), 0, listToReuse, 0, width * length);
+            }
+            return listToReuse;
+        }
+        int[] ids = getInts(1, x, z, width, length);
+        for (int i = 0; i < width * length; i++) {
+            listToReuse[i] = Biome.getBiome(ids[i], Biomes.DEFAULT);
+        }
+        return listToReuse;
+    }
+
+    @Override
+    public boolean areBiomesViable(int x, int z, int radius, List<Biome> allowed) {
+        int minX = x - radius >> 2;
+        int minZ = z - radius >> 2;
+        int maxX = x + radius >> 2;
+        int maxZ = z + radius >> 2;
+        int sizeX = maxX - minX + 1;
+        int sizeZ = maxZ - minZ + 1;
+        int[] ids = getInts(0, minX, minZ, sizeX, sizeZ);
+        for (int i = 0; i < sizeX * sizeZ; i++) {
+            if (!allowed.contains(Biome.getBiome(ids[i]))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Nullable
+    @Override
+    public BlockPos findBiomePosition(int x, int z, int range, List<Biome> biomes, Random random) {
+        int minX = x - range >> 2;
+        int minZ = z - range >> 2;
+        int maxX = x + range >> 2;
+        int maxZ = z + range >> 2;
+        int sizeX = maxX - minX + 1;
+        int sizeZ = maxZ - minZ + 1;
+        int[] ids = getInts(0, minX, minZ, sizeX, sizeZ);
+        BlockPos pos = null;
+        int found = 0;
+        for (int i = 0; i < sizeX * sizeZ; i++) {
+            int posX = minX + i % sizeX << 2;
+            int posZ = minZ + i / sizeX << 2;
+            if (biomes.contains(Biome.getBiome(ids[i])) && (pos == null || random.nextInt(found + 1) == 0)) {
+                pos = new BlockPos(posX, 0, posZ);
+                found++;
+            }
+        }
+        return pos;
+    }
+
+    /**
+     * Runs the given layer of the current thread, with {@link IntCache} using the pool of the current thread.
+     *
+     * @param layer 0 for genBiomes, 1 for biomeIndexLayer
+     */
+    private int[] getInts(int layer, int x, int z, int width, int height) {
+        ThreadLocalIntCache cache = ThreadLocalIntCache.begin();
+        try {
+            return layers.get()[layer].getInts(x, z, width, height);
+        } finally {
+            cache.end();
+        }
+    }
+
+    @Override
+    public void cleanupCache() {
+        synchronized (biomeCache) {
+            biomeCache.cleanupCache();
+        }
+    }
+}
@@ -26,6 +26,7 @@ package io.github.opencubicchunks.cubicchunks.cubicgen.common.biome;
 import mcp.MethodsReturnNonnullByDefault;
 import net.minecraft.block.state.IBlockState;
 
+import javax.annotation.Nullable;
 import javax.annotation.ParametersAreNonnullByDefault;
 
 @ParametersAreNonnullByDefault
@@ -43,6 +44,8 @@ public interface IBiomeBlockReplacer {
      * scaled in such way that it approximately represents how many blocks below the surface this position is.
      * <p>
      * Gradient values approximate how the value will change after going 1 block in x/y/z direction.
+     * <p>
+     * This may be called from multiple generator threads at the same time, so implementations shouldn't modify shared state.
      *
      * @param previousBlock the block that was there before using this replacer
      * @param x the block X coordinate
@@ -54,4 +57,45 @@ public interface IBiomeBlockReplacer {
      * @param density the density value
      */
     IBlockState getReplacedBlock(IBlockState previousBlock, int x, int y, int z, double dx, double dy, double dz, double density);
+
+    /**
+     * Replaces blocks in a vertical column of blocks at once, equivalent to calling {@link #getReplacedBlock} for each of them.
+     * Element {@code i} of each array corresponds to Y coordinate {@code yMin + i}, and all arrays have the same length.
+     * <p>
+     * The default implementation just calls {@link #getReplacedBlock} for each block. Replacers that compute something
+     * that only depends on X and Z coordinates should override it to compute that once per column.
+     *
+     * @param column the blocks that were there before using this replacer, replaced blocks are stored in the same array
+     * @param density density values
+     * @param dx X components of density gradient
+     * @param dy Y components of density gradient
+     * @param dz Z components of density gradient
+     * @param x the block X coordinate
+     * @param yMin the Y coordinate of the first block in the column
+     * @param z the block Z coordinate
+     */
+    default void replaceColumn(IBlockState[] column, double[] density, double[] dx, double[] dy, double[] dz, int x, int yMin, int z) {
+        for (int i = 0; i < column.length; i++) {
+            column[i] = getReplacedBlock(column[i], x, yMin + i, z, dx[i], dy[i], dz[i], density[i]);
+        }
+    }
+
+    /**
+     * Returns the block that {@link #getReplacedBlock} would return for every block at the given Y coordinate in a cube,
+     * knowing only bounds of density and of the density gradient. This allows generating cubes far above or below the
+     * surface without sampling terrain noise.
+     * <p>
+     * Returns null if the result can't be determined this way. The default implementation always returns null, which
+     * is always correct but disables this optimization for biomes that use this replacer.
+     *
+     * @param previousBlock the block that was there before using this replacer
+     * @param y the block Y coordinate
+     * @param minDensity the lower bound of density
+     * @param maxDensity the upper bound of density
+     * @param maxGradient the upper bound of absolute value of each density gradient component
+     */
+    @Nullable
+    default IBlockState getUniformReplacedBlock(IBlockState previousBlock, int y, double minDensity, double maxDensity, double maxGradient) {
+        return null;
+    }
 }
@@ -59,6 +59,24 @@ public class OceanWaterReplacer implements IBiomeBlockReplacer {
         return previousBlock;
     }
 
+    @Override
+    public void replaceColumn(IBlockState[] column, double[] density, double[] dx, double[] dy, double[] dz, int x, int yMin, int z) {
+        int end = Math.min(column.length, oceanLevel - yMin);
+        for (int i = 0; i < end; i++) {
+            if (column[i].getBlock() == Blocks.AIR) {
+                column[i] = oceanBlock;
+            }
+        }
+    }
+
+    @Override
+    public IBlockState getUniformReplacedBlock(IBlockState previousBlock, int y, double minDensity, double maxDensity, double maxGradient) {
+        if (previousBlock.getBlock() == Blocks.AIR && y < oceanLevel) {
+            return oceanBlock;
+        }
+        return previousBlock;
+    }
+
     public static IBiomeBlockReplacerProvider provider() {
         return new IBiomeBlockReplacerProvider() {
             private final ResourceLocation OCEAN_BLOCK = CustomCubicMod.location("ocean_block");
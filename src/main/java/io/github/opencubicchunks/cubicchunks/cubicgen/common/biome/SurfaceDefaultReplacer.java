@@ -39,8 +39,11 @@ import net.minecraft.util.ResourceLocation;
 import net.minecraft.world.World;
 import net.minecraft.world.biome.Biome;
 
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
+import javax.annotation.Nullable;
 import javax.annotation.ParametersAreNonnullByDefault;
 
 @ParametersAreNonnullByDefault
@@ -50,6 +53,9 @@ public class SurfaceDefaultReplacer implements IBiomeBlockReplacer {
     protected static final IBlockState RED_SANDSTONE = Blocks.RED_SANDSTONE.getDefaultState();
     protected static final IBlockState SANDSTONE = Blocks.SANDSTONE.getDefaultState();
 
+    // depth noise is the same for every biome using the same parameters
+    private static final Map<DepthNoiseKey, IBuilder> DEPTH_NOISE = new ConcurrentHashMap<>();
+
     private final IBuilder depthNoise;
     private final int maxPossibleDepth;
     private final int bedrockY;
@@ -74,6 +80,58 @@ public class SurfaceDefaultReplacer implements IBiomeBlockReplacer {
      */
     @Override
     public IBlockState getReplacedBlock(IBlockState previousBlock, int x, int y, int z, double dx, double dy, double dz, double density) {
+        return getReplacedBlock(previousBlock, x, y, z, dx, dy, dz, density, topBlock, fillerBlock);
+    }
+
+    /**
+     * Replaces a few top non-air blocks with the specified surface and filler blocks, instead of the ones set for this replacer.
+     * <p>
+     * Replacers that pick surface blocks for each position should use this instead of changing top and filler block of a shared
+     * replacer, as that isn't safe when terrain is generated by multiple threads.
+     */
+    public IBlockState getReplacedBlock(IBlockState previousBlock, int x, int y, int z, double dx, double dy, double dz, double density,
+            IBlockState topBlock, IBlockState fillerBlock) {
+        IBlockState block = getReplacedBlockWithoutDepth(previousBlock, y, dy, density);
+        if (block != null) {
+            return block;
+        }
+        return getSurfaceBlock(previousBlock, y, dx, dy, dz, density, depthNoise.get(x, 0, z), topBlock, fillerBlock);
+    }
+
+    @Override
+    public void replaceColumn(IBlockState[] column, double[] density, double[] dx, double[] dy, double[] dz, int x, int yMin, int z) {
+        replaceColumn(column, density, dx, dy, dz, x, yMin, z, topBlock, fillerBlock);
+    }
+
+    /**
+     * Same as {@link #replaceColumn(IBlockState[], double[], double[], double[], double[], int, int, int)}, but with the specified
+     * surface and filler blocks, see {@link #getReplacedBlock(IBlockState, int, int, int, double, double, double, double, IBlockState,
+     * IBlockState)}.
+     */
+    public void replaceColumn(IBlockState[] column, double[] density, double[] dx, double[] dy, double[] dz, int x, int yMin, int z,
+            IBlockState topBlock, IBlockState fillerBlock) {
+        // depth noise only depends on x and z, sample it at most once for the whole column
+        boolean hasDepth = false;
+        double depth = 0;
+        for (int i = 0; i < column.length; i++) {
+            int y = yMin + i;
+            IBlockState block = getReplacedBlockWithoutDepth(column[i], y, dy[i], density[i]);
+            if (block == null) {
+                if (!hasDepth) {
+                    depth = depthNoise.get(x, 0, z);
+                    hasDepth = true;
+                }
+                block = getSurfaceBlock(column[i], y, dx[i], dy[i], dz[i], density[i], depth, topBlock, fillerBlock);
+            }
+            column[i] = block;
+        }
+    }
+
+    /**
+     * Returns the replaced block if it doesn't depend on depth noise, null otherwise.
+     */
+    @Nullable
+    private IBlockState getReplacedBlockWithoutDepth(IBlockState previousBlock, int y, double dy, double density) {
         // skip everything below if there is no chance it will actually do something
         if (previousBlock.getBlock() == Blocks.AIR) {
             return previousBlock;
@@ -87,17 +145,20 @@ public class SurfaceDefaultReplacer implements IBiomeBlockReplacer {
         if (density > maxPossibleDepth * abs(dy) || density < 0) {
             return previousBlock;
         }
+        return null;
+    }
 
-        double depth = depthNoise.get(x, 0, z);
+    private IBlockState getSurfaceBlock(IBlockState previousBlock, int y, double dx, double dy, double dz, double density, double depth,
+            IBlockState topBlock, IBlockState fillerBlock) {
         double densityAdjusted = density / abs(dy);
         if (density + dy <= 0) { // if air above
             if (y < oceanHeight - 7 - depth) { // if we are deep into the ocean
                 return GRAVEL;
             }
             if (y < oceanHeight - 1) { // if just below the ocean level
-                return filler(previousBlock, depth);
+                return depth > 0 ? fillerBlock : previousBlock;
             }
-            return top(depth);
+            return depth > 0 ? topBlock : Blocks.AIR.getDefaultState();
         } else {
             double xzSize = Math.sqrt(dx * dx + dz * dz);
             double dyAdjusted = dy;
@@ -112,6 +173,24 @@ public class SurfaceDefaultReplacer implements IBiomeBlockReplacer {
         return previousBlock;
     }
 
+    @Nullable @Override
+    public IBlockState getUniformReplacedBlock(IBlockState previousBlock, int y, double minDensity, double maxDensity, double maxGradient) {
+        // same checks as getReplacedBlockWithoutDepth
+        if (previousBlock.getBlock() == Blocks.AIR) {
+            return previousBlock;
+        }
+        if (y <= bedrockY) {
+            if (y < bedrockY) {
+                return Blocks.AIR.getDefaultState();
+            }
+            return Blocks.BEDROCK.getDefaultState();
+        }
+        if (minDensity > maxPossibleDepth * maxGradient || maxDensity < 0) {
+            return previousBlock;
+        }
+        return null;
+    }
+
     public void setTopBlock(IBlockState topBlock) {
         this.topBlock = topBlock;
     }
@@ -124,14 +203,6 @@ public class SurfaceDefaultReplacer implements IBiomeBlockReplacer {
         return depthNoise;
     }
 
-    private IBlockState filler(IBlockState prev, double depth) {
-        return depth > 0 ? fillerBlock : prev;
-    }
-
-    private IBlockState top(double depth) {
-        return depth > 0 ? topBlock : Blocks.AIR.getDefaultState();
-    }
-
     public static IBiomeBlockReplacerProvider provider() {
         return new IBiomeBlockReplacerProvider() {
             private final ResourceLocation HORIZONTAL_GRADIENT_DEC = CustomCubicMod.location("horizontal_gradient_depth_decrease_weight");
@@ -155,10 +226,7 @@ public class SurfaceDefaultReplacer implements IBiomeBlockReplacer {
                 int bedrockY = ((ICubicWorld) world).getMinHeight();
                 Biome biome = cubicBiome.getBiome();
 
-                IBuilder builder = NoiseSource.perlin()
-                        .frequency(freq).octaves(octaves).create()
-                        .mul(factor).add(offset)
-                        .cached2d(256, v -> v.getX() + v.getZ() * 16);
+                IBuilder builder = depthNoise(freq, octaves, factor, offset);
                 return new SurfaceDefaultReplacer(biome.topBlock, biome.fillerBlock, builder, gradientDec, oceanY, maxDepth, bedrockY);
             }
 
@@ -178,11 +246,59 @@ public class SurfaceDefaultReplacer implements IBiomeBlockReplacer {
         };
     }
 
+    /**
+     * Returns the cached depth noise for the given parameters. The noise doesn't depend on the world or biome, so all replacers
+     * created with the same parameters share one instance, and one cache, instead of each biome filling its own cache with the
+     * same values.
+     */
+    public static IBuilder depthNoise(double frequency, int octaves, double factor, double offset) {
+        return DEPTH_NOISE.computeIfAbsent(new DepthNoiseKey(frequency, octaves, factor, offset), k -> NoiseSource.perlin()
+                .frequency(frequency).octaves(octaves).create()
+                .mul(factor).add(offset)
+                .cached2d(256, (x, y, z) -> x + z * 16, "SurfaceDefaultReplacer.depthNoise"));
+    }
+
     public static IBuilder makeDepthNoise() {
         return NoiseSource.perlin()
                 .frequency(ConversionUtils.frequencyFromVanilla(0.0625f, 4)).octaves(4).create()
                 .mul((1 << 3) - 1) // TODO: do it properly, currently this value is just temporary until I figure out the right one
                 .mul(1.0 / 3.0).add(3)
-                .cached2d(256, v -> v.getX() + v.getZ() * 16);
+                .cached2d(256, (x, y, z) -> x + z * 16, "SurfaceDefaultReplacer.depthNoise");
+    }
+
+    private static final class DepthNoiseKey {
+        private final double frequency;
+        private final int octaves;
+        private final double factor;
+        private final double offset;
+
+        DepthNoiseKey(double frequency, int octaves, double factor, double offset) {
+            this.frequency = frequency;
+            this.octaves = octaves;
+            this.factor = factor;
+            this.offset = offset;
+        }
+
+        @Override public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof DepthNoiseKey)) {
+                return false;
+            }
+            DepthNoiseKey that = (DepthNoiseKey) o;
+            return Double.compare(that.frequency, frequency) == 0
+                    && octaves == that.octaves
+                    && Double.compare(that.factor, factor) == 0
+                    && Double.compare(that.offset, offset) == 0;
+        }
+
+        @Override public int hashCode() {
+            int result = Double.hashCode(frequency);
+            result = 31 * result + octaves;
+            result = 31 * result + Double.hashCode(factor);
+            result = 31 * result + Double.hashCode(offset);
+            return result;
+        }
     }
 }
@@ -33,6 +33,7 @@ import net.minecraft.world.World;
 
 import java.util.Set;
 
+import javax.annotation.Nullable;
 import javax.annotation.ParametersAreNonnullByDefault;
 
 @ParametersAreNonnullByDefault
@@ -56,6 +57,26 @@ public class TerrainShapeReplacer implements IBiomeBlockReplacer {
         return previousBlock;
     }
 
+    @Override
+    public void replaceColumn(IBlockState[] column, double[] density, double[] dx, double[] dy, double[] dz, int x, int yMin, int z) {
+        for (int i = 0; i < column.length; i++) {
+            if (density[i] > 0) {
+                column[i] = terrainFill;
+            }
+        }
+    }
+
+    @Nullable @Override
+    public IBlockState getUniformReplacedBlock(IBlockState previousBlock, int y, double minDensity, double maxDensity, double maxGradient) {
+        if (minDensity > 0) {
+            return terrainFill;
+        }
+        if (maxDensity <= 0) {
+            return previousBlock;
+        }
+        return null;
+    }
+
     public static IBiomeBlockReplacerProvider provider() {
         return new IBiomeBlockReplacerProvider() {
             private final ResourceLocation TERRAIN_FILL_BLOCK = CustomCubicMod.location("terrain_fill_block");
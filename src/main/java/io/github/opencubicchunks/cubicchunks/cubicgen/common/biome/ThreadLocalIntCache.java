@@ -0,0 +1,114 @@
+/*
+ *  This file is part of Cubic World Generation, licensed under the MIT License (MIT).
+ *
+ *  Copyright (c) 2015-2020 contributors
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ */
+package io.github.opencubicchunks.cubicchunks.cubicgen.common.biome;
+
+import mcp.MethodsReturnNonnullByDefault;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.annotation.Nullable;
+import javax.annotation.ParametersAreNonnullByDefault;
+
+/**
+ * Per-thread replacement of the state of vanilla {@code IntCache}, which is a global pool of int arrays used by {@code GenLayer}.
+ * The logic is the same as in vanilla, but each thread has its own pool, so that biomes can be generated by multiple threads at
+ * the same time.
+ * <p>
+ * The pool is only used between {@link #begin()} and {@link #end()}, see {@code MixinIntCache}. Outside of that, {@code IntCache}
+ * works as in vanilla.
+ */
+@ParametersAreNonnullByDefault
+@MethodsReturnNonnullByDefault
+public final class ThreadLocalIntCache {
+
+    private static final ThreadLocal<ThreadLocalIntCache> CACHE = ThreadLocal.withInitial(ThreadLocalIntCache::new);
+    // set only between begin and end, so that threads that never use CubicBiomeProvider don't get a pool
+    private static final ThreadLocal<ThreadLocalIntCache> ACTIVE = new ThreadLocal<>();
+
+    private int intCacheSize = 256;
+    private final List<int[]> freeSmallArrays = new ArrayList<>();
+    private final List<int[]> inUseSmallArrays = new ArrayList<>();
+    private final List<int[]> freeLargeArrays = new ArrayList<>();
+    private final List<int[]> inUseLargeArrays = new ArrayList<>();
+
+    private ThreadLocalIntCache() {
+    }
+
+    /**
+     * Resets the pool of the current thread and makes {@code IntCache} use it until {@link #end()} is called.
+     * Calls can't be nested.
+     */
+    public static ThreadLocalIntCache begin() {
+        ThreadLocalIntCache cache = CACHE.get();
+        cache.resetIntCache();
+        ACTIVE.set(cache);
+        return cache;
+    }
+
+    public void end() {
+        ACTIVE.set(null);
+    }
+
+    /**
+     * Returns the pool {@code IntCache} should use on the current thread, or null if it should use the vanilla pool.
+     */
+    @Nullable
+    public static ThreadLocalIntCache getActive() {
+        return ACTIVE.get();
+    }
+
+    public int[] getIntCache(int size) {
+        if (size <= 256) {
+            int[] array = freeSmallArrays.isEmpty() ? new int[256] : freeSmallArrays.remove(freeSmallArrays.size() - 1);
+            inUseSmallArrays.add(array);
+            return array;
+        }
+        if (size > intCacheSize) {
+            intCacheSize = size;
+            freeLargeArrays.clear();
+            inUseLargeArrays.clear();
+        }
+        int[] array = freeLargeArrays.isEmpty() ? new int[intCacheSize] : freeLargeArrays.remove(freeLargeArrays.size() - 1);
+        inUseLargeArrays.add(array);
+        return array;
+    }
+
+    /**
+     * Marks all arrays returned by {@link #getIntCache(int)} as free, so that they can be reused.
+     */
+    public void resetIntCache() {
+        // vanilla drops one free array of each size on reset, so that the pool shrinks when it's not needed
+        if (!freeLargeArrays.isEmpty()) {
+            freeLargeArrays.remove(freeLargeArrays.size() - 1);
+        }
+        if (!freeSmallArrays.isEmpty()) {
+            freeSmallArrays.remove(freeSmallArrays.size() - 1);
+        }
+        freeLargeArrays.addAll(inUseLargeArrays);
+        freeSmallArrays.addAll(inUseSmallArrays);
+        inUseLargeArrays.clear();
+        inUseSmallArrays.clear();
+    }
+}
@@ -29,14 +29,14 @@ import com.google.common.collect.Sets;
 import io.github.opencubicchunks.cubicchunks.cubicgen.ConversionUtils;
 import io.github.opencubicchunks.cubicchunks.cubicgen.CustomCubicMod;
 import io.github.opencubicchunks.cubicchunks.cubicgen.asm.mixin.common.accessor.IBiomeMesa;
-import io.github.opencubicchunks.cubicchunks.cubicgen.cache.HashCacheDoubles;
+import io.github.opencubicchunks.cubicchunks.cubicgen.cache.LongKeyedDoubleCache;
 import io.github.opencubicchunks.cubicchunks.cubicgen.common.biome.BiomeBlockReplacerConfig;
 import io.github.opencubicchunks.cubicchunks.cubicgen.common.biome.ConfigOptionInfo;
 import io.github.opencubicchunks.cubicchunks.cubicgen.common.biome.IBiomeBlockReplacer;
 import io.github.opencubicchunks.cubicchunks.cubicgen.common.biome.IBiomeBlockReplacerProvider;
 import io.github.opencubicchunks.cubicchunks.cubicgen.common.biome.CubicBiome;
+import io.github.opencubicchunks.cubicchunks.cubicgen.common.biome.SurfaceDefaultReplacer;
 import io.github.opencubicchunks.cubicchunks.cubicgen.customcubic.builder.IBuilder;
-import io.github.opencubicchunks.cubicchunks.cubicgen.customcubic.builder.NoiseSource;
 import mcp.MethodsReturnNonnullByDefault;
 import net.minecraft.block.Block;
 import net.minecraft.block.BlockColored;
@@ -45,7 +45,7 @@ import net.minecraft.block.state.IBlockState;
 import net.minecraft.init.Blocks;
 import net.minecraft.item.EnumDyeColor;
 import net.minecraft.util.ResourceLocation;
-import net.minecraft.util.math.BlockPos;
+import net.minecraft.util.math.ChunkPos;
 import net.minecraft.world.World;
 import net.minecraft.world.biome.BiomeMesa;
 import net.minecraft.world.gen.NoiseGeneratorPerlin;
@@ -54,6 +54,7 @@ import java.util.Arrays;
 import java.util.Random;
 import java.util.Set;
 
+import javax.annotation.Nullable;
 import javax.annotation.ParametersAreNonnullByDefault;
 
 @ParametersAreNonnullByDefault
@@ -70,9 +71,11 @@ public class MesaSurfaceReplacer implements IBiomeBlockReplacer {
     private final BiomeMesa biomeMesa;
 
     private final IBlockState[] clayBands;
-    private final HashCacheDoubles<BlockPos> clayBandsOffsetNoise;
-    private final HashCacheDoubles<BlockPos> pillarNoise;
-    private final HashCacheDoubles<BlockPos> pillarRoofNoise;
+    // keys are packed using ChunkPos.asLong: x in the low 32 bits, z in the high 32 bits
+    // per-thread, so that multiple threads can generate terrain at the same time
+    private final ThreadLocal<LongKeyedDoubleCache> clayBandsOffsetNoise;
+    private final ThreadLocal<LongKeyedDoubleCache> pillarNoise;
+    private final ThreadLocal<LongKeyedDoubleCache> pillarRoofNoise;
 
     protected static final IBlockState STAINED_HARDENED_CLAY = Blocks.STAINED_HARDENED_CLAY.getDefaultState();
     protected static final IBlockState AIR = Blocks.AIR.getDefaultState();
@@ -99,19 +102,19 @@ public class MesaSurfaceReplacer implements IBiomeBlockReplacer {
         // so that we don't cause issues when we replace clayBands and scrollOffset noise
         mesa.setWorldSeed(world.getSeed());
         this.clayBands = Arrays.copyOf(mesa.getClayBands(), mesa.getClayBands().length);
-        this.clayBandsOffsetNoise = HashCacheDoubles.create(
-                256, p -> p.getX() * 16 + p.getZ(), p -> mesa.getClayBandsOffsetNoise().getValue(p.getX() / 512.0, p.getZ() / 512.0)
-        );
+        this.clayBandsOffsetNoise = ThreadLocal.withInitial(() -> LongKeyedDoubleCache.create(
+                256, MesaSurfaceReplacer::hash, p -> mesa.getClayBandsOffsetNoise().getValue(keyX(p) / 512.0, keyZ(p) / 512.0)
+        ).named("MesaSurfaceReplacer.clayBandsOffsetNoise"));
 
         Random random = new Random(world.getSeed());
         NoiseGeneratorPerlin pillasPerlin = new NoiseGeneratorPerlin(random, 4);
-        this.pillarNoise = HashCacheDoubles.create(
-                256, p -> p.getX() * 16 + p.getZ(), p -> pillasPerlin.getValue(p.getX(), p.getZ())
-        );
+        this.pillarNoise = ThreadLocal.withInitial(() -> LongKeyedDoubleCache.create(
+                256, MesaSurfaceReplacer::hash, p -> pillasPerlin.getValue(keyX(p), keyZ(p))
+        ).named("MesaSurfaceReplacer.pillarNoise"));
         NoiseGeneratorPerlin pillarRoofPerlin = new NoiseGeneratorPerlin(random, 1);
-        this.pillarRoofNoise = HashCacheDoubles.create(
-                256, p -> p.getX() * 16 + p.getZ(), p -> pillarRoofPerlin.getValue(p.getX(), p.getZ())
-        );
+        this.pillarRoofNoise = ThreadLocal.withInitial(() -> LongKeyedDoubleCache.create(
+                256, MesaSurfaceReplacer::hash, p -> pillarRoofPerlin.getValue(keyX(p), keyZ(p))
+        ).named("MesaSurfaceReplacer.pillarRoofNoise"));
         this.depthNoise = builder;
     }
 
@@ -120,9 +123,32 @@ public class MesaSurfaceReplacer implements IBiomeBlockReplacer {
             return previousBlock;
         }
         double depth = depthNoise.get(x, 0, z);
+        return getReplacedBlock(previousBlock, y, dy, density, depth, getPillarHeight(x, z, depth), getBandOffset(x));
+    }
+
+    @Override
+    public void replaceColumn(IBlockState[] column, double[] density, double[] dx, double[] dy, double[] dz, int x, int yMin, int z) {
+        // depth, pillar height and clay band offset only depend on x and z, compute them once for the whole column
+        boolean hasColumnData = false;
+        double depth = 0, pillarHeight = 0;
+        int bandOffset = 0;
+        for (int i = 0; i < column.length; i++) {
+            if (density[i] < 0) {
+                continue;
+            }
+            if (!hasColumnData) {
+                depth = depthNoise.get(x, 0, z);
+                pillarHeight = getPillarHeight(x, z, depth);
+                bandOffset = getBandOffset(x);
+                hasColumnData = true;
+            }
+            column[i] = getReplacedBlock(column[i], yMin + i, dy[i], density[i], depth, pillarHeight, bandOffset);
+        }
+    }
+
+    private IBlockState getReplacedBlock(IBlockState previousBlock, int y, double dy, double density,
+            double depth, double pillarHeight, int bandOffset) {
         double origDepthNoise = depth - 3;
-        double pillarHeight = getPillarHeightVanilla(x, z, origDepthNoise);
-        pillarHeight = convertYFromVanilla(pillarHeight);
         if (y < pillarHeight) {
             // simulate pillar density ORed with te terrain
             density = Math.max(density, pillarHeight - y);
@@ -142,9 +168,9 @@ public class MesaSurfaceReplacer implements IBiomeBlockReplacer {
             IBiomeMesa mesa = (IBiomeMesa) biomeMesa;
             if (mesa.getHasForest() && y >= convertYFromVanilla(86) + depth * 2) {
                 top = coarse ? COARSE_DIRT : GRASS;
-                filler = getBand(x, y, z);
+                filler = getBand(bandOffset, y);
             } else if (y > waterHeight + 3 + depth) {
-                filler = getBand(x, y, z);
+                filler = getBand(bandOffset, y);
                 top = coarse ? HARDENED_CLAY : filler;
             } else {
                 top = filler = ORANGE_STAINED_HARDENED_CLAY;
@@ -161,6 +187,18 @@ public class MesaSurfaceReplacer implements IBiomeBlockReplacer {
         return previousBlock;
     }
 
+    @Nullable @Override
+    public IBlockState getUniformReplacedBlock(IBlockState previousBlock, int y, double minDensity, double maxDensity, double maxGradient) {
+        if (maxDensity < 0) {
+            return previousBlock;
+        }
+        // pillars can only increase density, so deep enough below the surface it's never top or filler block
+        if (minDensity > maxGradient * Math.max(mesaDepth, 1)) {
+            return previousBlock;
+        }
+        return null;
+    }
+
     private double convertYFromVanilla(double y) {
         y = (y - 64.0) / 64.0;
         y *= heightScale;
@@ -173,11 +211,11 @@ public class MesaSurfaceReplacer implements IBiomeBlockReplacer {
         IBiomeMesa mesa = (IBiomeMesa) biomeMesa;
         if (mesa.isBrycePillars()) {
             double pillarScale = Math.min(abs(depth),
-                    this.pillarNoise.get(new BlockPos(x * 0.25D, 0, z * 0.25D)));
+                    this.pillarNoise.get().get(ChunkPos.asLong(x >> 2, z >> 2)));
 
             if (pillarScale > 0.0D) {
-                double xzScale = 0.001953125D;
-                double pillarRoofVal = abs(this.pillarRoofNoise.get(new BlockPos(x * xzScale, 0, z * xzScale)));
+                // x * 0.001953125 rounded down
+                double pillarRoofVal = abs(this.pillarRoofNoise.get().get(ChunkPos.asLong(x >> 9, z >> 9)));
                 pillarHeight = pillarScale * pillarScale * 2.5D;
                 double cutoffHeight = Math.ceil(pillarRoofVal * 50.0D) + 14.0D;
 
@@ -191,11 +229,29 @@ public class MesaSurfaceReplacer implements IBiomeBlockReplacer {
         return pillarHeight;
     }
 
-    private IBlockState getBand(int blockX, int blockY, int blockZ) {
-        int offset = (int) Math.round(this.clayBandsOffsetNoise.get(new BlockPos(blockX, 0, blockX)) * 2.0D);
+    private double getPillarHeight(int x, int z, double depth) {
+        return convertYFromVanilla(getPillarHeightVanilla(x, z, depth - 3));
+    }
+
+    private int getBandOffset(int blockX) {
+        return (int) Math.round(this.clayBandsOffsetNoise.get().get(ChunkPos.asLong(blockX, blockX)) * 2.0D);
+    }
+
+    private IBlockState getBand(int offset, int blockY) {
         return clayBands[(blockY + offset + 64) & 63];
     }
 
+    private static int hash(long key) {
+        return keyX(key) * 16 + keyZ(key);
+    }
+
+    private static int keyX(long key) {
+        return (int) key;
+    }
+
+    private static int keyZ(long key) {
+        return (int) (key >>> 32);
+    }
 
     public static IBiomeBlockReplacerProvider provider() {
         return new IBiomeBlockReplacerProvider() {
@@ -222,10 +278,7 @@ public class MesaSurfaceReplacer implements IBiomeBlockReplacer {
                 double heightOffset = conf.getDouble(HEIGHT_OFFSET);
                 double heightScale = conf.getDouble(HEIGHT_SCALE);
 
-                IBuilder builder = NoiseSource.perlin()
-                        .frequency(freq).octaves(octaves).create()
-                        .mul(factor).add(offset)
-                        .cached2d(256, v -> v.getX() + v.getZ() * 16);
+                IBuilder builder = SurfaceDefaultReplacer.depthNoise(freq, octaves, factor, offset);
                 return new MesaSurfaceReplacer(world, cubicBiome, builder, depth, heightOffset, heightScale, oceanY);
             }
 
@@ -37,6 +37,7 @@ import net.minecraft.world.World;
 
 import java.util.Set;
 
+import javax.annotation.Nullable;
 import javax.annotation.ParametersAreNonnullByDefault;
 
 @ParametersAreNonnullByDefault
@@ -51,19 +52,37 @@ public class MutatedSavannaSurfaceReplacer implements IBiomeBlockReplacer {
     }
 
     @Override public IBlockState getReplacedBlock(IBlockState previousBlock, int x, int y, int z, double dx, double dy, double dz, double density) {
-        defaultReplacer.setTopBlock(Blocks.GRASS.getDefaultState());
-        defaultReplacer.setFillerBlock(Blocks.DIRT.getDefaultState());
+        double depth = getDepth(x, z);
+        return defaultReplacer.getReplacedBlock(previousBlock, x, y, z, dx, dy, dz, density, getTopBlock(depth), getFillerBlock(depth));
+    }
+
+    @Override
+    public void replaceColumn(IBlockState[] column, double[] density, double[] dx, double[] dy, double[] dz, int x, int yMin, int z) {
+        double depth = getDepth(x, z);
+        defaultReplacer.replaceColumn(column, density, dx, dy, dz, x, yMin, z, getTopBlock(depth), getFillerBlock(depth));
+    }
 
-        double depth = (defaultReplacer.getDepthNoise().get(x, 0, z) - 3) * 3;
+    private double getDepth(int x, int z) {
+        return (defaultReplacer.getDepthNoise().get(x, 0, z) - 3) * 3;
+    }
 
+    private static IBlockState getTopBlock(double depth) {
         if (depth > 1.75D) {
-            defaultReplacer.setTopBlock(Blocks.STONE.getDefaultState());
-            defaultReplacer.setFillerBlock(Blocks.STONE.getDefaultState());
+            return Blocks.STONE.getDefaultState();
         } else if (depth > -0.5D) {
-            defaultReplacer.setTopBlock(COARSE_DIRT);
+            return COARSE_DIRT;
         }
+        return Blocks.GRASS.getDefaultState();
+    }
+
+    private static IBlockState getFillerBlock(double depth) {
+        return depth > 1.75D ? Blocks.STONE.getDefaultState() : Blocks.DIRT.getDefaultState();
+    }
 
-        return defaultReplacer.getReplacedBlock(previousBlock, x, y, z, dx, dy, dz, density);
+    @Nullable @Override
+    public IBlockState getUniformReplacedBlock(IBlockState previousBlock, int y, double minDensity, double maxDensity, double maxGradient) {
+        // top and filler blocks only matter near the surface, where the default replacer can't tell the result
+        return defaultReplacer.getUniformReplacedBlock(previousBlock, y, minDensity, maxDensity, maxGradient);
     }
 
     public static IBiomeBlockReplacerProvider provider() {
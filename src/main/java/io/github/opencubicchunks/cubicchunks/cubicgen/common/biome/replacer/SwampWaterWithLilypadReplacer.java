@@ -34,6 +34,7 @@ import net.minecraft.util.ResourceLocation;
 import net.minecraft.util.math.MathHelper;
 import net.minecraft.world.gen.NoiseGeneratorPerlin;
 
+import javax.annotation.Nullable;
 import javax.annotation.ParametersAreNonnullByDefault;
 
 @ParametersAreNonnullByDefault
@@ -66,6 +67,23 @@ public class SwampWaterWithLilypadReplacer implements IBiomeBlockReplacer {
         return previousBlock;
     }
 
+    @Override
+    public void replaceColumn(IBlockState[] column, double[] density, double[] dx, double[] dy, double[] dz, int x, int yMin, int z) {
+        // only the block just below sea level can be replaced
+        int i = seaLevel - 1 - yMin;
+        if (i >= 0 && i < column.length) {
+            column[i] = getReplacedBlock(column[i], x, yMin + i, z, dx[i], dy[i], dz[i], density[i]);
+        }
+    }
+
+    @Nullable @Override
+    public IBlockState getUniformReplacedBlock(IBlockState previousBlock, int y, double minDensity, double maxDensity, double maxGradient) {
+        if (y != seaLevel - 1) {
+            return previousBlock;
+        }
+        return null;
+    }
+
     public static IBiomeBlockReplacerProvider provider() {
         return IBiomeBlockReplacerProvider.of((world, biome, conf) ->
                 new SwampWaterWithLilypadReplacer(IBiome.getGrassColorNoise(), MathHelper.floor(conf.getDouble(OCEAN_LEVEL)))
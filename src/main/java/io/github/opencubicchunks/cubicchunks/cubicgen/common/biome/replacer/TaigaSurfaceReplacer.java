@@ -39,6 +39,7 @@ import net.minecraft.world.biome.BiomeTaiga;
 
 import java.util.Set;
 
+import javax.annotation.Nullable;
 import javax.annotation.ParametersAreNonnullByDefault;
 
 @ParametersAreNonnullByDefault
@@ -56,19 +57,40 @@ public class TaigaSurfaceReplacer implements IBiomeBlockReplacer {
     }
 
     @Override public IBlockState getReplacedBlock(IBlockState previousBlock, int x, int y, int z, double dx, double dy, double dz, double density) {
-        if (((IBiomeTaiga) biome).getType() == BiomeTaiga.Type.MEGA || ((IBiomeTaiga) biome).getType() == BiomeTaiga.Type.MEGA_SPRUCE) {
-            defaultReplacer.setTopBlock(Blocks.GRASS.getDefaultState());
-            defaultReplacer.setFillerBlock(Blocks.DIRT.getDefaultState());
+        if (isMega()) {
+            return defaultReplacer.getReplacedBlock(previousBlock, x, y, z, dx, dy, dz, density, getTopBlock(x, z), Blocks.DIRT.getDefaultState());
+        }
+        return defaultReplacer.getReplacedBlock(previousBlock, x, y, z, dx, dy, dz, density);
+    }
 
-            double depth = (defaultReplacer.getDepthNoise().get(x, 0, z) - 3) * 3;
+    @Override
+    public void replaceColumn(IBlockState[] column, double[] density, double[] dx, double[] dy, double[] dz, int x, int yMin, int z) {
+        if (isMega()) {
+            defaultReplacer.replaceColumn(column, density, dx, dy, dz, x, yMin, z, getTopBlock(x, z), Blocks.DIRT.getDefaultState());
+        } else {
+            defaultReplacer.replaceColumn(column, density, dx, dy, dz, x, yMin, z);
+        }
+    }
 
-            if (depth > 1.75D) {
-                defaultReplacer.setTopBlock(COARSE_DIRT);
-            } else if (depth > -0.95D) {
-                defaultReplacer.setTopBlock(PODZOL);
-            }
+    private boolean isMega() {
+        return ((IBiomeTaiga) biome).getType() == BiomeTaiga.Type.MEGA || ((IBiomeTaiga) biome).getType() == BiomeTaiga.Type.MEGA_SPRUCE;
+    }
+
+    private IBlockState getTopBlock(int x, int z) {
+        double depth = (defaultReplacer.getDepthNoise().get(x, 0, z) - 3) * 3;
+
+        if (depth > 1.75D) {
+            return COARSE_DIRT;
+        } else if (depth > -0.95D) {
+            return PODZOL;
         }
-        return defaultReplacer.getReplacedBlock(previousBlock, x, y, z, dx, dy, dz, density);
+        return Blocks.GRASS.getDefaultState();
+    }
+
+    @Nullable @Override
+    public IBlockState getUniformReplacedBlock(IBlockState previousBlock, int y, double minDensity, double maxDensity, double maxGradient) {
+        // top and filler blocks only matter near the surface, where the default replacer can't tell the result
+        return defaultReplacer.getUniformReplacedBlock(previousBlock, y, minDensity, maxDensity, maxGradient);
     }
 
     public static IBiomeBlockReplacerProvider provider() {
@@ -0,0 +1,131 @@
+/*
+ *  This file is part of Cubic World Generation, licensed under the MIT License (MIT).
+ *
+ *  Copyright (c) 2015-2020 contributors
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ */
+package io.github.opencubicchunks.cubicchunks.cubicgen.customcubic;
+
+import io.github.opencubicchunks.cubicchunks.api.world.ICube;
+import mcp.MethodsReturnNonnullByDefault;
+import net.minecraft.block.Block;
+import net.minecraft.block.material.Material;
+import net.minecraft.block.state.IBlockState;
+import net.minecraft.init.Blocks;
+
+import java.util.Arrays;
+
+import javax.annotation.ParametersAreNonnullByDefault;
+
+/**
+ * Summary of blocks placed in a cube by terrain generation, collected while the blocks are written so that later
+ * generation stages can tell whether they have anything to do without scanning the cube. It describes the cube before
+ * structures are generated.
+ * <p>
+ * Solid blocks are all blocks that are neither air nor liquid. Carvable blocks are the blocks caves and ravines can
+ * replace: stone, dirt and grass.
+ */
+@ParametersAreNonnullByDefault
+@MethodsReturnNonnullByDefault
+public final class CubeContentSummary {
+
+    private static final int BLOCKS = ICube.SIZE * ICube.SIZE * ICube.SIZE;
+
+    // indexed by [localZ << 4 | localX], -1 if there are no solid blocks in the column
+    private final byte[] minSolidY = new byte[ICube.SIZE * ICube.SIZE];
+    private final byte[] maxSolidY = new byte[ICube.SIZE * ICube.SIZE];
+    private int solidBlocks;
+    private int carvableBlocks;
+    private boolean hasLiquid;
+
+    CubeContentSummary() {
+        Arrays.fill(minSolidY, (byte) -1);
+        Arrays.fill(maxSolidY, (byte) -1);
+    }
+
+    /**
+     * Adds a column of blocks, from the bottom of the cube to the top. Each column is expected to be added only once.
+     */
+    void addColumn(int localX, int localZ, IBlockState[] blocks) {
+        int min = -1, max = -1;
+        for (int localY = 0; localY < ICube.SIZE; localY++) {
+            IBlockState state = blocks[localY];
+            Material material = state.getMaterial();
+            if (material == Material.AIR) {
+                continue;
+            }
+            if (material.isLiquid()) {
+                hasLiquid = true;
+                continue;
+            }
+            solidBlocks++;
+            if (min < 0) {
+                min = localY;
+            }
+            max = localY;
+            Block block = state.getBlock();
+            if (block == Blocks.STONE || block == Blocks.DIRT || block == Blocks.GRASS) {
+                carvableBlocks++;
+            }
+        }
+        minSolidY[localZ << 4 | localX] = (byte) min;
+        maxSolidY[localZ << 4 | localX] = (byte) max;
+    }
+
+    /**
+     * Returns true if there are only air blocks in the cube.
+     */
+    public boolean isEmpty() {
+        return solidBlocks == 0 && !hasLiquid;
+    }
+
+    /**
+     * Returns true if all blocks in the cube are solid.
+     */
+    public boolean isFull() {
+        return solidBlocks == BLOCKS;
+    }
+
+    public int getSolidBlocks() {
+        return solidBlocks;
+    }
+
+    public int getCarvableBlocks() {
+        return carvableBlocks;
+    }
+
+    public boolean hasLiquid() {
+        return hasLiquid;
+    }
+
+    /**
+     * Returns the lowest local Y coordinate of a solid block in the given column, or -1 if there is none.
+     */
+    public int getMinSolidY(int localX, int localZ) {
+        return minSolidY[localZ << 4 | localX];
+    }
+
+    /**
+     * Returns the highest local Y coordinate of a solid block in the given column, or -1 if there is none.
+     */
+    public int getMaxSolidY(int localX, int localZ) {
+        return maxSolidY[localZ << 4 | localX];
+    }
+}
@@ -28,6 +28,7 @@ import io.github.opencubicchunks.cubicchunks.api.worldgen.ICubeGenerator;
 import io.github.opencubicchunks.cubicchunks.api.world.ICubicWorldType;
 import io.github.opencubicchunks.cubicchunks.api.util.IntRange;
 import io.github.opencubicchunks.cubicchunks.cubicgen.asm.mixin.common.accessor.IBiomeProvider;
+import io.github.opencubicchunks.cubicchunks.cubicgen.common.biome.CubicBiomeProvider;
 import io.github.opencubicchunks.cubicchunks.cubicgen.customcubic.gui.CustomCubicGui;
 import io.github.opencubicchunks.cubicchunks.cubicgen.preset.fixer.CustomGeneratorSettingsFixer;
 import mcp.MethodsReturnNonnullByDefault;
@@ -111,7 +112,10 @@ public class CustomCubicWorldType extends WorldType implements ICubicWorldType {
         WorldInfo fakeInfo = new WorldInfo(fakeSettings, world.getWorldInfo().getWorldName());
         fakeInfo.setTerrainType(WorldType.CUSTOMIZED);
         Biome biome = Biome.getBiomeForId(conf.biome);
-        return conf.biome < 0 ? new BiomeProvider(fakeInfo) : new BiomeProviderSingle(biome == null ? Biomes.OCEAN : biome);
+        if (conf.biome >= 0) {
+            return new BiomeProviderSingle(biome == null ? Biomes.OCEAN : biome);
+        }
+        return CubicBiomeProvider.isAvailable() ? new CubicBiomeProvider(fakeInfo) : new BiomeProvider(fakeInfo);
     }
 
     @Override
@@ -36,7 +36,12 @@ import io.github.opencubicchunks.cubicchunks.api.worldgen.structure.event.InitCu
 import io.github.opencubicchunks.cubicchunks.api.worldgen.structure.feature.CubicFeatureGenerator;
 import io.github.opencubicchunks.cubicchunks.api.worldgen.structure.feature.ICubicFeatureGenerator;
 import io.github.opencubicchunks.cubicchunks.cubicgen.BasicCubeGenerator;
+import io.github.opencubicchunks.cubicchunks.cubicgen.CustomCubicConfig;
 import io.github.opencubicchunks.cubicchunks.cubicgen.CustomCubicMod;
+import io.github.opencubicchunks.cubicchunks.cubicgen.cache.CachePolicy;
+import io.github.opencubicchunks.cubicchunks.cubicgen.cache.ICoordHash;
+import io.github.opencubicchunks.cubicchunks.cubicgen.cache.RegionColumnDataStore;
+import io.github.opencubicchunks.cubicchunks.cubicgen.cache.XYZKeyedClockDoubleCache;
 import io.github.opencubicchunks.cubicchunks.cubicgen.common.biome.CubicBiome;
 import io.github.opencubicchunks.cubicchunks.cubicgen.common.biome.IBiomeBlockReplacer;
 import io.github.opencubicchunks.cubicchunks.cubicgen.common.world.storage.IWorldInfoAccess;
@@ -46,10 +51,13 @@ import io.github.opencubicchunks.cubicchunks.cubicgen.customcubic.builder.NoiseS
 import io.github.opencubicchunks.cubicchunks.cubicgen.customcubic.structure.CubicCaveGenerator;
 import io.github.opencubicchunks.cubicchunks.cubicgen.customcubic.structure.CubicRavineGenerator;
 import io.github.opencubicchunks.cubicchunks.cubicgen.customcubic.structure.feature.CubicStrongholdGenerator;
+import io.github.opencubicchunks.cubicchunks.cubicgen.profiler.GenerationProfiler;
 import mcp.MethodsReturnNonnullByDefault;
 import net.minecraft.block.state.IBlockState;
 import net.minecraft.init.Blocks;
+import net.minecraft.util.ResourceLocation;
 import net.minecraft.util.math.BlockPos;
+import net.minecraft.util.math.ChunkPos;
 import net.minecraft.util.math.Vec3i;
 import net.minecraft.world.World;
 import net.minecraft.world.biome.Biome;
@@ -64,31 +72,71 @@ import org.lwjgl.input.Keyboard;
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 import javax.annotation.ParametersAreNonnullByDefault;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Random;
-import java.util.function.ToIntFunction;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.RejectedExecutionException;
 
 import static io.github.opencubicchunks.cubicchunks.api.util.Coords.blockToLocal;
 
 /**
  * A terrain generator that supports infinite(*) worlds
+ * <p>
+ * {@link #generateCube(int, int, int, CubePrimer)} can be called from multiple threads at the same time. Noise caches are
+ * kept per-thread, and the parts that aren't thread safe (vanilla biome provider, strongholds) are synchronized.
  */
 @ParametersAreNonnullByDefault
 @MethodsReturnNonnullByDefault
 public class CustomTerrainGenerator extends BasicCubeGenerator {
 
-    private static final int CACHE_SIZE_2D = 16 * 16;
-    private static final int CACHE_SIZE_3D = 16 * 16 * 16;
-    private static final ToIntFunction<Vec3i> HASH_2D = (v) -> v.getX() + v.getZ() * 5;
-    private static final ToIntFunction<Vec3i> HASH_3D = (v) -> v.getX() + v.getZ() * 5 + v.getY() * 25;
+    private static final ICoordHash HASH_2D = (x, y, z) -> x + z * 5;
+    /**
+     * Relative error allowed for density bounds, to account for rounding errors in interpolation
+     */
+    private static final double DENSITY_BOUND_EPSILON = 1e-6;
+
+    private static final GenerationProfiler.Stage COLUMN_DATA_STAGE = GenerationProfiler.stage("terrain.column_data");
+    private static final GenerationProfiler.Stage UNIFORM_FILL_STAGE = GenerationProfiler.stage("terrain.uniform_fill");
+    private static final GenerationProfiler.Stage DENSITY_LATTICE_STAGE = GenerationProfiler.stage("terrain.density_lattice");
+    private static final GenerationProfiler.Stage INTERPOLATION_STAGE = GenerationProfiler.stage("terrain.interpolation");
+    private static final GenerationProfiler.Stage REPLACERS_STAGE = GenerationProfiler.stage("terrain.replacers");
+    private static final GenerationProfiler.Stage CAVES_STAGE = GenerationProfiler.stage("structures.caves");
+    private static final GenerationProfiler.Stage RAVINES_STAGE = GenerationProfiler.stage("structures.ravines");
+    private static final GenerationProfiler.Stage STRONGHOLDS_STAGE = GenerationProfiler.stage("structures.strongholds");
+    private static final GenerationProfiler.Stage POPULATE_STRONGHOLDS_STAGE = GenerationProfiler.stage("populate.strongholds");
+    private static final ThreadLocal<DensityBuffer> DENSITY_BUFFER = ThreadLocal.withInitial(DensityBuffer::new);
+    @Nullable private static ForkJoinPool generationPool;
     private final Map<CustomGeneratorSettings.IntAABB, CustomTerrainGenerator> areaGenerators = new HashMap<>();
-    // Number of octaves for the noise function
-    private IBuilder terrainBuilder;
+    // 3d part of the density function, see getDensity for the rest
+    private IBuilder terrainNoise;
+    // values of terrainNoise at lattice points, keyed by section coordinates. Lattice points on faces, edges and corners
+    // of a cube are shared with its neighbors, so they are reused when nearby cubes are generated on the same thread
+    private ThreadLocal<XYZKeyedClockDoubleCache> latticeCache;
+    private IBuilder randomHeight2d;
+    private IBuilder height;
+    // bounds of terrainNoise, used to find cubes that can be generated without sampling noise
+    private double minTerrainNoise;
+    private double maxTerrainNoise;
     private BiomeSource biomeSource;
+    // persisted 2d column data, null if disabled
+    @Nullable private RegionColumnDataStore columnDataStore;
     private CustomGeneratorSettings conf;
     private final Map<Biome, ICubicPopulator> populators = new HashMap<>();
+    // same as populators, indexed by CubicBiome.getIndex()
+    private ICubicPopulator[] populatorsByIndex = new ICubicPopulator[0];
+    // profiler stage of each populator, indexed by CubicBiome.getIndex()
+    private GenerationProfiler.Stage[] populateStagesByIndex = new GenerationProfiler.Stage[0];
 
     private boolean fillCubeBiomes;
 
@@ -114,16 +162,48 @@ public class CustomTerrainGenerator extends BasicCubeGenerator {
         ((IWorldInfoAccess) world.getWorldInfo()).setGeneratorOptions(settings);
         world.provider.setWorld(world);// this re-creates biome provider
         init(world, world.getBiomeProvider(), CustomGeneratorSettings.getFromWorld(world), world.getSeed(), true);
+        prepareStructures();
+    }
+
+    /**
+     * Starts computing data needed by structure generators in the background, called once the world is loaded.
+     * Currently this computes stronghold positions, which otherwise stalls the first cube that needs them.
+     */
+    public void prepareStructures() {
+        if (this.conf.strongholds && this.strongholds instanceof CubicStrongholdGenerator) {
+            ((CubicStrongholdGenerator) this.strongholds).preparePositions(world);
+        }
+        for (CustomTerrainGenerator generator : areaGenerators.values()) {
+            generator.prepareStructures();
+        }
+    }
+
+    /**
+     * Writes stored 2d column data to disk and closes its files, called when the world is unloaded. Cubes generated after
+     * that compute column data without storing it.
+     */
+    public void close() {
+        if (this.columnDataStore != null) {
+            this.columnDataStore.close();
+        }
+        for (CustomTerrainGenerator generator : areaGenerators.values()) {
+            generator.close();
+        }
     }
 
     private void init(World world, BiomeProvider biomeProvider, CustomGeneratorSettings settings, long seed, boolean isMainLayer) {
         this.conf = settings;
 
         this.populators.clear();
+        this.populatorsByIndex = new ICubicPopulator[CubicBiome.getIndexCount()];
+        this.populateStagesByIndex = new GenerationProfiler.Stage[CubicBiome.getIndexCount()];
 
         for (Biome biome : ForgeRegistries.BIOMES) {
             CubicBiome cubicBiome = CubicBiome.getCubic(biome);
-            populators.put(biome, cubicBiome.getDecorator(conf));
+            ICubicPopulator populator = cubicBiome.getDecorator(conf);
+            populators.put(biome, populator);
+            populatorsByIndex[cubicBiome.getIndex()] = populator;
+            populateStagesByIndex[cubicBiome.getIndex()] = GenerationProfiler.stage("populate.biome." + biome.getRegistryName());
         }
 
         InitCubicStructureGeneratorEvent caveEvent = new InitCubicStructureGeneratorEvent(EventType.CAVE, new CubicCaveGenerator(), world);
@@ -140,9 +220,18 @@ public class CustomTerrainGenerator extends BasicCubeGenerator {
         this.ravineGenerator = ravineEvent.getNewGen();
 
         this.fillCubeBiomes = !isMainLayer;
-        this.biomeSource = new BiomeSource(world, conf.createBiomeBlockReplacerConfig(), biomeProvider, 2);
+        if (this.columnDataStore != null) {
+            this.columnDataStore.close();
+        }
+        this.columnDataStore = createColumnDataStore(world, settings, seed);
+        this.biomeSource = new BiomeSource(world, conf.createBiomeBlockReplacerConfig(), biomeProvider, 2, getCachePolicy(),
+                getCacheSize("biome_chunk_cache_size", CustomCubicConfig.biomeChunkCacheSize),
+                getCacheSize("biome_section_cache_size", CustomCubicConfig.biomeSectionCacheSize));
         initGenerator(seed);
 
+        for (CustomTerrainGenerator generator : areaGenerators.values()) {
+            generator.close();
+        }
         this.areaGenerators.clear();
 
         if (settings.cubeAreas != null) {
@@ -164,23 +253,31 @@ public class CustomTerrainGenerator extends BasicCubeGenerator {
                 .create()
                 .mul(conf.selectorNoiseFactor).add(conf.selectorNoiseOffset).clamp(0, 1);
 
-        IBuilder low = NoiseSource.perlin()
+        NoiseSource lowNoise = NoiseSource.perlin()
                 .seed(rnd.nextLong())
                 .normalizeTo(-1, 1)
                 .frequency(conf.lowNoiseFrequencyX, conf.lowNoiseFrequencyY, conf.lowNoiseFrequencyZ)
                 .octaves(conf.lowNoiseOctaves)
-                .create()
-                .mul(conf.lowNoiseFactor).add(conf.lowNoiseOffset);
+                .create();
+        IBuilder low = lowNoise.mul(conf.lowNoiseFactor).add(conf.lowNoiseOffset);
 
-        IBuilder high = NoiseSource.perlin()
+        NoiseSource highNoise = NoiseSource.perlin()
                 .seed(rnd.nextLong())
                 .normalizeTo(-1, 1)
                 .frequency(conf.highNoiseFrequencyX, conf.highNoiseFrequencyY, conf.highNoiseFrequencyZ)
                 .octaves(conf.highNoiseOctaves)
-                .create()
-                .mul(conf.highNoiseFactor).add(conf.highNoiseOffset);
-
-        IBuilder randomHeight2d = NoiseSource.perlin()
+                .create();
+        IBuilder high = highNoise.mul(conf.highNoiseFactor).add(conf.highNoiseOffset);
+
+        // selector is clamped to 0-1, so the interpolated value is always between low and high
+        double lowA = lowNoise.getMinValue() * conf.lowNoiseFactor + conf.lowNoiseOffset;
+        double lowB = lowNoise.getMaxValue() * conf.lowNoiseFactor + conf.lowNoiseOffset;
+        double highA = highNoise.getMinValue() * conf.highNoiseFactor + conf.highNoiseOffset;
+        double highB = highNoise.getMaxValue() * conf.highNoiseFactor + conf.highNoiseOffset;
+        this.minTerrainNoise = Math.min(Math.min(lowA, lowB), Math.min(highA, highB));
+        this.maxTerrainNoise = Math.max(Math.max(lowA, lowB), Math.max(highA, highB));
+
+        this.randomHeight2d = NoiseSource.perlin()
                 .seed(rnd.nextLong())
                 .normalizeTo(-1, 1)
                 .frequency(conf.depthNoiseFrequencyX, 0, conf.depthNoiseFrequencyZ)
@@ -190,22 +287,65 @@ public class CustomTerrainGenerator extends BasicCubeGenerator {
                 .mulIf(IBuilder.NEGATIVE, -0.3).mul(3).sub(2).clamp(-2, 1)
                 .divIf(IBuilder.NEGATIVE, 2 * 2 * 1.4).divIf(IBuilder.POSITIVE, 8)
                 .mul(0.2 * 17 / 64.0)
-                .cached2d(CACHE_SIZE_2D, HASH_2D);
+                .cached2d(getCacheSize("noise_2d_cache_size", CustomCubicConfig.noise2dCacheSize), getCachePolicy(), HASH_2D,
+                        "CustomTerrainGenerator.randomHeight2d");
 
-        IBuilder height = ((IBuilder) biomeSource::getHeight)
+        this.height = ((IBuilder) biomeSource::getHeight)
                 .mul(conf.heightFactor)
                 .add(conf.heightOffset);
 
-        double specialVariationFactor = conf.specialHeightVariationFactorBelowAverageY;
-        IBuilder volatility = ((IBuilder) biomeSource::getVolatility)
-                .mul((x, y, z) -> height.get(x, y, z) > y ? specialVariationFactor : 1)
-                .mul(conf.heightVariationFactor)
-                .add(conf.heightVariationOffset);
+        IBuilder terrainNoise = this.terrainNoise = selector.lerp(low, high);
 
-        this.terrainBuilder = selector
-                .lerp(low, high).add(randomHeight2d).mul(volatility).add(height)
-                .sub(volatility.signum().mul((x, y, z) -> y))
-                .cached(CACHE_SIZE_3D, HASH_3D);
+        int latticeCacheSize = CustomCubicConfig.latticeCacheSize;
+        this.latticeCache = ThreadLocal.withInitial(() -> XYZKeyedClockDoubleCache.create(latticeCacheSize,
+                (sectionX, sectionY, sectionZ) -> terrainNoise.get(sectionX * 4, sectionY * 8, sectionZ * 4))
+                .named("CustomTerrainGenerator.latticeCache"));
+    }
+
+    /**
+     * Returns cache policy from the "cubicgen:cache_policy" option of the preset, or {@link CustomCubicConfig#cachePolicy} if not set.
+     * Presets can set it in replacerConfig, so that no new preset version is needed for a performance setting.
+     */
+    private CachePolicy getCachePolicy() {
+        Object value = conf.replacerConfig.getValue(new ResourceLocation(CustomCubicMod.MODID, "cache_policy"));
+        if (value != null) {
+            CachePolicy policy = CachePolicy.parse(value.toString());
+            if (policy != null) {
+                return policy;
+            }
+            CustomCubicMod.LOGGER.warn("Unknown cache policy {} in preset, using {}", value, CustomCubicConfig.cachePolicy);
+        }
+        return CustomCubicConfig.cachePolicy;
+    }
+
+    /**
+     * Returns cache size from the "cubicgen:" + name option of the preset, or the given default size if not set.
+     */
+    private int getCacheSize(String name, int defaultSize) {
+        Object value = conf.replacerConfig.getValue(new ResourceLocation(CustomCubicMod.MODID, name));
+        if (value instanceof Number && ((Number) value).intValue() > 0) {
+            return ((Number) value).intValue();
+        }
+        return defaultSize;
+    }
+
+    /**
+     * Computes terrain density from the 3d noise value and 2d inputs computed in advance.
+     * <p>
+     * Density is {@code (noise + randomHeight) * volatility + height - signum(volatility) * y}, where volatility is
+     * biome volatility multiplied by a special factor below average height, then scaled and offset by the preset settings.
+     *
+     * @param noise value of terrainNoise at this position
+     * @param y block y coordinate
+     * @param randomHeight value of randomHeight2d at this x/z position
+     * @param height value of the height builder at this x/z position
+     * @param biomeVolatility biome height variation at this x/z position
+     */
+    private double getDensity(double noise, int y, double randomHeight, double height, double biomeVolatility) {
+        // don't change the order of operations, it would change the generated terrain slightly
+        double volatility = biomeVolatility * (height > y ? conf.specialHeightVariationFactorBelowAverageY : 1)
+                * conf.heightVariationFactor + conf.heightVariationOffset;
+        return (noise + randomHeight) * volatility + height - Math.signum(volatility) * y;
     }
 
     @Override
@@ -215,6 +355,29 @@ public class CustomTerrainGenerator extends BasicCubeGenerator {
 
     @Override
     public CubePrimer generateCube(int cubeX, int cubeY, int cubeZ, CubePrimer primer) {
+        return generateCube(cubeX, cubeY, cubeZ, primer, null);
+    }
+
+    /**
+     * Generates a vertical stack of cubes. The 2d inputs of the density function and biome block replacers
+     * are computed only once for the whole stack, which is faster than generating each cube separately.
+     *
+     * @param cubeX cube x location
+     * @param minCubeY y location of the bottom cube
+     * @param cubeZ cube z location
+     * @param count number of cubes to generate
+     * @return generated cubes, from bottom to top
+     */
+    public CubePrimer[] generateCubeStack(int cubeX, int minCubeY, int cubeZ, int count) {
+        ColumnData column = createColumnData(cubeX, cubeZ);
+        CubePrimer[] primers = new CubePrimer[count];
+        for (int i = 0; i < count; i++) {
+            primers[i] = generateCube(cubeX, minCubeY + i, cubeZ, new CubePrimer(), column);
+        }
+        return primers;
+    }
+
+    private CubePrimer generateCube(int cubeX, int cubeY, int cubeZ, CubePrimer primer, @Nullable ColumnData column) {
         if (!areaGenerators.isEmpty()) {
             for (CustomGeneratorSettings.IntAABB aabb : areaGenerators.keySet()) {
                 if (!aabb.contains(cubeX, cubeY, cubeZ)) {
@@ -223,14 +386,126 @@ public class CustomTerrainGenerator extends BasicCubeGenerator {
                 return areaGenerators.get(aabb).generateCube(cubeX, cubeY, cubeZ, primer);
             }
         }
-        generate(primer, cubeX, cubeY, cubeZ);
-        generateStructures(primer, new CubePos(cubeX, cubeY, cubeZ));
+        if (column == null) {
+            column = createColumnData(cubeX, cubeZ);
+        }
+        CubeContentSummary summary = new CubeContentSummary();
+        long t = GenerationProfiler.start();
+        boolean uniform = generateWithoutNoise(primer, cubeY, column, summary);
+        UNIFORM_FILL_STAGE.end(t);
+        if (!uniform) {
+            generate(primer, cubeY, column, summary);
+        }
+        generateStructures(primer, new CubePos(cubeX, cubeY, cubeZ), summary);
         if (fillCubeBiomes) {
             fill3dBiomes(cubeX, cubeY, cubeZ, primer);
         }
         return primer;
     }
 
+    /**
+     * Generates multiple cubes in parallel, using {@link #getGenerationPool()}.
+     *
+     * @see #generateCubes(Collection, Executor)
+     */
+    public Map<CubePos, CompletableFuture<CubePrimer>> generateCubes(Collection<CubePos> positions) {
+        return generateCubes(positions, getGenerationPool());
+    }
+
+    /**
+     * Generates multiple cubes in parallel. Each cube goes through density evaluation, biome block replacement and
+     * structure generation the same way as in {@link #generateCube(int, int, int, CubePrimer)}.
+     * <p>
+     * Cubes in the same column are generated one after another on the same thread, computing 2d data only once
+     * for the whole column (see {@link #generateCubeStack(int, int, int, int)}). Columns are submitted sorted
+     * by x and z so that neighboring columns run close together.
+     * <p>
+     * If the biome provider isn't thread safe (see {@link #isThreadSafe()}), all cubes are generated on the calling thread
+     * instead, and the returned futures are already completed.
+     *
+     * @param positions positions of the cubes to generate
+     * @param executor the executor to run generation tasks on
+     * @return future for each generated cube, in iteration order of {@code positions}
+     */
+    public Map<CubePos, CompletableFuture<CubePrimer>> generateCubes(Collection<CubePos> positions, Executor executor) {
+        if (!isThreadSafe()) {
+            // the server thread uses the same biome provider without any locking
+            executor = Runnable::run;
+        }
+        Map<CubePos, CompletableFuture<CubePrimer>> futures = new LinkedHashMap<>();
+        Map<ChunkPos, List<CubePos>> columns = new HashMap<>();
+        for (CubePos pos : positions) {
+            if (futures.containsKey(pos)) {
+                continue;
+            }
+            futures.put(pos, new CompletableFuture<>());
+            columns.computeIfAbsent(new ChunkPos(pos.getX(), pos.getZ()), p -> new ArrayList<>()).add(pos);
+        }
+
+        List<ChunkPos> columnOrder = new ArrayList<>(columns.keySet());
+        columnOrder.sort(Comparator.<ChunkPos>comparingInt(p -> p.x).thenComparingInt(p -> p.z));
+        for (ChunkPos columnPos : columnOrder) {
+            List<CubePos> column = columns.get(columnPos);
+            column.sort(Comparator.comparingInt(CubePos::getY));
+            try {
+                executor.execute(() -> {
+                    ColumnData columnData = null;
+                    for (CubePos pos : column) {
+                        CompletableFuture<CubePrimer> future = futures.get(pos);
+                        try {
+                            if (columnData == null) {
+                                columnData = createColumnData(columnPos.x, columnPos.z);
+                            }
+                            future.complete(generateCube(pos.getX(), pos.getY(), pos.getZ(), new CubePrimer(), columnData));
+                        } catch (Throwable t) {
+                            future.completeExceptionally(t);
+                        }
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                for (CubePos pos : column) {
+                    futures.get(pos).completeExceptionally(e);
+                }
+            }
+        }
+        return futures;
+    }
+
+    /**
+     * Returns true if cubes can be generated by multiple threads at the same time. This depends on the biome providers
+     * of this generator and of all cube areas.
+     */
+    public boolean isThreadSafe() {
+        if (!biomeSource.isThreadSafe()) {
+            return false;
+        }
+        for (CustomTerrainGenerator generator : areaGenerators.values()) {
+            if (!generator.isThreadSafe()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns the shared pool used for parallel cube generation. Number of threads is set by
+     * {@link CustomCubicConfig#generationThreads} when the pool is first used.
+     */
+    public static synchronized ForkJoinPool getGenerationPool() {
+        if (generationPool == null) {
+            int threads = CustomCubicConfig.generationThreads > 0 ?
+                    CustomCubicConfig.generationThreads : Runtime.getRuntime().availableProcessors();
+            ClassLoader classLoader = CustomTerrainGenerator.class.getClassLoader();
+            generationPool = new ForkJoinPool(threads, pool -> {
+                ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+                thread.setName("CWG Terrain Generator #" + thread.getPoolIndex());
+                thread.setContextClassLoader(classLoader);
+                return thread;
+            }, null, false);
+        }
+        return generationPool;
+    }
+
     private void fill3dBiomes(int cubeX, int cubeY, int cubeZ, CubePrimer primer) {
         int minX = cubeX * 4;
         int minY = cubeY * 4;
@@ -272,80 +547,321 @@ public class CustomTerrainGenerator extends BasicCubeGenerator {
             Random rand = Coords.coordsSeedRandom(cube.getWorld().getSeed(), cube.getX(), cube.getY(), cube.getZ());
 
             MinecraftForge.EVENT_BUS.post(new PopulateCubeEvent.Pre(world, rand, pos.getX(), pos.getY(), pos.getZ(), false));
-            strongholds.generateStructure(world, rand, pos);
-            populators.get(cubicBiome.getBiome()).generate(world, rand, pos, cubicBiome.getBiome());
+            long t = GenerationProfiler.start();
+            synchronized (strongholds) {
+                strongholds.generateStructure(world, rand, pos);
+            }
+            POPULATE_STRONGHOLDS_STAGE.end(t);
+            t = GenerationProfiler.start();
+            populatorsByIndex[cubicBiome.getIndex()].generate(world, rand, pos, cubicBiome.getBiome());
+            populateStagesByIndex[cubicBiome.getIndex()].end(t);
             MinecraftForge.EVENT_BUS.post(new PopulateCubeEvent.Post(world, rand, pos.getX(), pos.getY(), pos.getZ(), false));
             CubeGeneratorsRegistry.generateWorld(world, rand, pos, cubicBiome.getBiome()); }
     }
 
     @Override
     public void recreateStructures(ICube cube) {
-        this.strongholds.generate(world, null, cube.getCoords());
+        synchronized (strongholds) {
+            this.strongholds.generate(world, null, cube.getCoords());
+        }
     }
 
     @Nullable @Override
     public BlockPos getClosestStructure(String name, BlockPos pos, boolean findUnexplored) {
         if ("Stronghold".equals(name)) {
-            return strongholds.getNearestStructurePos((World) world, pos, true);
+            synchronized (strongholds) {
+                return strongholds.getNearestStructurePos((World) world, pos, true);
+            }
         }
         return null;
     }
 
     /**
-     * Generate the cube as the specified location
+     * Generate the cube as the specified location, using precomputed column data
      *
      * @param cubePrimer cube primer to use
-     * @param cubeX cube x location
      * @param cubeY cube y location
-     * @param cubeZ cube z location
+     * @param column 2d data of the column of this cube
+     * @param summary summary of the generated blocks to fill
+     */
+    private void generate(final CubePrimer cubePrimer, int cubeY, ColumnData column, CubeContentSummary summary) {
+        reloadIfDebugKeyPressed();
+
+        // 5x3x5 lattice of density values, blocks in between are interpolated
+        final int minSectionX = column.cubeX * 4;
+        final int minSectionY = cubeY * 2;
+        final int minSectionZ = column.cubeZ * 4;
+        final double[] lattice = new double[5 * 3 * 5];
+        long t = GenerationProfiler.start();
+        XYZKeyedClockDoubleCache cache = latticeCache.get();
+        if (cache.capacity() == 0) {
+            terrainNoise.fillGrid(lattice, minSectionX * 4, minSectionY * 8, minSectionZ * 4, 5, 3, 5, 4, 8, 4);
+        } else {
+            int i = 0;
+            for (int sectionY = 0; sectionY < 3; sectionY++) {
+                for (int sectionZ = 0; sectionZ < 5; sectionZ++) {
+                    for (int sectionX = 0; sectionX < 5; sectionX++) {
+                        lattice[i++] = cache.get(minSectionX + sectionX, minSectionY + sectionY, minSectionZ + sectionZ);
+                    }
+                }
+            }
+        }
+        for (int sectionY = 0; sectionY < 3; sectionY++) {
+            int y = (minSectionY + sectionY) * 8;
+            for (int idx2d = 0; idx2d < 25; idx2d++) {
+                int idx = idx2d + sectionY * 25;
+                lattice[idx] = getDensity(lattice[idx], y,
+                        column.randomHeight[idx2d], column.height[idx2d], column.volatility[idx2d]);
+            }
+        }
+        DENSITY_LATTICE_STAGE.end(t);
+
+        BlockPos start = new BlockPos(minSectionX, minSectionY, minSectionZ);
+        BlockPos end = start.add(4, 2, 4);
+        DensityBuffer buffer = DENSITY_BUFFER.get();
+        t = GenerationProfiler.start();
+        IBuilder.forEachScaled(lattice, start, end, new Vec3i(4, 8, 4), (x, y, z, dx, dy, dz, v) -> {
+            int idx = (blockToLocal(z) << 4 | blockToLocal(x)) << 4 | blockToLocal(y);
+            buffer.density[idx] = v;
+            buffer.dx[idx] = dx;
+            buffer.dy[idx] = dy;
+            buffer.dz[idx] = dz;
+        });
+        INTERPOLATION_STAGE.end(t);
+
+        t = GenerationProfiler.start();
+        IBlockState[] blocks = buffer.blocks;
+        int minX = start.getX() * 4, minY = start.getY() * 8, minZ = start.getZ() * 4;
+        for (int i = 0; i < ICube.SIZE * ICube.SIZE; i++) {
+            int offset = i << 4;
+            System.arraycopy(buffer.density, offset, buffer.columnDensity, 0, ICube.SIZE);
+            System.arraycopy(buffer.dx, offset, buffer.columnDx, 0, ICube.SIZE);
+            System.arraycopy(buffer.dy, offset, buffer.columnDy, 0, ICube.SIZE);
+            System.arraycopy(buffer.dz, offset, buffer.columnDz, 0, ICube.SIZE);
+            Arrays.fill(blocks, Blocks.AIR.getDefaultState());
+
+            int localX = i & 0xF, localZ = i >> 4;
+            List<IBiomeBlockReplacer> replacers = column.replacers[i];
+            int size = replacers.size();
+            for (int r = 0; r < size; r++) {
+                replacers.get(r).replaceColumn(blocks, buffer.columnDensity, buffer.columnDx, buffer.columnDy, buffer.columnDz,
+                        minX + localX, minY, minZ + localZ);
+            }
+            for (int localY = 0; localY < ICube.SIZE; localY++) {
+                cubePrimer.setBlockState(localX, localY, localZ, blocks[localY]);
+            }
+            summary.addColumn(localX, localZ, blocks);
+        }
+        REPLACERS_STAGE.end(t);
+    }
+
+    /**
+     * Fills the cube without sampling 3d noise, if bounds of density in that cube are enough for biome block replacers
+     * to tell which block goes where. This is the case for most cubes far above or below the surface.
+     *
+     * @param cubePrimer cube primer to use
+     * @param cubeY cube y location
+     * @param column 2d data of the column of this cube
+     * @param summary summary of the generated blocks to fill, only modified if the cube is generated
+     * @return true if the cube has been generated
      */
-    private void generate(final CubePrimer cubePrimer, int cubeX, int cubeY, int cubeZ) {
+    private boolean generateWithoutNoise(final CubePrimer cubePrimer, int cubeY, ColumnData column, CubeContentSummary summary) {
+        // density of each block is interpolated from the 5x3x5 lattice, so it's between the lowest and highest lattice value.
+        // Density is linear in the 3d noise value, so lattice values are between density computed for noise bounds
+        double minDensity = Double.POSITIVE_INFINITY;
+        double maxDensity = Double.NEGATIVE_INFINITY;
+        for (int sectionY = 0; sectionY < 3; sectionY++) {
+            int y = (cubeY * 2 + sectionY) * 8;
+            for (int i = 0; i < 25; i++) {
+                double d1 = getDensity(minTerrainNoise, y, column.randomHeight[i], column.height[i], column.volatility[i]);
+                double d2 = getDensity(maxTerrainNoise, y, column.randomHeight[i], column.height[i], column.volatility[i]);
+                minDensity = Math.min(minDensity, Math.min(d1, d2));
+                maxDensity = Math.max(maxDensity, Math.max(d1, d2));
+            }
+        }
+        double epsilon = DENSITY_BOUND_EPSILON * (1 + Math.max(Math.abs(minDensity), Math.abs(maxDensity)));
+        minDensity -= epsilon;
+        maxDensity += epsilon;
+        if (!(minDensity > 0 || maxDensity <= 0)) {
+            // the surface may be in this cube (written this way to also handle NaN)
+            return false;
+        }
+        // gradient components are differences of interpolated values, divided by at least 4
+        double maxGradient = (maxDensity - minDensity) / 4;
+
+        IBlockState[][] blocks = new IBlockState[ICube.SIZE * ICube.SIZE][];
+        List<IBiomeBlockReplacer> lastReplacers = null;
+        IBlockState[] lastBlocks = null;
+        int minBlockY = Coords.cubeToMinBlock(cubeY);
+        for (int i = 0; i < blocks.length; i++) {
+            List<IBiomeBlockReplacer> replacers = column.replacers[i];
+            if (replacers != lastReplacers) {
+                lastBlocks = getUniformBlocks(replacers, minBlockY, minDensity, maxDensity, maxGradient);
+                if (lastBlocks == null) {
+                    return false;
+                }
+                lastReplacers = replacers;
+            }
+            blocks[i] = lastBlocks;
+        }
+
+        for (int i = 0; i < blocks.length; i++) {
+            IBlockState[] columnBlocks = blocks[i];
+            for (int localY = 0; localY < ICube.SIZE; localY++) {
+                cubePrimer.setBlockState(i & 0xF, localY, i >> 4, columnBlocks[localY]);
+            }
+            summary.addColumn(i & 0xF, i >> 4, columnBlocks);
+        }
+        return true;
+    }
+
+    /**
+     * Returns blocks for each Y coordinate of a cube, if biome block replacers can determine them knowing only bounds of density.
+     */
+    @Nullable
+    private IBlockState[] getUniformBlocks(List<IBiomeBlockReplacer> replacers, int minBlockY,
+            double minDensity, double maxDensity, double maxGradient) {
+        IBlockState[] blocks = new IBlockState[ICube.SIZE];
+        int size = replacers.size();
+        for (int localY = 0; localY < ICube.SIZE; localY++) {
+            IBlockState block = Blocks.AIR.getDefaultState();
+            for (int i = 0; i < size; i++) {
+                block = replacers.get(i).getUniformReplacedBlock(block, minBlockY + localY, minDensity, maxDensity, maxGradient);
+                if (block == null) {
+                    return null;
+                }
+            }
+            blocks[localY] = block;
+        }
+        return blocks;
+    }
+
+    private void reloadIfDebugKeyPressed() {
         // when debugging is enabled, allow reloading generator settings after pressing L
         // no need to restart after applying changes.
         // Seed it changed to some constant because world isn't easily accessible here
         if (CustomCubicMod.DEBUG_ENABLED && FMLCommonHandler.instance().getSide().isClient() && Keyboard.isKeyDown(Keyboard.KEY_L)) {
             initGenerator(42);
         }
+    }
 
-        BlockPos start = new BlockPos(cubeX * 4, cubeY * 2, cubeZ * 4);
-        BlockPos end = start.add(4, 2, 4);
-        terrainBuilder.forEachScaled(start, end, new Vec3i(4, 8, 4),
-                (x, y, z, dx, dy, dz, v) ->
-                        cubePrimer.setBlockState(
-                                blockToLocal(x), blockToLocal(y), blockToLocal(z),
-                                getBlock(x, y, z, dx, dy, dz, v))
-        );
+    private ColumnData createColumnData(int cubeX, int cubeZ) {
+        long t = GenerationProfiler.start();
+        ColumnData column = columnDataStore == null ? null : loadColumnData(cubeX, cubeZ);
+        if (column == null) {
+            column = generateColumnData(cubeX, cubeZ);
+            if (columnDataStore != null) {
+                saveColumnData(column);
+            }
+        }
+        COLUMN_DATA_STAGE.end(t);
+        return column;
+    }
 
+    private ColumnData generateColumnData(int cubeX, int cubeZ) {
+        ColumnData column = new ColumnData(cubeX, cubeZ, biomeSource.getReplacersForCube(cubeX, cubeZ));
+        for (int sectionZ = 0; sectionZ < 5; sectionZ++) {
+            int z = (cubeZ * 4 + sectionZ) * 4;
+            for (int sectionX = 0; sectionX < 5; sectionX++) {
+                int x = (cubeX * 4 + sectionX) * 4;
+                int idx = sectionX + sectionZ * 5;
+                column.randomHeight[idx] = randomHeight2d.get(x, 0, z);
+                column.height[idx] = height.get(x, 0, z);
+                column.volatility[idx] = biomeSource.getVolatility(x, 0, z);
+            }
+        }
+        return column;
     }
 
-    /**
-     * Retrieve the blockstate appropriate for the specified builder entry
-     *
-     * @return The block state
-     */
-    private IBlockState getBlock(int x, int y, int z, double dx, double dy, double dz, double density) {
-        List<IBiomeBlockReplacer> replacers = biomeSource.getReplacers(x, y, z);
-        IBlockState block = Blocks.AIR.getDefaultState();
-        int size = replacers.size();
-        for (int i = 0; i < size; i++) {
-            block = replacers.get(i).getReplacedBlock(block, x, y, z, dx, dy, dz, density);
+    @Nullable
+    private ColumnData loadColumnData(int cubeX, int cubeZ) {
+        assert columnDataStore != null;
+        byte[] biomeIds = new byte[RegionColumnDataStore.BIOMES_SIZE];
+        double[] randomHeight = new double[25], height = new double[25], volatility = new double[25];
+        if (!columnDataStore.read(cubeX, cubeZ, biomeIds, randomHeight, height, volatility)) {
+            return null;
+        }
+        CubicBiome[] biomes = new CubicBiome[biomeIds.length];
+        for (int i = 0; i < biomes.length; i++) {
+            biomes[i] = CubicBiome.getCubic(biomeIds[i] & 0xFF);
+            if (biomes[i] == null) {
+                return null;
+            }
+        }
+        ColumnData column = new ColumnData(cubeX, cubeZ, biomeSource.getReplacers(biomes));
+        System.arraycopy(randomHeight, 0, column.randomHeight, 0, 25);
+        System.arraycopy(height, 0, column.height, 0, 25);
+        System.arraycopy(volatility, 0, column.volatility, 0, 25);
+        return column;
+    }
+
+    private void saveColumnData(ColumnData column) {
+        assert columnDataStore != null;
+        CubicBiome[] biomes = biomeSource.getBiomesForCube(column.cubeX, column.cubeZ);
+        byte[] biomeIds = new byte[biomes.length];
+        for (int i = 0; i < biomes.length; i++) {
+            int index = biomes[i].getIndex();
+            if (index > 0xFF) {
+                return;
+            }
+            biomeIds[i] = (byte) index;
         }
-        return block;
+        columnDataStore.write(column.cubeX, column.cubeZ, biomeIds, column.randomHeight, column.height, column.volatility);
+    }
+
+    @Nullable
+    private static RegionColumnDataStore createColumnDataStore(World world, CustomGeneratorSettings settings, long seed) {
+        if (!CustomCubicConfig.columnDataStore || world.isRemote) {
+            return null;
+        }
+        // stored biome ids are only valid for the same biome registry
+        StringBuilder key = new StringBuilder().append(seed).append(';').append(settings.toJsonObject().toJson());
+        for (Biome biome : ForgeRegistries.BIOMES) {
+            key.append(';').append(Biome.getIdForBiome(biome)).append('=').append(biome.getRegistryName());
+        }
+        String saveFolder = world.provider.getSaveFolder();
+        File directory = new File(world.getSaveHandler().getWorldDirectory(),
+                (saveFolder == null ? "" : saveFolder + "/") + "data/" + CustomCubicMod.MODID + "/column_data/"
+                        + RegionColumnDataStore.directoryName(key.toString()));
+        return new RegionColumnDataStore(directory, key.toString());
     }
 
     public void generateStructures(CubePrimer cube, CubePos cubePos) {
+        generateStructures(cube, cubePos, null);
+    }
+
+    /**
+     * Generates structures in the given cube. If the summary of blocks placed by terrain generation is known, caves and
+     * ravines are skipped when there is nothing for them to carve.
+     */
+    private void generateStructures(CubePrimer cube, CubePos cubePos, @Nullable CubeContentSummary summary) {
         // generate world populator
-        if (this.conf.caves) {
+        if (this.conf.caves && !canSkipCarving(caveGenerator, summary)) {
+            long t = GenerationProfiler.start();
             this.caveGenerator.generate(world, cube, cubePos);
+            CAVES_STAGE.end(t);
         }
-        if (this.conf.ravines) {
+        if (this.conf.ravines && !canSkipCarving(ravineGenerator, summary)) {
+            long t = GenerationProfiler.start();
             this.ravineGenerator.generate(world, cube, cubePos);
+            RAVINES_STAGE.end(t);
         }
         if (this.conf.strongholds) {
-            this.strongholds.generate(world, cube, cubePos);
+            long t = GenerationProfiler.start();
+            // stronghold structure map is shared between all cubes
+            synchronized (strongholds) {
+                this.strongholds.generate(world, cube, cubePos);
+            }
+            STRONGHOLDS_STAGE.end(t);
         }
     }
 
+    private static boolean canSkipCarving(ICubicStructureGenerator generator, @Nullable CubeContentSummary summary) {
+        // the default cave and ravine generators only replace carvable blocks, generators from other mods may not
+        return summary != null && summary.getCarvableBlocks() == 0
+                && (generator instanceof CubicCaveGenerator || generator instanceof CubicRavineGenerator);
+    }
+
     public final ICubicStructureGenerator getCaveGenerator() {
         return caveGenerator;
     }
@@ -365,4 +881,41 @@ public class CustomTerrainGenerator extends BasicCubeGenerator {
     public Map<Biome, ICubicPopulator> getPopulators() {
         return populators;
     }
+
+    /**
+     * 2d inputs of the terrain generator for one cube column, shared by all cubes generated in that column.
+     * Arrays of noise values are indexed by [sectionX + sectionZ * 5] for the 5x5 corners of 4x4 block sections.
+     */
+    private static final class ColumnData {
+
+        final int cubeX, cubeZ;
+        final double[] randomHeight = new double[25];
+        final double[] height = new double[25];
+        final double[] volatility = new double[25];
+        /** Biome block replacers indexed by [localZ << 4 | localX] */
+        final List<IBiomeBlockReplacer>[] replacers;
+
+        ColumnData(int cubeX, int cubeZ, List<IBiomeBlockReplacer>[] replacers) {
+            this.cubeX = cubeX;
+            this.cubeZ = cubeZ;
+            this.replacers = replacers;
+        }
+    }
+
+    /**
+     * Interpolated density and gradient of a cube, indexed by [(localZ << 4 | localX) << 4 | localY] so that each block column
+     * is contiguous, and a single block column passed to biome block replacers.
+     */
+    private static final class DensityBuffer {
+
+        final double[] density = new double[ICube.SIZE * ICube.SIZE * ICube.SIZE];
+        final double[] dx = new double[ICube.SIZE * ICube.SIZE * ICube.SIZE];
+        final double[] dy = new double[ICube.SIZE * ICube.SIZE * ICube.SIZE];
+        final double[] dz = new double[ICube.SIZE * ICube.SIZE * ICube.SIZE];
+        final double[] columnDensity = new double[ICube.SIZE];
+        final double[] columnDx = new double[ICube.SIZE];
+        final double[] columnDy = new double[ICube.SIZE];
+        final double[] columnDz = new double[ICube.SIZE];
+        final IBlockState[] blocks = new IBlockState[ICube.SIZE];
+    }
 }
@@ -0,0 +1,160 @@
+/*
+ *  This file is part of Cubic World Generation, licensed under the MIT License (MIT).
+ *
+ *  Copyright (c) 2015-2020 contributors
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ */
+package io.github.opencubicchunks.cubicchunks.cubicgen.customcubic.builder;
+
+import mcp.MethodsReturnNonnullByDefault;
+
+import java.util.function.DoublePredicate;
+
+import javax.annotation.Nullable;
+import javax.annotation.ParametersAreNonnullByDefault;
+
+/**
+ * Combines values of 2 builders using an arithmetic operation.
+ * <p>
+ * When one of the builders is a constant, the operation is turned into a {@link UnaryChainNode} instead, so that it can
+ * be fused with other operations on the same builder.
+ */
+@ParametersAreNonnullByDefault
+@MethodsReturnNonnullByDefault
+final class BinaryNode implements IBuilder {
+
+    private final IBuilder left;
+    private final IBuilder right;
+    private final byte op;
+    @Nullable private final DoublePredicate predicate;
+    private final double minValue, maxValue;
+
+    private BinaryNode(IBuilder left, IBuilder right, byte op, @Nullable DoublePredicate predicate) {
+        this.left = left;
+        this.right = right;
+        this.op = op;
+        this.predicate = predicate;
+
+        double lMin = left.getMinValue(), lMax = left.getMaxValue();
+        double rMin = right.getMinValue(), rMax = right.getMaxValue();
+        double min = Double.NEGATIVE_INFINITY, max = Double.POSITIVE_INFINITY;
+        // infinite bounds mean the value may also be NaN
+        boolean finite = Double.isFinite(lMin) && Double.isFinite(lMax) && Double.isFinite(rMin) && Double.isFinite(rMax);
+        if (finite && !(op == UnaryChainNode.DIV && rMin <= 0 && rMax >= 0)) {
+            // for the remaining cases the result only increases or decreases with each argument,
+            // so the extremes are at the corners
+            double v1 = apply(op, lMin, rMin);
+            double v2 = apply(op, lMin, rMax);
+            double v3 = apply(op, lMax, rMin);
+            double v4 = apply(op, lMax, rMax);
+            min = Math.min(Math.min(v1, v2), Math.min(v3, v4));
+            max = Math.max(Math.max(v1, v2), Math.max(v3, v4));
+        }
+        if (predicate != null) {
+            // the value may be left unchanged
+            min = Math.min(min, lMin);
+            max = Math.max(max, lMax);
+        }
+        this.minValue = min;
+        this.maxValue = max;
+    }
+
+    /**
+     * Returns a builder that combines the values of left and right builder.
+     *
+     * @param left the left side of the operation
+     * @param right the right side of the operation
+     * @param op one of {@link UnaryChainNode#ADD}, {@link UnaryChainNode#SUB}, {@link UnaryChainNode#MUL} or
+     * {@link UnaryChainNode#DIV}
+     * @param predicate if not null, the operation is only applied when the predicate is true for the value of left builder,
+     * otherwise the value of left builder is returned.
+     */
+    static IBuilder create(IBuilder left, IBuilder right, byte op, @Nullable DoublePredicate predicate) {
+        if (right instanceof ConstantNode) {
+            return UnaryChainNode.append(left, op, ((ConstantNode) right).value, 0, predicate);
+        }
+        // addition and multiplication of doubles are exactly commutative
+        if (left instanceof ConstantNode && predicate == null && (op == UnaryChainNode.ADD || op == UnaryChainNode.MUL)) {
+            return UnaryChainNode.append(right, op, ((ConstantNode) left).value, 0, null);
+        }
+        return new BinaryNode(left, right, op, predicate);
+    }
+
+    @Override public double get(int x, int y, int z) {
+        double value = left.get(x, y, z);
+        if (predicate != null && !predicate.test(value)) {
+            return value;
+        }
+        return apply(op, value, right.get(x, y, z));
+    }
+
+    @Override public void fillGrid(double[] out, int x0, int y0, int z0, int nx, int ny, int nz, int stepX, int stepY, int stepZ) {
+        int size = nx * ny * nz;
+        double[] rightValues = new double[size];
+        left.fillGrid(out, x0, y0, z0, nx, ny, nz, stepX, stepY, stepZ);
+        right.fillGrid(rightValues, x0, y0, z0, nx, ny, nz, stepX, stepY, stepZ);
+        if (predicate == null) {
+            for (int i = 0; i < size; i++) {
+                out[i] = apply(op, out[i], rightValues[i]);
+            }
+        } else {
+            for (int i = 0; i < size; i++) {
+                if (predicate.test(out[i])) {
+                    out[i] = apply(op, out[i], rightValues[i]);
+                }
+            }
+        }
+    }
+
+    @Override public double getMinValue() {
+        return minValue;
+    }
+
+    @Override public double getMaxValue() {
+        return maxValue;
+    }
+
+    @Override public String toString() {
+        String name;
+        switch (op) {
+            case UnaryChainNode.ADD: name = "add"; break;
+            case UnaryChainNode.SUB: name = "sub"; break;
+            case UnaryChainNode.MUL: name = "mul"; break;
+            case UnaryChainNode.DIV: name = "div"; break;
+            default: throw new IllegalStateException();
+        }
+        return left + "." + name + (predicate == null ? "" : "If") + "(" + right + ")";
+    }
+
+    private static double apply(byte op, double a, double b) {
+        switch (op) {
+            case UnaryChainNode.ADD:
+                return a + b;
+            case UnaryChainNode.SUB:
+                return a - b;
+            case UnaryChainNode.MUL:
+                return a * b;
+            case UnaryChainNode.DIV:
+                return a / b;
+            default:
+                throw new IllegalStateException("Unknown operation " + op);
+        }
+    }
+}
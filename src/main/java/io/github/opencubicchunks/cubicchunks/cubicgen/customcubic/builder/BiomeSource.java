@@ -26,24 +26,24 @@ package io.github.opencubicchunks.cubicchunks.cubicgen.customcubic.builder;
 import io.github.opencubicchunks.cubicchunks.api.util.Coords;
 import io.github.opencubicchunks.cubicchunks.api.world.ICube;
 import io.github.opencubicchunks.cubicchunks.cubicgen.ConversionUtils;
-import io.github.opencubicchunks.cubicchunks.cubicgen.cache.HashCache;
+import io.github.opencubicchunks.cubicchunks.cubicgen.CustomCubicConfig;
+import io.github.opencubicchunks.cubicchunks.cubicgen.cache.CachePolicy;
+import io.github.opencubicchunks.cubicchunks.cubicgen.cache.LongKeyedObjectCache;
 import io.github.opencubicchunks.cubicchunks.cubicgen.common.biome.CubicBiome;
+import io.github.opencubicchunks.cubicchunks.cubicgen.common.biome.CubicBiomeProvider;
 import io.github.opencubicchunks.cubicchunks.cubicgen.common.biome.BiomeBlockReplacerConfig;
 import io.github.opencubicchunks.cubicchunks.cubicgen.common.biome.IBiomeBlockReplacer;
 import io.github.opencubicchunks.cubicchunks.cubicgen.common.biome.IBiomeBlockReplacerProvider;
 import mcp.MethodsReturnNonnullByDefault;
 import net.minecraft.util.math.ChunkPos;
-import net.minecraft.util.math.Vec3i;
 import net.minecraft.world.World;
 import net.minecraft.world.biome.Biome;
 import net.minecraft.world.biome.BiomeProvider;
 import net.minecraftforge.fml.common.registry.ForgeRegistries;
 
 import java.util.ArrayList;
-import java.util.IdentityHashMap;
 import java.util.List;
-import java.util.Map;
-import java.util.function.ToIntFunction;
+import java.util.function.LongToIntFunction;
 
 import javax.annotation.ParametersAreNonnullByDefault;
 
@@ -54,34 +54,46 @@ import javax.annotation.ParametersAreNonnullByDefault;
 public class BiomeSource {
 
     private static final int SECTION_SIZE = 4;
+    // biome terrain data is computed for square regions of REGION_SIZE x REGION_SIZE sections at once
+    private static final int REGION_BITS = 3;
+    private static final int REGION_SIZE = 1 << REGION_BITS;
+    private static final int REGION_MASK = REGION_SIZE - 1;
 
-    private static final int CHUNKS_CACHE_RADIUS = 3;
-    private static final int CHUNKS_CACHE_SIZE = CHUNKS_CACHE_RADIUS * CHUNKS_CACHE_RADIUS;
 
-    private static final int SECTIONS_CACHE_RADIUS = 16;
-    private static final int SECTIONS_CACHE_SIZE = SECTIONS_CACHE_RADIUS * SECTIONS_CACHE_RADIUS;
-
-    private static final ToIntFunction<ChunkPos> HASH_CHUNKS = v -> v.x * CHUNKS_CACHE_RADIUS + v.z;
-    private static final ToIntFunction<Vec3i> HASH_SECTIONS = v -> v.getX() * SECTIONS_CACHE_RADIUS + v.getZ();
-
-    private final Map<Biome, List<IBiomeBlockReplacer>> biomeBlockReplacers = new IdentityHashMap<>();
+    /** Biome block replacers indexed by {@link CubicBiome#getIndex()} */
+    private final List<IBiomeBlockReplacer>[] biomeBlockReplacers;
     private final double[] nearBiomeWeightArray;
 
     private BiomeProvider biomeGen;
+    // whether biomeGen can be used by multiple threads at the same time, otherwise this biome source must only be used
+    // by the thread that generates terrain in the world
+    private final boolean threadSafeBiomeGen;
     private final int smoothRadius;
     private final int smoothDiameter;
 
     /** Mapping from chunk position to 4x4 sections 4x4 blocks each */
-    private final HashCache<ChunkPos, CubicBiome[]> biomeCacheSectionsChunk;
+    private final ThreadLocal<LongKeyedObjectCache<CubicBiome[]>> biomeCacheSectionsChunk;
     /** Mapping from chunk positions to Cache with sections of 16x16 blocks (chunk) */
-    private final HashCache<ChunkPos, CubicBiome[]> biomeCacheBlocks;
+    private final ThreadLocal<LongKeyedObjectCache<CubicBiome[]>> biomeCacheBlocks;
     /** Mapping from chunk positions to Cache with sections of 16x16 blocks (chunk) */
-    private final HashCache<ChunkPos, List<IBiomeBlockReplacer>[]> biomeBlockReplacerCache;
+    private final ThreadLocal<LongKeyedObjectCache<List<IBiomeBlockReplacer>[]>> biomeBlockReplacerCache;
 
-    private final HashCache<Vec3i, BiomeTerrainData> biomeDataCache;
+    private final ThreadLocal<LongKeyedObjectCache<BiomeTerrainData>> biomeDataCache;
 
     public BiomeSource(World world, BiomeBlockReplacerConfig conf, BiomeProvider biomeGen, int smoothRadius) {
+        this(world, conf, biomeGen, smoothRadius, CustomCubicConfig.cachePolicy,
+                CustomCubicConfig.biomeChunkCacheSize, CustomCubicConfig.biomeSectionCacheSize);
+    }
+
+    /**
+     * @param cachePolicy how the per-thread caches are organized
+     * @param chunkCacheSize amount of chunk columns of biomes and block replacers cached per thread
+     * @param sectionCacheSize amount of 4x4 block sections of biome terrain data cached per thread, rounded up to whole regions
+     */
+    public BiomeSource(World world, BiomeBlockReplacerConfig conf, BiomeProvider biomeGen, int smoothRadius,
+            CachePolicy cachePolicy, int chunkCacheSize, int sectionCacheSize) {
         this.biomeGen = biomeGen;
+        this.threadSafeBiomeGen = CubicBiomeProvider.isThreadSafe(biomeGen);
         this.smoothRadius = smoothRadius;
         this.smoothDiameter = smoothRadius * 2 + 1;
 
@@ -94,11 +106,27 @@ public class BiomeSource {
             }
         }
 
-        this.biomeCacheSectionsChunk = HashCache.create(CHUNKS_CACHE_SIZE, HASH_CHUNKS, this::generateBiomeSections);
-        this.biomeCacheBlocks = HashCache.create(CHUNKS_CACHE_SIZE, HASH_CHUNKS, this::generateBiomes);
-        this.biomeDataCache = HashCache.create(SECTIONS_CACHE_SIZE, HASH_SECTIONS, this::generateBiomeTerrainData);
-        this.biomeBlockReplacerCache = HashCache.create(CHUNKS_CACHE_SIZE, HASH_CHUNKS, this::generateReplacers);
-
+        LongToIntFunction hashChunks = windowHash(cachePolicy.sets(chunkCacheSize));
+        // a cube column can need data from up to 2x2 regions
+        int regionCacheSize = Math.max(4, (sectionCacheSize + REGION_SIZE * REGION_SIZE - 1) / (REGION_SIZE * REGION_SIZE));
+        LongToIntFunction hashRegions = windowHash(cachePolicy.sets(regionCacheSize));
+        // caches are per-thread, so that multiple threads can generate terrain at the same time
+        this.biomeCacheSectionsChunk = ThreadLocal.withInitial(() ->
+                LongKeyedObjectCache.create(chunkCacheSize, cachePolicy, hashChunks, this::generateBiomeSections)
+                        .named("BiomeSource.biomeCacheSectionsChunk"));
+        this.biomeCacheBlocks = ThreadLocal.withInitial(() ->
+                LongKeyedObjectCache.create(chunkCacheSize, cachePolicy, hashChunks, this::generateBiomes)
+                        .named("BiomeSource.biomeCacheBlocks"));
+        this.biomeDataCache = ThreadLocal.withInitial(() ->
+                LongKeyedObjectCache.create(regionCacheSize, cachePolicy, hashRegions, this::generateBiomeTerrainData)
+                        .named("BiomeSource.biomeDataCache"));
+        this.biomeBlockReplacerCache = ThreadLocal.withInitial(() ->
+                LongKeyedObjectCache.create(chunkCacheSize, cachePolicy, hashChunks, this::generateReplacers)
+                        .named("BiomeSource.biomeBlockReplacerCache"));
+
+        @SuppressWarnings("unchecked")
+        List<IBiomeBlockReplacer>[] replacersByIndex = new List[CubicBiome.getIndexCount()];
+        this.biomeBlockReplacers = replacersByIndex;
         for (Biome biome : ForgeRegistries.BIOMES) {
             CubicBiome cubicBiome = CubicBiome.getCubic(biome);
             Iterable<IBiomeBlockReplacerProvider> providers = cubicBiome.getReplacerProviders();
@@ -107,120 +135,212 @@ public class BiomeSource {
                 replacers.add(prov.create(world, cubicBiome, conf));
             }
 
-            biomeBlockReplacers.put(biome, replacers);
+            biomeBlockReplacers[cubicBiome.getIndex()] = replacers;
         }
     }
 
-    private List<IBiomeBlockReplacer>[] generateReplacers(ChunkPos pos) {
-        CubicBiome[] biomes = biomeCacheBlocks.get(pos);
-        return this.mapToReplacers(biomes);
+    /**
+     * Returns true if this biome source can be used by multiple threads at the same time. Vanilla biome providers aren't
+     * thread safe, and they are also used by the server thread outside of terrain generation.
+     */
+    public boolean isThreadSafe() {
+        return threadSafeBiomeGen;
     }
 
-    private BiomeTerrainData generateBiomeTerrainData(Vec3i pos) {
-
-        // Calculate weighted average of nearby biomes height and volatility
-        double smoothVolatility = 0.0F;
-        double smoothHeight = 0.0F;
-
-        double biomeWeightSum = 0.0F;
-        final Biome centerBiomeConfig = getBiomeForSection(pos.getX(), pos.getZ()).getBiome();
-        final int lookRadius = this.smoothRadius;
-
-        for (int nextX = -lookRadius; nextX <= lookRadius; nextX++) {
-            for (int nextZ = -lookRadius; nextZ <= lookRadius; nextZ++) {
-                final Biome biome = getBiomeForSection(pos.getX() + nextX, pos.getZ() + nextZ).getBiome();
-
-                final double biomeHeight = biome.getBaseHeight();
-                final double biomeVolatility = biome.getHeightVariation();
-
-                double biomeWeight = calcBiomeWeight(nextX, nextZ, biomeHeight);
+    private List<IBiomeBlockReplacer>[] generateReplacers(long pos) {
+        CubicBiome[] biomes = biomeCacheBlocks.get().get(pos);
+        return this.mapToReplacers(biomes);
+    }
 
-                biomeWeight = Math.abs(biomeWeight);
-                if (biomeHeight > centerBiomeConfig.getBaseHeight()) {
-                    // prefer biomes with lower height?
-                    biomeWeight /= 2.0F;
+    /**
+     * Computes weighted average of nearby biome height and volatility for all sections in a region. Biomes of the region,
+     * padded by smoothing radius, are loaded once into a grid, and then averaged for each section of the region.
+     */
+    private BiomeTerrainData generateBiomeTerrainData(long pos) {
+        final int radius = this.smoothRadius;
+        final int gridSize = REGION_SIZE + radius * 2;
+        final int gridMinX = keyX(pos) * REGION_SIZE - radius;
+        final int gridMinZ = keyZ(pos) * REGION_SIZE - radius;
+
+        // base height and height variation of biomes in each section of the grid, indexed by [x + z * gridSize]
+        final double[] biomeHeight = new double[gridSize * gridSize];
+        final double[] biomeVolatility = new double[gridSize * gridSize];
+        final int maxChunkX = Math.floorDiv(gridMinX + gridSize - 1, 4);
+        final int maxChunkZ = Math.floorDiv(gridMinZ + gridSize - 1, 4);
+        for (int chunkZ = Math.floorDiv(gridMinZ, 4); chunkZ <= maxChunkZ; chunkZ++) {
+            for (int chunkX = Math.floorDiv(gridMinX, 4); chunkX <= maxChunkX; chunkX++) {
+                CubicBiome[] sections = biomeCacheSectionsChunk.get().get(ChunkPos.asLong(chunkX, chunkZ));
+                for (int localZ = 0; localZ < 4; localZ++) {
+                    int gridZ = chunkZ * 4 + localZ - gridMinZ;
+                    if (gridZ < 0 || gridZ >= gridSize) {
+                        continue;
+                    }
+                    for (int localX = 0; localX < 4; localX++) {
+                        int gridX = chunkX * 4 + localX - gridMinX;
+                        if (gridX < 0 || gridX >= gridSize) {
+                            continue;
+                        }
+                        Biome biome = sections[localX + localZ * 4].getBiome();
+                        biomeHeight[gridX + gridZ * gridSize] = biome.getBaseHeight();
+                        biomeVolatility[gridX + gridZ * gridSize] = biome.getHeightVariation();
+                    }
                 }
-                smoothVolatility += biomeVolatility * biomeWeight;
-                smoothHeight += biomeHeight * biomeWeight;
-
-                biomeWeightSum += biomeWeight;
             }
         }
 
-        smoothVolatility /= biomeWeightSum;
-        smoothHeight /= biomeWeightSum;
-
         BiomeTerrainData data = new BiomeTerrainData();
-        // Convert from vanilla height/volatility format
-        // to something easier to predict
-        data.heightVariation = ConversionUtils.biomeHeightVariationVanilla((float) smoothVolatility);
-        data.height += ConversionUtils.biomeHeightVanilla((float) smoothHeight);
+        for (int z = 0; z < REGION_SIZE; z++) {
+            for (int x = 0; x < REGION_SIZE; x++) {
+                final int center = (x + radius) + (z + radius) * gridSize;
+                final double centerHeight = biomeHeight[center];
+
+                // Calculate weighted average of nearby biomes height and volatility
+                double smoothVolatility = 0.0F;
+                double smoothHeight = 0.0F;
+                double biomeWeightSum = 0.0F;
+                for (int nextX = -radius; nextX <= radius; nextX++) {
+                    for (int nextZ = -radius; nextZ <= radius; nextZ++) {
+                        final int idx = center + nextX + nextZ * gridSize;
+                        final double height = biomeHeight[idx];
+
+                        double biomeWeight = Math.abs(calcBiomeWeight(nextX, nextZ, height));
+                        if (height > centerHeight) {
+                            // prefer biomes with lower height?
+                            biomeWeight /= 2.0F;
+                        }
+                        smoothVolatility += biomeVolatility[idx] * biomeWeight;
+                        smoothHeight += height * biomeWeight;
+
+                        biomeWeightSum += biomeWeight;
+                    }
+                }
+
+                smoothVolatility /= biomeWeightSum;
+                smoothHeight /= biomeWeightSum;
+
+                // Convert from vanilla height/volatility format
+                // to something easier to predict
+                data.heightVariation[x + z * REGION_SIZE] = ConversionUtils.biomeHeightVariationVanilla((float) smoothVolatility);
+                data.height[x + z * REGION_SIZE] = ConversionUtils.biomeHeightVanilla((float) smoothHeight);
+            }
+        }
         return data;
     }
 
-    private CubicBiome[] generateBiomes(ChunkPos pos) {
-        return mapToCubic(biomeGen.getBiomes(null,
-                Coords.cubeToMinBlock(pos.x),
-                Coords.cubeToMinBlock(pos.z),
-                ICube.SIZE, ICube.SIZE));
+    private CubicBiome[] generateBiomes(long pos) {
+        int x = Coords.cubeToMinBlock(keyX(pos));
+        int z = Coords.cubeToMinBlock(keyZ(pos));
+        // results are cached here already, don't go through the BiomeCache of the biome provider
+        return mapToCubic(biomeGen.getBiomes(null, x, z, ICube.SIZE, ICube.SIZE, false));
     }
 
-    private CubicBiome[] generateBiomeSections(ChunkPos pos) {
-        return mapToCubic(biomeGen.getBiomesForGeneration(null,
-                pos.x * SECTION_SIZE, pos.z * SECTION_SIZE,
-                SECTION_SIZE, SECTION_SIZE));
+    private CubicBiome[] generateBiomeSections(long pos) {
+        int x = keyX(pos) * SECTION_SIZE;
+        int z = keyZ(pos) * SECTION_SIZE;
+        return mapToCubic(biomeGen.getBiomesForGeneration(null, x, z, SECTION_SIZE, SECTION_SIZE));
     }
 
     private CubicBiome[] mapToCubic(Biome[] vanillaBiomes) {
         CubicBiome[] cubicBiomes = new CubicBiome[vanillaBiomes.length];
+        // neighboring blocks are almost always in the same biome, only look up the cubic biome when it changes
+        Biome last = null;
+        CubicBiome lastCubic = null;
         for (int i = 0; i < vanillaBiomes.length; i++) {
-            cubicBiomes[i] = CubicBiome.getCubic(vanillaBiomes[i]);
+            if (vanillaBiomes[i] != last) {
+                last = vanillaBiomes[i];
+                lastCubic = CubicBiome.getCubic(last);
+            }
+            cubicBiomes[i] = lastCubic;
         }
         return cubicBiomes;
     }
 
     private List<IBiomeBlockReplacer>[] mapToReplacers(CubicBiome[] cubicBiomes) {
+        @SuppressWarnings("unchecked")
         List<IBiomeBlockReplacer>[] replacers = new List[cubicBiomes.length];
         for (int i = 0; i < cubicBiomes.length; i++) {
-            replacers[i] = biomeBlockReplacers.get(cubicBiomes[i].getBiome());
+            replacers[i] = biomeBlockReplacers[cubicBiomes[i].getIndex()];
         }
         return replacers;
     }
 
     public double getHeight(int x, int y, int z) {
-        return biomeDataCache.get(new Vec3i(x / 4.0, 0, z / 4.0)).height;
+        // floorDiv by section size, same as flooring x / 4.0
+        int sectionX = x >> 2, sectionZ = z >> 2;
+        return getBiomeTerrainData(sectionX, sectionZ).height[sectionIndex(sectionX, sectionZ)];
     }
 
     public double getVolatility(int x, int y, int z) {
-        return biomeDataCache.get(new Vec3i(x / 4.0, 0, z / 4.0)).heightVariation;
+        int sectionX = x >> 2, sectionZ = z >> 2;
+        return getBiomeTerrainData(sectionX, sectionZ).heightVariation[sectionIndex(sectionX, sectionZ)];
+    }
+
+    private BiomeTerrainData getBiomeTerrainData(int sectionX, int sectionZ) {
+        return biomeDataCache.get().get(ChunkPos.asLong(sectionX >> REGION_BITS, sectionZ >> REGION_BITS));
+    }
+
+    private static int sectionIndex(int sectionX, int sectionZ) {
+        return (sectionX & REGION_MASK) | (sectionZ & REGION_MASK) << REGION_BITS;
     }
 
     public CubicBiome getBiome(int blockX, int blockY, int blockZ) {
-        ChunkPos pos = new ChunkPos(Coords.blockToCube(blockX), Coords.blockToCube(blockZ));
-        return biomeCacheBlocks.get(pos)[Coords.blockToLocal(blockZ) << 4 | Coords.blockToLocal(blockX)];
+        long pos = ChunkPos.asLong(Coords.blockToCube(blockX), Coords.blockToCube(blockZ));
+        return biomeCacheBlocks.get().get(pos)[Coords.blockToLocal(blockZ) << 4 | Coords.blockToLocal(blockX)];
     }
 
     public List<IBiomeBlockReplacer> getReplacers(int blockX, int blockY, int blockZ) {
-        ChunkPos pos = new ChunkPos(Coords.blockToCube(blockX), Coords.blockToCube(blockZ));
-        return biomeBlockReplacerCache.get(pos)[Coords.blockToLocal(blockZ) << 4 | Coords.blockToLocal(blockX)];
+        long pos = ChunkPos.asLong(Coords.blockToCube(blockX), Coords.blockToCube(blockZ));
+        return biomeBlockReplacerCache.get().get(pos)[Coords.blockToLocal(blockZ) << 4 | Coords.blockToLocal(blockX)];
     }
 
-    private CubicBiome getBiomeForSection(int x, int z) {
-        int localX = Math.floorMod(x, 4);
-        int localZ = Math.floorMod(z, 4);
+    /**
+     * Returns biome block replacers for each of the given biomes.
+     */
+    public List<IBiomeBlockReplacer>[] getReplacers(CubicBiome[] biomes) {
+        return mapToReplacers(biomes);
+    }
+
+    /**
+     * Returns biomes for all blocks in a cube column, indexed by [localZ << 4 | localX].
+     * The returned array is shared and must not be modified.
+     */
+    public CubicBiome[] getBiomesForCube(int cubeX, int cubeZ) {
+        return biomeCacheBlocks.get().get(ChunkPos.asLong(cubeX, cubeZ));
+    }
+
+    /**
+     * Returns biome block replacers for all blocks in a cube column, indexed by [localZ << 4 | localX].
+     * The returned array is shared and must not be modified.
+     */
+    public List<IBiomeBlockReplacer>[] getReplacersForCube(int cubeX, int cubeZ) {
+        return biomeBlockReplacerCache.get().get(ChunkPos.asLong(cubeX, cubeZ));
+    }
+
+    /**
+     * Returns a hash function that maps every key in a square window of keys to a different set, if the amount of sets is
+     * a square number. Keys are packed using ChunkPos.asLong: x in the low 32 bits, z in the high 32 bits.
+     */
+    private static LongToIntFunction windowHash(int sets) {
+        int radius = Math.max(1, (int) Math.sqrt(sets));
+        return k -> keyX(k) * radius + keyZ(k);
+    }
 
-        int chunkX = Math.floorDiv(x, 4);
-        int chunkZ = Math.floorDiv(z, 4);
+    private static int keyX(long key) {
+        return (int) key;
+    }
 
-        return biomeCacheSectionsChunk.get(new ChunkPos(chunkX, chunkZ))[localX + localZ * 4];
+    private static int keyZ(long key) {
+        return (int) (key >>> 32);
     }
 
     private double calcBiomeWeight(int nextX, int nextZ, double biomeHeight) {
         return this.nearBiomeWeightArray[nextX + this.smoothRadius + (nextZ + this.smoothRadius) * this.smoothDiameter] / (biomeHeight + 2.0F);
     }
 
+    /** Smoothed biome height and height variation of a region, indexed by [x + z * REGION_SIZE] */
     private static final class BiomeTerrainData {
 
-        double height, heightVariation;
+        final double[] height = new double[REGION_SIZE * REGION_SIZE];
+        final double[] heightVariation = new double[REGION_SIZE * REGION_SIZE];
     }
 }
@@ -0,0 +1,80 @@
+/*
+ *  This file is part of Cubic World Generation, licensed under the MIT License (MIT).
+ *
+ *  Copyright (c) 2015-2020 contributors
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ */
+package io.github.opencubicchunks.cubicchunks.cubicgen.customcubic.builder;
+
+import mcp.MethodsReturnNonnullByDefault;
+
+import javax.annotation.ParametersAreNonnullByDefault;
+
+/**
+ * Cached view of another builder. Returns the same values, so it also keeps the bounds of the source builder.
+ */
+@ParametersAreNonnullByDefault
+@MethodsReturnNonnullByDefault
+final class CachedNode implements IBuilder {
+
+    private final IBuilder source;
+    private final IBuilder cache;
+    private final boolean is2d;
+
+    /**
+     * @param source the builder to cache
+     * @param cache cached view of the source builder
+     * @param is2d true if the cache ignores y coordinate and always returns the value of source builder at y=0
+     */
+    CachedNode(IBuilder source, IBuilder cache, boolean is2d) {
+        this.source = source;
+        this.cache = cache;
+        this.is2d = is2d;
+    }
+
+    @Override public double get(int x, int y, int z) {
+        return cache.get(x, y, z);
+    }
+
+    // the grid has no duplicate points, so values are computed directly, without going through the cache
+    @Override public void fillGrid(double[] out, int x0, int y0, int z0, int nx, int ny, int nz, int stepX, int stepY, int stepZ) {
+        if (!is2d) {
+            source.fillGrid(out, x0, y0, z0, nx, ny, nz, stepX, stepY, stepZ);
+            return;
+        }
+        int layerSize = nx * nz;
+        source.fillGrid(out, x0, 0, z0, nx, 1, nz, stepX, stepY, stepZ);
+        for (int iy = 1; iy < ny; iy++) {
+            System.arraycopy(out, 0, out, iy * layerSize, layerSize);
+        }
+    }
+
+    @Override public double getMinValue() {
+        return source.getMinValue();
+    }
+
+    @Override public double getMaxValue() {
+        return source.getMaxValue();
+    }
+
+    @Override public String toString() {
+        return source + (is2d ? ".cached2d()" : ".cached()");
+    }
+}
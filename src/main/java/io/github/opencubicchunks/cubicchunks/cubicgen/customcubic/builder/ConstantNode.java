@@ -0,0 +1,64 @@
+/*
+ *  This file is part of Cubic World Generation, licensed under the MIT License (MIT).
+ *
+ *  Copyright (c) 2015-2020 contributors
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ */
+package io.github.opencubicchunks.cubicchunks.cubicgen.customcubic.builder;
+
+import mcp.MethodsReturnNonnullByDefault;
+
+import java.util.Arrays;
+
+import javax.annotation.ParametersAreNonnullByDefault;
+
+/**
+ * A builder that always returns the same value. Operations on constants are computed when the builder is created.
+ */
+@ParametersAreNonnullByDefault
+@MethodsReturnNonnullByDefault
+final class ConstantNode implements IBuilder {
+
+    final double value;
+
+    ConstantNode(double value) {
+        this.value = value;
+    }
+
+    @Override public double get(int x, int y, int z) {
+        return value;
+    }
+
+    @Override public void fillGrid(double[] out, int x0, int y0, int z0, int nx, int ny, int nz, int stepX, int stepY, int stepZ) {
+        Arrays.fill(out, 0, nx * ny * nz, value);
+    }
+
+    @Override public double getMinValue() {
+        return Double.isNaN(value) ? Double.NEGATIVE_INFINITY : value;
+    }
+
+    @Override public double getMaxValue() {
+        return Double.isNaN(value) ? Double.POSITIVE_INFINITY : value;
+    }
+
+    @Override public String toString() {
+        return Double.toString(value);
+    }
+}
@@ -23,11 +23,14 @@
  */
 package io.github.opencubicchunks.cubicchunks.cubicgen.customcubic.builder;
 
-import io.github.opencubicchunks.cubicchunks.api.util.MathUtil;
 import gnu.trove.function.TDoubleFunction;
-import io.github.opencubicchunks.cubicchunks.cubicgen.cache.HashCacheDoubles;
+import io.github.opencubicchunks.cubicchunks.cubicgen.cache.ICoordHash;
+import io.github.opencubicchunks.cubicchunks.cubicgen.cache.CachePolicy;
+import io.github.opencubicchunks.cubicchunks.cubicgen.cache.CacheStats;
+import io.github.opencubicchunks.cubicchunks.cubicgen.cache.LongKeyedDoubleCache;
+import io.github.opencubicchunks.cubicchunks.cubicgen.cache.XYZKeyedDoubleCache;
 import mcp.MethodsReturnNonnullByDefault;
-import net.minecraft.util.math.MathHelper;
+import net.minecraft.util.math.ChunkPos;
 import net.minecraft.util.math.Vec3i;
 
 import java.util.function.DoublePredicate;
@@ -47,44 +50,106 @@ public interface IBuilder {
 
     double get(int x, int y, int z);
 
+    /**
+     * Computes values of this builder at each point of a regular 3d grid. Each point is computed exactly once,
+     * and the results are the same as calling {@link #get(int, int, int)} for each point.
+     * <p>
+     * The value at grid position (ix, iy, iz) is computed at {@code (x0 + ix*stepX, y0 + iy*stepY, z0 + iz*stepZ)}
+     * and stored at index {@code ix + iz*nx + iy*nx*nz}.
+     *
+     * @param out array to store the values in, must have at least nx*ny*nz elements
+     * @param x0 x coordinate of the first point
+     * @param y0 y coordinate of the first point
+     * @param z0 z coordinate of the first point
+     * @param nx number of points along x axis
+     * @param ny number of points along y axis
+     * @param nz number of points along z axis
+     * @param stepX distance between points along x axis
+     * @param stepY distance between points along y axis
+     * @param stepZ distance between points along z axis
+     */
+    default void fillGrid(double[] out, int x0, int y0, int z0, int nx, int ny, int nz, int stepX, int stepY, int stepZ) {
+        int i = 0;
+        for (int iy = 0; iy < ny; iy++) {
+            int y = y0 + iy * stepY;
+            for (int iz = 0; iz < nz; iz++) {
+                int z = z0 + iz * stepZ;
+                for (int ix = 0; ix < nx; ix++) {
+                    out[i++] = get(x0 + ix * stepX, y, z);
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns a value that is less than or equal to any value returned by this builder.
+     * <p>
+     * If both this and {@link #getMaxValue()} are finite, this builder never returns NaN.
+     * Default implementation returns negative infinity, meaning the bound is unknown.
+     */
+    default double getMinValue() {
+        return Double.NEGATIVE_INFINITY;
+    }
+
+    /**
+     * Returns a value that is greater than or equal to any value returned by this builder.
+     * <p>
+     * If both this and {@link #getMinValue()} are finite, this builder never returns NaN.
+     * Default implementation returns positive infinity, meaning the bound is unknown.
+     */
+    default double getMaxValue() {
+        return Double.POSITIVE_INFINITY;
+    }
+
+    /**
+     * Returns a builder that always returns the given value. Operations on it are computed immediately,
+     * and operations combining it with other builders are optimized.
+     */
+    static IBuilder constant(double value) {
+        return new ConstantNode(value);
+    }
+
+    // Operations below don't nest lambdas, operations with constant arguments are fused together into a single node.
+    // The results are exactly the same as when computing each operation separately.
+
     default IBuilder add(IBuilder builder) {
-        return (x, y, z) -> this.get(x, y, z) + builder.get(x, y, z);
+        return BinaryNode.create(this, builder, UnaryChainNode.ADD, null);
     }
 
     default IBuilder add(double c) {
-        return apply(x -> x + c);
+        return UnaryChainNode.append(this, UnaryChainNode.ADD, c, 0, null);
     }
 
     default IBuilder sub(IBuilder builder) {
-        return (x, y, z) -> this.get(x, y, z) - builder.get(x, y, z);
+        return BinaryNode.create(this, builder, UnaryChainNode.SUB, null);
     }
 
     default IBuilder sub(double c) {
-        return apply(x -> x - c);
+        return UnaryChainNode.append(this, UnaryChainNode.SUB, c, 0, null);
     }
 
     default IBuilder mul(IBuilder builder) {
-        return (x, y, z) -> this.get(x, y, z) * builder.get(x, y, z);
+        return BinaryNode.create(this, builder, UnaryChainNode.MUL, null);
     }
 
     default IBuilder mul(double c) {
-        return apply(x -> x * c);
+        return UnaryChainNode.append(this, UnaryChainNode.MUL, c, 0, null);
     }
 
     default IBuilder div(IBuilder builder) {
-        return (x, y, z) -> this.get(x, y, z) / builder.get(x, y, z);
+        return BinaryNode.create(this, builder, UnaryChainNode.DIV, null);
     }
 
     default IBuilder div(double c) {
-        return apply(x -> x / c);
+        return UnaryChainNode.append(this, UnaryChainNode.DIV, c, 0, null);
     }
 
     default IBuilder clamp(double min, double max) {
-        return apply(x -> MathHelper.clamp(x, min, max));
+        return UnaryChainNode.append(this, UnaryChainNode.CLAMP, min, max, null);
     }
 
     default IBuilder signum() {
-        return apply(Math::signum);
+        return UnaryChainNode.append(this, UnaryChainNode.SIGNUM, 0, 0, null);
     }
 
     default IBuilder apply(TDoubleFunction func) {
@@ -92,66 +157,39 @@ public interface IBuilder {
     }
 
     default IBuilder addIf(DoublePredicate predicate, IBuilder builder) {
-        return (x, y, z) -> {
-            double value = this.get(x, y, z);
-            if (predicate.test(value)) {
-                value += builder.get(x, y, z);
-            }
-            return value;
-        };
+        return BinaryNode.create(this, builder, UnaryChainNode.ADD, predicate);
     }
 
     default IBuilder addIf(DoublePredicate predicate, double c) {
-        return applyIf(predicate, x -> x + c);
+        return UnaryChainNode.append(this, UnaryChainNode.ADD, c, 0, predicate);
     }
 
     default IBuilder subIf(DoublePredicate predicate, IBuilder builder) {
-        return (x, y, z) -> {
-            double value = this.get(x, y, z);
-            if (predicate.test(value)) {
-                value -= builder.get(x, y, z);
-            }
-            return value;
-        };
+        return BinaryNode.create(this, builder, UnaryChainNode.SUB, predicate);
     }
 
     default IBuilder subIf(DoublePredicate predicate, double c) {
-        return applyIf(predicate, x -> x - c);
+        return UnaryChainNode.append(this, UnaryChainNode.SUB, c, 0, predicate);
     }
 
     default IBuilder mulIf(DoublePredicate predicate, IBuilder builder) {
-        return (x, y, z) -> {
-            double value = this.get(x, y, z);
-            if (predicate.test(value)) {
-                value *= builder.get(x, y, z);
-            }
-            return value;
-        };
+        return BinaryNode.create(this, builder, UnaryChainNode.MUL, predicate);
     }
 
     default IBuilder mulIf(DoublePredicate predicate, double c) {
-        return applyIf(predicate, x -> x * c);
+        return UnaryChainNode.append(this, UnaryChainNode.MUL, c, 0, predicate);
     }
 
     default IBuilder divIf(DoublePredicate predicate, IBuilder builder) {
-        return (x, y, z) -> {
-            double value = this.get(x, y, z);
-            if (predicate.test(value)) {
-                value /= builder.get(x, y, z);
-            }
-            return value;
-        };
+        return BinaryNode.create(this, builder, UnaryChainNode.DIV, predicate);
     }
 
     default IBuilder divIf(DoublePredicate predicate, double c) {
-        return applyIf(predicate, x -> x / c);
+        return UnaryChainNode.append(this, UnaryChainNode.DIV, c, 0, predicate);
     }
 
     default IBuilder clampIf(DoublePredicate predicate, double min, double max) {
-        return apply(x ->
-                predicate.test(x) ?
-                        MathHelper.clamp(x, min, max) :
-                        x);
+        return UnaryChainNode.append(this, UnaryChainNode.CLAMP, min, max, predicate);
     }
 
     default IBuilder applyIf(DoublePredicate predicate, TDoubleFunction func) {
@@ -171,13 +209,29 @@ public interface IBuilder {
      * No clamping is done on selector value, so values exceeding range 0-1 will result in extrapolation.
      */
     default IBuilder lerp(IBuilder low, IBuilder high) {
-        return (x, y, z) -> MathUtil.lerp(this.get(x, y, z), low.get(x, y, z), high.get(x, y, z));
+        return new LerpNode(this, low, high);
     }
 
+    default IBuilder cached(int cacheSize, ICoordHash hash) {
+        return cached(cacheSize, hash, "IBuilder.cached");
+    }
+
+    /**
+     * @param name name under which cache statistics are reported, see {@link CacheStats}
+     */
+    default IBuilder cached(int cacheSize, ICoordHash hash, String name) {
+        // each thread gets its own cache, so the returned builder can be used by multiple generator threads at once
+        ThreadLocal<XYZKeyedDoubleCache> cache = ThreadLocal.withInitial(() -> XYZKeyedDoubleCache.create(cacheSize, hash, this::get)
+                .named(name));
+        return new CachedNode(this, (x, y, z) -> cache.get().get(x, y, z), false);
+    }
+
+    /**
+     * @deprecated allocates a {@link Vec3i} for each lookup, use {@link #cached(int, ICoordHash)} instead
+     */
+    @Deprecated
     default IBuilder cached(int cacheSize, ToIntFunction<Vec3i> hash) {
-        HashCacheDoubles<Vec3i> cache = HashCacheDoubles.create(cacheSize, hash,
-                v -> this.get(v.getX(), v.getY(), v.getZ()));
-        return (x, y, z) -> cache.get(new Vec3i(x, y, z));
+        return cached(cacheSize, (x, y, z) -> hash.applyAsInt(new Vec3i(x, y, z)));
     }
 
     /**
@@ -185,14 +239,66 @@ public interface IBuilder {
      * <p>
      * This should NEVER be used if the IBuilder is intended to generate values that depend on Y coordinate
      */
+    default IBuilder cached2d(int cacheSize, ICoordHash hash) {
+        return cached2d(cacheSize, hash, "IBuilder.cached2d");
+    }
+
+    /**
+     * Same as {@link #cached2d(int, ICoordHash)}.
+     *
+     * @param name name under which cache statistics are reported, see {@link CacheStats}
+     */
+    default IBuilder cached2d(int cacheSize, ICoordHash hash, String name) {
+        return cached2d(cacheSize, CachePolicy.DIRECT_MAPPED, hash, name);
+    }
+
+    /**
+     * Same as {@link #cached2d(int, ICoordHash)}.
+     *
+     * @param policy how cache entries are organized, the hash function selects one of {@link CachePolicy#sets(int)} sets
+     * @param name name under which cache statistics are reported, see {@link CacheStats}
+     */
+    default IBuilder cached2d(int cacheSize, CachePolicy policy, ICoordHash hash, String name) {
+        // x in the low 32 bits, z in the high 32 bits, same as ChunkPos.asLong
+        ThreadLocal<LongKeyedDoubleCache> cache = ThreadLocal.withInitial(() -> LongKeyedDoubleCache.create(cacheSize, policy,
+                k -> hash.hash((int) k, 0, (int) (k >>> 32)),
+                k -> this.get((int) k, 0, (int) (k >>> 32))).named(name));
+        return new CachedNode(this, (x, y, z) -> cache.get().get(ChunkPos.asLong(x, z)), true);
+    }
+
+    /**
+     * @deprecated allocates a {@link Vec3i} for each lookup, use {@link #cached2d(int, ICoordHash)} instead
+     */
+    @Deprecated
     default IBuilder cached2d(int cacheSize, ToIntFunction<Vec3i> hash) {
-        HashCacheDoubles<Vec3i> cache = HashCacheDoubles.create(cacheSize,
-                hash,
-                v -> this.get(v.getX(), v.getY(), v.getZ()));
-        return (x, y, z) -> cache.get(new Vec3i(x, 0, z));
+        return cached2d(cacheSize, (x, y, z) -> hash.applyAsInt(new Vec3i(x, y, z)));
     }
 
     default void forEachScaled(Vec3i startUnscaled, Vec3i endUnscaled, Vec3i scale, NoiseConsumer consumer) {
+        int nx = endUnscaled.getX() - startUnscaled.getX() + 1;
+        int ny = endUnscaled.getY() - startUnscaled.getY() + 1;
+        int nz = endUnscaled.getZ() - startUnscaled.getZ() + 1;
+        if (nx <= 1 || ny <= 1 || nz <= 1) {
+            return;
+        }
+        double[] lattice = new double[nx * ny * nz];
+        fillGrid(lattice,
+                startUnscaled.getX() * scale.getX(), startUnscaled.getY() * scale.getY(), startUnscaled.getZ() * scale.getZ(),
+                nx, ny, nz, scale.getX(), scale.getY(), scale.getZ());
+        forEachScaled(lattice, startUnscaled, endUnscaled, scale, consumer);
+    }
+
+    /**
+     * Interpolates values from a lattice of precomputed values, the same way as {@link #forEachScaled(Vec3i, Vec3i, Vec3i, NoiseConsumer)}.
+     *
+     * @param lattice values at lattice points from startUnscaled to endUnscaled inclusive, in the order used by
+     * {@link #fillGrid(double[], int, int, int, int, int, int, int, int, int)}
+     * @param startUnscaled the first lattice point, in lattice coordinates
+     * @param endUnscaled the last lattice point, in lattice coordinates
+     * @param scale distance between lattice points
+     * @param consumer receives each interpolated value
+     */
+    static void forEachScaled(double[] lattice, Vec3i startUnscaled, Vec3i endUnscaled, Vec3i scale, NoiseConsumer consumer) {
 
         if (scale.getZ() != scale.getX()) {
             throw new UnsupportedOperationException("X and Z scale must be the same!");
@@ -216,6 +322,8 @@ public interface IBuilder {
         int maxX = endUnscaled.getX();
         int maxY = endUnscaled.getY();
         int maxZ = endUnscaled.getZ();
+        int sizeX = maxX - minX + 1;
+        int sizeXZ = sizeX * (maxZ - minZ + 1);
         for (int sectionY = minY; sectionY < maxY; ++sectionY) {
             int y = sectionY * yScale;
             for (int sectionZ = minZ; sectionZ < maxZ; ++sectionZ) {
@@ -223,14 +331,15 @@ public interface IBuilder {
                 for (int sectionX = minX; sectionX < maxX; ++sectionX) {
                     int x = sectionX * xScale;
 
-                    final double v000 = this.get(x, y, z);
-                    final double v001 = this.get(x, y, z + zScale);
-                    final double v010 = this.get(x, y + yScale, z);
-                    final double v011 = this.get(x, y + yScale, z + zScale);
-                    final double v100 = this.get(x + xScale, y, z);
-                    final double v101 = this.get(x + xScale, y, z + zScale);
-                    final double v110 = this.get(x + xScale, y + yScale, z);
-                    final double v111 = this.get(x + xScale, y + yScale, z + zScale);
+                    int idx = (sectionX - minX) + (sectionZ - minZ) * sizeX + (sectionY - minY) * sizeXZ;
+                    final double v000 = lattice[idx];
+                    final double v001 = lattice[idx + sizeX];
+                    final double v010 = lattice[idx + sizeXZ];
+                    final double v011 = lattice[idx + sizeXZ + sizeX];
+                    final double v100 = lattice[idx + 1];
+                    final double v101 = lattice[idx + sizeX + 1];
+                    final double v110 = lattice[idx + sizeXZ + 1];
+                    final double v111 = lattice[idx + sizeXZ + sizeX + 1];
 
                     double v0y0 = v000;
                     double v0y1 = v001;
@@ -0,0 +1,117 @@
+/*
+ *  This file is part of Cubic World Generation, licensed under the MIT License (MIT).
+ *
+ *  Copyright (c) 2015-2020 contributors
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ */
+package io.github.opencubicchunks.cubicchunks.cubicgen.customcubic.builder;
+
+import io.github.opencubicchunks.cubicchunks.api.util.MathUtil;
+import mcp.MethodsReturnNonnullByDefault;
+
+import javax.annotation.ParametersAreNonnullByDefault;
+
+/**
+ * Linear interpolation between 2 builders, see {@link IBuilder#lerp(IBuilder, IBuilder)}.
+ * <p>
+ * When the selector is 0, the value of high builder doesn't affect the result, so it's not computed at all.
+ * This is only done when the result is known to be exactly equal to the value of low builder:
+ * low value must not be zero (0 + -0.0 isn't -0.0) and neither value can be NaN or infinite.
+ * There is no such shortcut for selector 1, because {@code low + (high - low)} isn't always exactly equal to high.
+ */
+@ParametersAreNonnullByDefault
+@MethodsReturnNonnullByDefault
+final class LerpNode implements IBuilder {
+
+    /**
+     * Values with absolute value up to this are guaranteed to not overflow when subtracted
+     */
+    private static final double MAX_SAFE_VALUE = Double.MAX_VALUE / 4;
+
+    private final IBuilder selector;
+    private final IBuilder low;
+    private final IBuilder high;
+    private final boolean canSkipHigh;
+    private final double minValue, maxValue;
+
+    LerpNode(IBuilder selector, IBuilder low, IBuilder high) {
+        this.selector = selector;
+        this.low = low;
+        this.high = high;
+        this.canSkipHigh = isSafe(low) && isSafe(high);
+
+        double min = Double.NEGATIVE_INFINITY, max = Double.POSITIVE_INFINITY;
+        if (canSkipHigh && selector.getMinValue() >= 0 && selector.getMaxValue() <= 1) {
+            // no extrapolation, the result is between low and high, except for rounding errors
+            double lo = Math.min(low.getMinValue(), high.getMinValue());
+            double hi = Math.max(low.getMaxValue(), high.getMaxValue());
+            double error = (hi - lo) * 1e-12 + 4 * Math.ulp(Math.max(Math.abs(lo), Math.abs(hi)));
+            min = lo - error;
+            max = hi + error;
+        }
+        this.minValue = min;
+        this.maxValue = max;
+    }
+
+    @Override public double get(int x, int y, int z) {
+        double a = selector.get(x, y, z);
+        double lowValue = low.get(x, y, z);
+        if (a == 0 && canSkipHigh && lowValue != 0) {
+            return lowValue;
+        }
+        return MathUtil.lerp(a, lowValue, high.get(x, y, z));
+    }
+
+    @Override public void fillGrid(double[] out, int x0, int y0, int z0, int nx, int ny, int nz, int stepX, int stepY, int stepZ) {
+        int size = nx * ny * nz;
+        double[] lowValues = new double[size];
+        selector.fillGrid(out, x0, y0, z0, nx, ny, nz, stepX, stepY, stepZ);
+        low.fillGrid(lowValues, x0, y0, z0, nx, ny, nz, stepX, stepY, stepZ);
+        boolean needsHigh = !canSkipHigh;
+        for (int i = 0; i < size && !needsHigh; i++) {
+            needsHigh = out[i] != 0 || lowValues[i] == 0;
+        }
+        if (!needsHigh) {
+            System.arraycopy(lowValues, 0, out, 0, size);
+            return;
+        }
+        double[] highValues = new double[size];
+        high.fillGrid(highValues, x0, y0, z0, nx, ny, nz, stepX, stepY, stepZ);
+        for (int i = 0; i < size; i++) {
+            out[i] = MathUtil.lerp(out[i], lowValues[i], highValues[i]);
+        }
+    }
+
+    @Override public double getMinValue() {
+        return minValue;
+    }
+
+    @Override public double getMaxValue() {
+        return maxValue;
+    }
+
+    @Override public String toString() {
+        return selector + ".lerp(" + low + ", " + high + ")";
+    }
+
+    private static boolean isSafe(IBuilder builder) {
+        return builder.getMinValue() >= -MAX_SAFE_VALUE && builder.getMaxValue() <= MAX_SAFE_VALUE;
+    }
+}
@@ -23,9 +23,8 @@
  */
 package io.github.opencubicchunks.cubicchunks.cubicgen.customcubic.builder;
 
+import com.flowpowered.noise.Utils;
 import com.flowpowered.noise.module.Module;
-import com.flowpowered.noise.module.modifier.ScaleBias;
-import com.flowpowered.noise.module.modifier.ScalePoint;
 import com.flowpowered.noise.module.source.Perlin;
 import mcp.MethodsReturnNonnullByDefault;
 
@@ -35,16 +34,74 @@ import javax.annotation.ParametersAreNonnullByDefault;
 @MethodsReturnNonnullByDefault
 public class NoiseSource implements IBuilder {
 
+    /**
+     * flow-noise gradient noise multiplies the dot product of gradient vector and position by this
+     */
+    private static final double GRADIENT_NOISE_SCALE = 2.12;
+
     private Module module;
+    private final double minValue;
+    private final double maxValue;
 
     public NoiseSource(Module module) {
+        this(module, Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY);
+    }
+
+    public NoiseSource(Module module, double minValue, double maxValue) {
         this.module = module;
+        this.minValue = minValue;
+        this.maxValue = maxValue;
     }
 
     @Override public double get(int x, int y, int z) {
         return module.getValue(x, y, z);
     }
 
+    /**
+     * Returns a value that is guaranteed to be less than or equal to any value returned by this noise source.
+     * The bound is conservative, actual values are usually much closer to 0.
+     */
+    @Override public double getMinValue() {
+        return minValue;
+    }
+
+    /**
+     * Returns a value that is guaranteed to be greater than or equal to any value returned by this noise source.
+     * The bound is conservative, actual values are usually much closer to 0.
+     */
+    @Override public double getMaxValue() {
+        return maxValue;
+    }
+
+    @Override public void fillGrid(double[] out, int x0, int y0, int z0, int nx, int ny, int nz, int stepX, int stepY, int stepZ) {
+        Module module = this.module;
+        int i = 0;
+        for (int iy = 0; iy < ny; iy++) {
+            double y = y0 + iy * stepY;
+            for (int iz = 0; iz < nz; iz++) {
+                double z = z0 + iz * stepZ;
+                for (int ix = 0; ix < nx; ix++) {
+                    out[i++] = module.getValue(x0 + ix * stepX, y, z);
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the maximum absolute value of single octave of gradient noise.
+     * <p>
+     * Gradient noise is interpolated from dot products of gradient vectors and offsets from lattice corners, and each component
+     * of the offset is between -1 and 1, so no octave can exceed the largest sum of absolute gradient components.
+     */
+    private static double maxGradientNoiseValue() {
+        double[] vectors = Utils.RANDOM_VECTORS;
+        double max = 0;
+        for (int i = 0; i < vectors.length / 4; i++) {
+            max = Math.max(max, Math.abs(vectors[i * 4]) + Math.abs(vectors[i * 4 + 1]) + Math.abs(vectors[i * 4 + 2]));
+        }
+        return max * GRADIENT_NOISE_SCALE;
+    }
+
     public static PerlinBuilder perlin() {
         return new PerlinBuilder();
     }
@@ -88,37 +145,41 @@ public class NoiseSource implements IBuilder {
         }
 
         public NoiseSource create() {
-            Module mod;
+            // flow-noise Perlin is only used for its settings, the noise is computed by OctavePerlin
             Perlin perlin = new Perlin();
             perlin.setSeed((int) ((seed & 0xFFFFFFFF) ^ (seed >>> 32)));
             perlin.setOctaveCount(octaves);
-            mod = perlin;
+
+            double octaveWeightSum = 0;
+            double octaveWeight = 1;
+            for (int i = 0; i < octaves; i++) {
+                octaveWeightSum += octaveWeight;
+                octaveWeight *= perlin.getPersistence();
+            }
+            double bound = maxGradientNoiseValue() * octaveWeightSum;
+            // bounds of output value, transformed the same way as the value
+            double[] range = {-bound, bound};
+
+            double[] scales;
+            double[] biases;
             if (normalized) {
-                ScaleBias scaleBias = new ScaleBias();
-                scaleBias.setScale(2 / perlin.getMaxValue());
-                scaleBias.setBias(-1);
-                scaleBias.setSourceModule(0, mod);
-                mod = scaleBias;
-
-                scaleBias = new ScaleBias();
-                scaleBias.setScale((maxNorm - minNorm) / 2);
-                scaleBias.setBias((maxNorm + minNorm) / 2);
-                scaleBias.setSourceModule(0, mod);
-                mod = scaleBias;
+                scales = new double[]{2 / perlin.getMaxValue(), (maxNorm - minNorm) / 2};
+                biases = new double[]{-1, (maxNorm + minNorm) / 2};
             } else {
-                ScaleBias scaleBias = new ScaleBias();
-                scaleBias.setScale(2);
-                scaleBias.setBias(-perlin.getMaxValue());
-                scaleBias.setSourceModule(0, mod);
-                mod = scaleBias;
+                scales = new double[]{2};
+                biases = new double[]{-perlin.getMaxValue()};
+            }
+            for (int i = 0; i < scales.length; i++) {
+                scaleBias(range, scales[i], biases[i]);
             }
-            ScalePoint scaled = new ScalePoint();
-            scaled.setXScale(fx);
-            scaled.setYScale(fy);
-            scaled.setZScale(fz);
-            scaled.setSourceModule(0, mod);
-            mod = scaled;
-            return new NoiseSource(mod);
+            return new NoiseSource(new OctavePerlin(perlin, fx, fy, fz, scales, biases), range[0], range[1]);
+        }
+
+        private static void scaleBias(double[] range, double scale, double bias) {
+            double a = range[0] * scale + bias;
+            double b = range[1] * scale + bias;
+            range[0] = Math.min(a, b);
+            range[1] = Math.max(a, b);
         }
     }
 }
@@ -0,0 +1,174 @@
+/*
+ *  This file is part of Cubic World Generation, licensed under the MIT License (MIT).
+ *
+ *  Copyright (c) 2015-2020 contributors
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ */
+package io.github.opencubicchunks.cubicchunks.cubicgen.customcubic.builder;
+
+import com.flowpowered.noise.NoiseQuality;
+import com.flowpowered.noise.Utils;
+import com.flowpowered.noise.module.Module;
+import com.flowpowered.noise.module.source.Perlin;
+import mcp.MethodsReturnNonnullByDefault;
+
+import javax.annotation.ParametersAreNonnullByDefault;
+
+/**
+ * Octave Perlin noise with input scaling and output scale and bias, in a single module.
+ * <p>
+ * Returns exactly the same values as flow-noise {@link Perlin} wrapped in a sequence of
+ * {@link com.flowpowered.noise.module.modifier.ScaleBias} modules and a {@link com.flowpowered.noise.module.modifier.ScalePoint},
+ * including the gradient table replaced by {@code ConversionUtils.initFlowNoiseHack}, but without a virtual call for each
+ * module. Seed and amplitude of each octave are computed in advance, and the lattice hash of each corner is computed
+ * from partial sums shared between the corners.
+ * <p>
+ * Only {@link NoiseQuality#STANDARD} is supported.
+ */
+@ParametersAreNonnullByDefault
+@MethodsReturnNonnullByDefault
+public final class OctavePerlin extends Module {
+
+    // the same constants as used by flow-noise
+    private static final int X_NOISE_GEN = 1619;
+    private static final int Y_NOISE_GEN = 31337;
+    private static final int Z_NOISE_GEN = 6971;
+    private static final int SEED_NOISE_GEN = 1013;
+    private static final int SHIFT_NOISE_GEN = 8;
+    private static final double GRADIENT_SCALE = 2.12;
+    private static final double INT32_RANGE = 1073741824.0;
+
+    private final double xScale, yScale, zScale;
+    private final double frequency;
+    private final double lacunarity;
+    private final int[] octaveSeedHash;
+    private final double[] octaveAmplitude;
+    private final double[] outputScale;
+    private final double[] outputBias;
+
+    /**
+     * @param perlin the noise settings, only used in the constructor
+     * @param xScale input x coordinate multiplier
+     * @param yScale input y coordinate multiplier
+     * @param zScale input z coordinate multiplier
+     * @param outputScale scale of each scale and bias step applied to the noise value, in order
+     * @param outputBias bias of each scale and bias step applied to the noise value, in order
+     */
+    public OctavePerlin(Perlin perlin, double xScale, double yScale, double zScale, double[] outputScale, double[] outputBias) {
+        super(0);
+        if (perlin.getNoiseQuality() != NoiseQuality.STANDARD) {
+            throw new IllegalArgumentException("Unsupported noise quality " + perlin.getNoiseQuality());
+        }
+        if (outputScale.length != outputBias.length) {
+            throw new IllegalArgumentException("Output scale and bias lengths don't match");
+        }
+        this.xScale = xScale;
+        this.yScale = yScale;
+        this.zScale = zScale;
+        this.frequency = perlin.getFrequency();
+        this.lacunarity = perlin.getLacunarity();
+        this.outputScale = outputScale.clone();
+        this.outputBias = outputBias.clone();
+
+        int octaves = perlin.getOctaveCount();
+        this.octaveSeedHash = new int[octaves];
+        this.octaveAmplitude = new double[octaves];
+        double amplitude = 1.0;
+        for (int i = 0; i < octaves; i++) {
+            octaveSeedHash[i] = SEED_NOISE_GEN * (perlin.getSeed() + i);
+            octaveAmplitude[i] = amplitude;
+            amplitude *= perlin.getPersistence();
+        }
+    }
+
+    @Override public int getSourceModuleCount() {
+        return 0;
+    }
+
+    @Override public double getValue(double x, double y, double z) {
+        double nx = x * xScale * frequency;
+        double ny = y * yScale * frequency;
+        double nz = z * zScale * frequency;
+        double[] vectors = Utils.RANDOM_VECTORS;
+
+        double value = 0.0;
+        for (int i = 0; i < octaveSeedHash.length; i++) {
+            value += gradientCoherentNoise(vectors, int32Range(nx), int32Range(ny), int32Range(nz), octaveSeedHash[i]) * octaveAmplitude[i];
+            nx *= lacunarity;
+            ny *= lacunarity;
+            nz *= lacunarity;
+        }
+        for (int i = 0; i < outputScale.length; i++) {
+            value = value * outputScale[i] + outputBias[i];
+        }
+        return value;
+    }
+
+    private static double int32Range(double n) {
+        if (n < INT32_RANGE && n > -INT32_RANGE) {
+            return n;
+        }
+        return Utils.makeInt32Range(n);
+    }
+
+    /**
+     * Same as {@code Noise.gradientCoherentNoise3D} with standard quality
+     */
+    private static double gradientCoherentNoise(double[] vectors, double x, double y, double z, int seedHash) {
+        int x0 = x > 0.0 ? (int) x : (int) x - 1;
+        int y0 = y > 0.0 ? (int) y : (int) y - 1;
+        int z0 = z > 0.0 ? (int) z : (int) z - 1;
+
+        double dx0 = x - x0, dx1 = x - (x0 + 1);
+        double dy0 = y - y0, dy1 = y - (y0 + 1);
+        double dz0 = z - z0, dz1 = z - (z0 + 1);
+
+        double xs = sCurve3(dx0);
+        double ys = sCurve3(dy0);
+        double zs = sCurve3(dz0);
+
+        // integer arithmetic wraps around, so this is the same as computing the whole sum for each corner
+        int hx0 = X_NOISE_GEN * x0 + seedHash, hx1 = hx0 + X_NOISE_GEN;
+        int hy0 = Y_NOISE_GEN * y0, hy1 = hy0 + Y_NOISE_GEN;
+        int hz0 = Z_NOISE_GEN * z0, hz1 = hz0 + Z_NOISE_GEN;
+
+        double ix0 = lerp(gradient(vectors, hx0 + hy0 + hz0, dx0, dy0, dz0), gradient(vectors, hx1 + hy0 + hz0, dx1, dy0, dz0), xs);
+        double ix1 = lerp(gradient(vectors, hx0 + hy1 + hz0, dx0, dy1, dz0), gradient(vectors, hx1 + hy1 + hz0, dx1, dy1, dz0), xs);
+        double iy0 = lerp(ix0, ix1, ys);
+        ix0 = lerp(gradient(vectors, hx0 + hy0 + hz1, dx0, dy0, dz1), gradient(vectors, hx1 + hy0 + hz1, dx1, dy0, dz1), xs);
+        ix1 = lerp(gradient(vectors, hx0 + hy1 + hz1, dx0, dy1, dz1), gradient(vectors, hx1 + hy1 + hz1, dx1, dy1, dz1), xs);
+        double iy1 = lerp(ix0, ix1, ys);
+        return lerp(iy0, iy1, zs);
+    }
+
+    private static double gradient(double[] vectors, int hash, double dx, double dy, double dz) {
+        int vectorIndex = hash ^ (hash >> SHIFT_NOISE_GEN);
+        int idx = (vectorIndex & 0xff) << 2;
+        return (vectors[idx] * dx + vectors[idx + 1] * dy + vectors[idx + 2] * dz) * GRADIENT_SCALE;
+    }
+
+    private static double sCurve3(double a) {
+        return a * a * (3.0 - 2.0 * a);
+    }
+
+    private static double lerp(double n0, double n1, double a) {
+        return (1.0 - a) * n0 + a * n1;
+    }
+}
@@ -0,0 +1,355 @@
+/*
+ *  This file is part of Cubic World Generation, licensed under the MIT License (MIT).
+ *
+ *  Copyright (c) 2015-2020 contributors
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ */
+package io.github.opencubicchunks.cubicchunks.cubicgen.customcubic.builder;
+
+import mcp.MethodsReturnNonnullByDefault;
+import net.minecraft.util.math.MathHelper;
+
+import java.util.Arrays;
+import java.util.function.DoublePredicate;
+
+import javax.annotation.Nullable;
+import javax.annotation.ParametersAreNonnullByDefault;
+
+/**
+ * Applies a sequence of operations with constant arguments to the value of another builder.
+ * <p>
+ * Chains like {@code builder.mul(a).add(b).clamp(min, max)} are fused into a single node when they are created, and
+ * evaluated in one loop instead of through one nested lambda for each operation. Multiplication followed by addition is
+ * fused into a single scale and bias step. Each operation is still computed separately and in the same order, so the
+ * result is exactly the same.
+ */
+@ParametersAreNonnullByDefault
+@MethodsReturnNonnullByDefault
+final class UnaryChainNode implements IBuilder {
+
+    static final byte ADD = 0;
+    static final byte SUB = 1;
+    static final byte MUL = 2;
+    static final byte DIV = 3;
+    static final byte CLAMP = 4;
+    static final byte SIGNUM = 5;
+    private static final byte SCALE_BIAS = 6;
+
+    private static final byte ALWAYS = 0;
+    private static final byte IF_NEGATIVE = 1;
+    private static final byte IF_POSITIVE = 2;
+    private static final byte IF_NOT_NEGATIVE = 3;
+    private static final byte IF_NOT_POSITIVE = 4;
+    private static final byte IF_OTHER = 5;
+
+    private final IBuilder source;
+    private final byte[] ops;
+    private final double[] argA;
+    private final double[] argB;
+    private final byte[] conditions;
+    private final DoublePredicate[] predicates;
+    private final double minValue, maxValue;
+
+    private UnaryChainNode(IBuilder source, byte[] ops, double[] argA, double[] argB, byte[] conditions, DoublePredicate[] predicates,
+            double minValue, double maxValue) {
+        this.source = source;
+        this.ops = ops;
+        this.argA = argA;
+        this.argB = argB;
+        this.conditions = conditions;
+        this.predicates = predicates;
+        this.minValue = minValue;
+        this.maxValue = maxValue;
+    }
+
+    /**
+     * Returns a builder that applies the operation to values of the given builder.
+     *
+     * @param builder the source of values
+     * @param op the operation
+     * @param a first argument of the operation (the constant, or min value for clamp)
+     * @param b second argument of the operation (max value for clamp)
+     * @param predicate if not null, the operation is only applied to values for which the predicate is true
+     */
+    static IBuilder append(IBuilder builder, byte op, double a, double b, @Nullable DoublePredicate predicate) {
+        if (isIdentity(op, a, b)) {
+            return builder;
+        }
+        byte condition = condition(predicate);
+        if (builder instanceof ConstantNode) {
+            double value = ((ConstantNode) builder).value;
+            return new ConstantNode(test(condition, predicate, value) ? apply(op, a, b, value) : value);
+        }
+
+        double min = Double.NEGATIVE_INFINITY, max = Double.POSITIVE_INFINITY;
+        // infinite bounds mean the value may also be NaN, and the operations don't change that
+        if (Double.isFinite(builder.getMinValue()) && Double.isFinite(builder.getMaxValue())) {
+            min = applyMin(op, a, b, builder.getMinValue(), builder.getMaxValue());
+            max = applyMax(op, a, b, builder.getMinValue(), builder.getMaxValue());
+        }
+        if (condition != ALWAYS) {
+            // the value may be left unchanged
+            min = Math.min(min, builder.getMinValue());
+            max = Math.max(max, builder.getMaxValue());
+        }
+
+        if (!(builder instanceof UnaryChainNode)) {
+            return new UnaryChainNode(builder, new byte[]{op}, new double[]{a}, new double[]{b},
+                    new byte[]{condition}, new DoublePredicate[]{predicate}, min, max);
+        }
+        UnaryChainNode chain = (UnaryChainNode) builder;
+        int last = chain.ops.length - 1;
+        if (condition == ALWAYS && chain.conditions[last] == ALWAYS) {
+            if (op == SIGNUM && chain.ops[last] == SIGNUM) {
+                // signum(signum(x)) == signum(x)
+                return chain;
+            }
+            if (op == ADD && chain.ops[last] == MUL) {
+                byte[] ops = chain.ops.clone();
+                double[] argB = chain.argB.clone();
+                ops[last] = SCALE_BIAS;
+                argB[last] = a;
+                return new UnaryChainNode(chain.source, ops, chain.argA, argB, chain.conditions, chain.predicates, min, max);
+            }
+        }
+        int length = chain.ops.length + 1;
+        byte[] ops = Arrays.copyOf(chain.ops, length);
+        double[] argA = Arrays.copyOf(chain.argA, length);
+        double[] argB = Arrays.copyOf(chain.argB, length);
+        byte[] conditions = Arrays.copyOf(chain.conditions, length);
+        DoublePredicate[] predicates = Arrays.copyOf(chain.predicates, length);
+        ops[last + 1] = op;
+        argA[last + 1] = a;
+        argB[last + 1] = b;
+        conditions[last + 1] = condition;
+        predicates[last + 1] = predicate;
+        return new UnaryChainNode(chain.source, ops, argA, argB, conditions, predicates, min, max);
+    }
+
+    @Override public double get(int x, int y, int z) {
+        double value = source.get(x, y, z);
+        for (int i = 0; i < ops.length; i++) {
+            if (test(conditions[i], predicates[i], value)) {
+                value = apply(ops[i], argA[i], argB[i], value);
+            }
+        }
+        return value;
+    }
+
+    @Override public void fillGrid(double[] out, int x0, int y0, int z0, int nx, int ny, int nz, int stepX, int stepY, int stepZ) {
+        source.fillGrid(out, x0, y0, z0, nx, ny, nz, stepX, stepY, stepZ);
+        int size = nx * ny * nz;
+        for (int i = 0; i < ops.length; i++) {
+            byte op = ops[i];
+            byte condition = conditions[i];
+            DoublePredicate predicate = predicates[i];
+            double a = argA[i];
+            double b = argB[i];
+            if (condition == ALWAYS) {
+                applyAll(op, a, b, out, size);
+            } else {
+                for (int j = 0; j < size; j++) {
+                    if (test(condition, predicate, out[j])) {
+                        out[j] = apply(op, a, b, out[j]);
+                    }
+                }
+            }
+        }
+    }
+
+    @Override public double getMinValue() {
+        return minValue;
+    }
+
+    @Override public double getMaxValue() {
+        return maxValue;
+    }
+
+    @Override public String toString() {
+        StringBuilder sb = new StringBuilder().append(source);
+        for (int i = 0; i < ops.length; i++) {
+            sb.append('.');
+            switch (ops[i]) {
+                case ADD: sb.append("add(").append(argA[i]).append(')'); break;
+                case SUB: sb.append("sub(").append(argA[i]).append(')'); break;
+                case MUL: sb.append("mul(").append(argA[i]).append(')'); break;
+                case DIV: sb.append("div(").append(argA[i]).append(')'); break;
+                case CLAMP: sb.append("clamp(").append(argA[i]).append(", ").append(argB[i]).append(')'); break;
+                case SIGNUM: sb.append("signum()"); break;
+                case SCALE_BIAS: sb.append("scaleBias(").append(argA[i]).append(", ").append(argB[i]).append(')'); break;
+                default: throw new IllegalStateException();
+            }
+            if (conditions[i] != ALWAYS) {
+                sb.append("[if ").append(conditions[i] == IF_OTHER ? "?" : conditionName(conditions[i])).append(']');
+            }
+        }
+        return sb.toString();
+    }
+
+    private static double apply(byte op, double a, double b, double value) {
+        switch (op) {
+            case ADD:
+                return value + a;
+            case SUB:
+                return value - a;
+            case MUL:
+                return value * a;
+            case DIV:
+                return value / a;
+            case CLAMP:
+                return MathHelper.clamp(value, a, b);
+            case SIGNUM:
+                return Math.signum(value);
+            case SCALE_BIAS:
+                return value * a + b;
+            default:
+                throw new IllegalStateException("Unknown operation " + op);
+        }
+    }
+
+    // separate loop for each operation, without a switch inside the loop
+    private static void applyAll(byte op, double a, double b, double[] values, int size) {
+        switch (op) {
+            case ADD:
+                for (int i = 0; i < size; i++) {
+                    values[i] += a;
+                }
+                break;
+            case SUB:
+                for (int i = 0; i < size; i++) {
+                    values[i] -= a;
+                }
+                break;
+            case MUL:
+                for (int i = 0; i < size; i++) {
+                    values[i] *= a;
+                }
+                break;
+            case DIV:
+                for (int i = 0; i < size; i++) {
+                    values[i] /= a;
+                }
+                break;
+            case CLAMP:
+                for (int i = 0; i < size; i++) {
+                    values[i] = MathHelper.clamp(values[i], a, b);
+                }
+                break;
+            case SIGNUM:
+                for (int i = 0; i < size; i++) {
+                    values[i] = Math.signum(values[i]);
+                }
+                break;
+            case SCALE_BIAS:
+                for (int i = 0; i < size; i++) {
+                    values[i] = values[i] * a + b;
+                }
+                break;
+            default:
+                throw new IllegalStateException("Unknown operation " + op);
+        }
+    }
+
+    private static boolean test(byte condition, @Nullable DoublePredicate predicate, double value) {
+        switch (condition) {
+            case ALWAYS:
+                return true;
+            case IF_NEGATIVE:
+                return value < 0;
+            case IF_POSITIVE:
+                return value > 0;
+            case IF_NOT_NEGATIVE:
+                return value >= 0;
+            case IF_NOT_POSITIVE:
+                return value <= 0;
+            default:
+                assert predicate != null;
+                return predicate.test(value);
+        }
+    }
+
+    private static byte condition(@Nullable DoublePredicate predicate) {
+        if (predicate == null) {
+            return ALWAYS;
+        }
+        if (predicate == NEGATIVE) {
+            return IF_NEGATIVE;
+        }
+        if (predicate == POSITIVE) {
+            return IF_POSITIVE;
+        }
+        if (predicate == NOT_NEGATIVE) {
+            return IF_NOT_NEGATIVE;
+        }
+        if (predicate == NOT_POSITIVE) {
+            return IF_NOT_POSITIVE;
+        }
+        return IF_OTHER;
+    }
+
+    private static String conditionName(byte condition) {
+        switch (condition) {
+            case IF_NEGATIVE: return "< 0";
+            case IF_POSITIVE: return "> 0";
+            case IF_NOT_NEGATIVE: return ">= 0";
+            case IF_NOT_POSITIVE: return "<= 0";
+            default: return "?";
+        }
+    }
+
+    /**
+     * Returns true if the operation returns exactly the same value for every input, including -0.0, infinities and NaN
+     */
+    private static boolean isIdentity(byte op, double a, double b) {
+        switch (op) {
+            case MUL:
+            case DIV:
+                return a == 1;
+            case SUB:
+                // x - 0.0 == x, but -0.0 + 0.0 == 0.0 so only adding -0.0 keeps the value unchanged
+                return Double.doubleToRawLongBits(a) == Double.doubleToRawLongBits(0.0);
+            case ADD:
+                return Double.doubleToRawLongBits(a) == Double.doubleToRawLongBits(-0.0);
+            case CLAMP:
+                return a == Double.NEGATIVE_INFINITY && b == Double.POSITIVE_INFINITY;
+            default:
+                return false;
+        }
+    }
+
+    // all operations are monotonic, and so is rounding, so the result for bounds of the input are bounds of the result
+    private static double applyMin(byte op, double a, double b, double min, double max) {
+        double v1 = apply(op, a, b, min);
+        double v2 = apply(op, a, b, max);
+        if (Double.isNaN(v1) || Double.isNaN(v2)) {
+            return Double.NEGATIVE_INFINITY;
+        }
+        return Math.min(v1, v2);
+    }
+
+    private static double applyMax(byte op, double a, double b, double min, double max) {
+        double v1 = apply(op, a, b, min);
+        double v2 = apply(op, a, b, max);
+        if (Double.isNaN(v1) || Double.isNaN(v2)) {
+            return Double.POSITIVE_INFINITY;
+        }
+        return Math.max(v1, v2);
+    }
+}
@@ -0,0 +1,116 @@
+/*
+ *  This file is part of Cubic World Generation, licensed under the MIT License (MIT).
+ *
+ *  Copyright (c) 2015-2020 contributors
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ */
+package io.github.opencubicchunks.cubicchunks.cubicgen.customcubic.structure;
+
+import mcp.MethodsReturnNonnullByDefault;
+
+import java.util.Arrays;
+
+import javax.annotation.ParametersAreNonnullByDefault;
+
+/**
+ * Set of blocks in a cube to be modified by a carver, one bit per block. All steps that can affect a cube are first
+ * rasterized into the mask, and then the cube is modified in a single pass over the blocks marked in it, instead of
+ * reading and writing the same blocks once for every overlapping step.
+ * <p>
+ * In addition to carved blocks, a second bit can be set for each block. What it means depends on the carver: caves use it
+ * for floor blocks that may need to be converted to grass, ravines for blocks that are filled with lava.
+ * <p>
+ * Block index is {@code x << 8 | z << 4 | y}, the same order as block storage of a cube, so the final pass goes over the
+ * blocks in memory order.
+ */
+@ParametersAreNonnullByDefault
+@MethodsReturnNonnullByDefault
+final class CarveMask {
+
+    private final long[] carved = new long[64];
+    private final long[] marked = new long[64];
+    private boolean empty = true;
+
+    static int index(int localX, int localY, int localZ) {
+        return localX << 8 | localZ << 4 | localY;
+    }
+
+    static int localX(int index) {
+        return index >>> 8;
+    }
+
+    static int localY(int index) {
+        return index & 0xF;
+    }
+
+    static int localZ(int index) {
+        return (index >>> 4) & 0xF;
+    }
+
+    void clear() {
+        if (!empty) {
+            Arrays.fill(carved, 0);
+            Arrays.fill(marked, 0);
+            empty = true;
+        }
+    }
+
+    boolean isEmpty() {
+        return empty;
+    }
+
+    void setCarved(int index) {
+        carved[index >>> 6] |= 1L << index;
+        empty = false;
+    }
+
+    boolean isCarved(int index) {
+        return (carved[index >>> 6] & 1L << index) != 0;
+    }
+
+    void setMarked(int index) {
+        marked[index >>> 6] |= 1L << index;
+        empty = false;
+    }
+
+    boolean isMarked(int index) {
+        return (marked[index >>> 6] & 1L << index) != 0;
+    }
+
+    /**
+     * Returns the first index at or after the given one that is carved or marked, or -1 if there is none.
+     */
+    int next(int fromIndex) {
+        int word = fromIndex >>> 6;
+        if (word >= carved.length) {
+            return -1;
+        }
+        long bits = (carved[word] | marked[word]) & (-1L << fromIndex);
+        while (true) {
+            if (bits != 0) {
+                return (word << 6) + Long.numberOfTrailingZeros(bits);
+            }
+            if (++word == carved.length) {
+                return -1;
+            }
+            bits = carved[word] | marked[word];
+        }
+    }
+}
@@ -0,0 +1,204 @@
+/*
+ *  This file is part of Cubic World Generation, licensed under the MIT License (MIT).
+ *
+ *  Copyright (c) 2015-2020 contributors
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ */
+package io.github.opencubicchunks.cubicchunks.cubicgen.customcubic.structure;
+
+import io.github.opencubicchunks.cubicchunks.api.util.CubePos;
+import io.github.opencubicchunks.cubicchunks.api.world.ICube;
+import mcp.MethodsReturnNonnullByDefault;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import javax.annotation.ParametersAreNonnullByDefault;
+
+/**
+ * Precomputed path of a single cave or ravine node: position and size at each step that carves blocks, followed by
+ * branches that split off at the end of it. Random walks don't depend on the cube being generated, so a path is
+ * computed once for each source cube and then only intersected with each cube it can affect.
+ * <p>
+ * Also keeps bounds of all the steps of this path and its branches, so that paths that can't reach a cube can be skipped
+ * without looking at individual steps. Paths are never modified after they are built, so they can be shared between threads.
+ */
+@ParametersAreNonnullByDefault
+@MethodsReturnNonnullByDefault
+final class CarvePath {
+
+    // x, y, z, horizontal size, vertical size and max remaining distance of each step
+    private static final int STEP_DATA = 6;
+
+    private final double maxDistToCube;
+    private final boolean checkY;
+    private double[] steps = new double[0];
+    private int stepCount;
+    private List<CarvePath> branches = Collections.emptyList();
+
+    private double minX = Double.POSITIVE_INFINITY, minY = Double.POSITIVE_INFINITY, minZ = Double.POSITIVE_INFINITY;
+    private double maxX = Double.NEGATIVE_INFINITY, maxY = Double.NEGATIVE_INFINITY, maxZ = Double.NEGATIVE_INFINITY;
+
+    /**
+     * @param maxDistToCube how far from the center of a cube a step can be for the path to still reach it, see
+     * {@link #isOutOfReach(int, CubePos)}
+     * @param checkY whether Y distance is included in that check
+     */
+    CarvePath(double maxDistToCube, boolean checkY) {
+        this.maxDistToCube = maxDistToCube;
+        this.checkY = checkY;
+    }
+
+    void addStep(double x, double y, double z, double sizeHoriz, double sizeVert, double maxStepsDist) {
+        if (steps.length < (stepCount + 1) * STEP_DATA) {
+            steps = Arrays.copyOf(steps, Math.max(16, stepCount * 2) * STEP_DATA);
+        }
+        int i = stepCount * STEP_DATA;
+        steps[i] = x;
+        steps[i + 1] = y;
+        steps[i + 2] = z;
+        steps[i + 3] = sizeHoriz;
+        steps[i + 4] = sizeVert;
+        steps[i + 5] = maxStepsDist;
+        stepCount++;
+
+        // carving never goes beyond 1 block outside of the radius, 2 is used to stay safe with rounding
+        expandBounds(x - sizeHoriz - 2, y - sizeVert - 2, z - sizeHoriz - 2);
+        expandBounds(x + sizeHoriz + 2, y + sizeVert + 2, z + sizeHoriz + 2);
+    }
+
+    void addBranch(CarvePath branch) {
+        if (branches.isEmpty()) {
+            branches = new ArrayList<>(2);
+        }
+        branches.add(branch);
+        if (branch.hasBounds()) {
+            expandBounds(branch.minX, branch.minY, branch.minZ);
+            expandBounds(branch.maxX, branch.maxY, branch.maxZ);
+        }
+    }
+
+    /**
+     * Trims the step array to size, called once the path and its branches are complete.
+     */
+    CarvePath build() {
+        if (steps.length != stepCount * STEP_DATA) {
+            steps = Arrays.copyOf(steps, stepCount * STEP_DATA);
+        }
+        return this;
+    }
+
+    private void expandBounds(double x, double y, double z) {
+        minX = Math.min(minX, x);
+        minY = Math.min(minY, y);
+        minZ = Math.min(minZ, z);
+        maxX = Math.max(maxX, x);
+        maxY = Math.max(maxY, y);
+        maxZ = Math.max(maxZ, z);
+    }
+
+    private boolean hasBounds() {
+        return minX <= maxX;
+    }
+
+    /**
+     * Returns false if neither this path nor any of its branches can carve any blocks in the given cube.
+     */
+    boolean canAffect(CubePos pos) {
+        return hasBounds()
+                && maxX >= pos.getMinBlockX() && minX <= pos.getMinBlockX() + ICube.SIZE
+                && maxY >= pos.getMinBlockY() && minY <= pos.getMinBlockY() + ICube.SIZE
+                && maxZ >= pos.getMinBlockZ() && minZ <= pos.getMinBlockZ() + ICube.SIZE;
+    }
+
+    /**
+     * Returns true if the given cube is too far away from the given step to be reached by the remaining steps. When that
+     * happens no further steps or branches of this path are carved in that cube, the same way the random walk used to stop.
+     *
+     * @param step index of the step
+     * @param generatedCubePos position of the generated cube
+     */
+    boolean isOutOfReach(int step, CubePos generatedCubePos) {
+        double xDist = getX(step) - generatedCubePos.getXCenter();
+        double yDist = checkY ? getY(step) - generatedCubePos.getYCenter() : 0;
+        double zDist = getZ(step) - generatedCubePos.getZCenter();
+        double maxStepsDist = steps[step * STEP_DATA + 5];
+        return xDist * xDist + yDist * yDist + zDist * zDist - maxStepsDist * maxStepsDist > maxDistToCube * maxDistToCube;
+    }
+
+    int getStepCount() {
+        return stepCount;
+    }
+
+    double getX(int step) {
+        return steps[step * STEP_DATA];
+    }
+
+    double getY(int step) {
+        return steps[step * STEP_DATA + 1];
+    }
+
+    double getZ(int step) {
+        return steps[step * STEP_DATA + 2];
+    }
+
+    double getSizeHoriz(int step) {
+        return steps[step * STEP_DATA + 3];
+    }
+
+    double getSizeVert(int step) {
+        return steps[step * STEP_DATA + 4];
+    }
+
+    List<CarvePath> getBranches() {
+        return branches;
+    }
+
+    /**
+     * Returns true if {@link #sourceKey(int, int, int)} is unique for the given source cube. This is true for all cubes within
+     * the world border (up to 2^21 cubes from 0 on X and Z) and up to 2^19 cubes from 0 on Y. Other cubes can't be cached.
+     */
+    static boolean hasSourceKey(int cubeX, int cubeY, int cubeZ) {
+        return (cubeX >> 21 == 0 || cubeX >> 21 == -1)
+                && (cubeY >> 19 == 0 || cubeY >> 19 == -1)
+                && (cubeZ >> 21 == 0 || cubeZ >> 21 == -1);
+    }
+
+    /**
+     * Packs cube coordinates of a source cube into a cache key, using 22 bits for X and Z and 20 bits for Y.
+     * Only unique if {@link #hasSourceKey(int, int, int)} returns true.
+     */
+    static long sourceKey(int cubeX, int cubeY, int cubeZ) {
+        return (cubeX & 0x3FFFFFL) << 42 | (cubeY & 0xFFFFFL) << 22 | (cubeZ & 0x3FFFFFL);
+    }
+
+    /**
+     * Hash function for {@link #sourceKey(int, int, int)}, spreads nearby source cubes over different cache sets.
+     */
+    static int hashSourceKey(long key) {
+        int x = (int) (key >>> 42);
+        int y = (int) (key >>> 22) & 0xFFFFF;
+        int z = (int) key & 0x3FFFFF;
+        int window = IFlexHandlerStructureGenerator.RANGE * 2 + 1;
+        return x + (y + z * window) * window;
+    }
+}
@@ -27,6 +27,7 @@ import static io.github.opencubicchunks.cubicchunks.api.util.Coords.cubeToMinBlo
 import static io.github.opencubicchunks.cubicchunks.api.util.Coords.localToBlock;
 import static io.github.opencubicchunks.cubicchunks.cubicgen.StructureGenUtil.normalizedDistance;
 import static java.lang.Math.max;
+import static java.lang.Math.min;
 import static net.minecraft.util.math.MathHelper.cos;
 import static net.minecraft.util.math.MathHelper.floor;
 import static net.minecraft.util.math.MathHelper.sin;
@@ -39,12 +40,10 @@ import mcp.MethodsReturnNonnullByDefault;
 import net.minecraft.block.state.IBlockState;
 import net.minecraft.init.Blocks;
 import net.minecraft.world.World;
-import net.minecraft.world.gen.structure.StructureBoundingBox;
 
 import java.util.Random;
 import java.util.function.Predicate;
 
-import javax.annotation.Nonnull;
 import javax.annotation.ParametersAreNonnullByDefault;
 
 /*
@@ -152,16 +151,60 @@ public class CubicCaveGenerator implements IFlexHandlerStructureGenerator {
     private static final Predicate<IBlockState> isBlockReplaceable = (state ->
             state.getBlock() == Blocks.STONE || state.getBlock() == Blocks.DIRT || state.getBlock() == Blocks.GRASS);
 
+    /**
+     * Caves are not carved into blocks next to these blocks
+     */
+    private static final Predicate<IBlockState> isLava = (state ->
+            state.getBlock() == Blocks.LAVA || state.getBlock() == Blocks.FLOWING_LAVA);
+
+    /**
+     * Amount of source cubes with caves for which cave paths are kept, per thread
+     */
+    private static final int PATH_CACHE_SIZE = 1024;
+
+    // cave paths only depend on the seed and the source cube, and nearby cubes are affected by mostly the same source cubes
+    private static final ThreadLocal<SeededPathCache<CarvePath>> pathCache = ThreadLocal.withInitial(() ->
+            new SeededPathCache<>(PATH_CACHE_SIZE, "CubicCaveGenerator.paths"));
+
+    private static final ThreadLocal<CarveMask> carveMask = ThreadLocal.withInitial(CarveMask::new);
+
+    @Override
+    public void generate(World world, CubePrimer cube, CubePos cubePos) {
+        CarveMask mask = carveMask.get();
+        mask.clear();
+        // caves from all source cubes are first collected into the mask, and then carved at once
+        IFlexHandlerStructureGenerator.super.generate(world, cube, cubePos);
+        if (!mask.isEmpty()) {
+            applyMask(cube, mask);
+        }
+    }
+
     @Override
     public Handler getHandler() {
         return this::generate;
     }
 
+    /**
+     * Adds blocks carved by caves starting in the given source cube to the carve mask of the current thread. The cube is
+     * modified by {@link #generate(World, CubePrimer, CubePos)} once all source cubes are processed.
+     */
     protected void generate(World world, Random rand, CubePrimer cube,
                             int cubeXOrigin, int cubeYOrigin, int cubeZOrigin, CubePos generatedCubePos) {
         if (rand.nextInt(CAVE_RARITY) != 0) {
             return;
         }
+        CarvePath caves = CarvePath.hasSourceKey(cubeXOrigin, cubeYOrigin, cubeZOrigin) ?
+                pathCache.get().get(world.getSeed(), CarvePath.sourceKey(cubeXOrigin, cubeYOrigin, cubeZOrigin),
+                        key -> createCaves(rand, cubeXOrigin, cubeYOrigin, cubeZOrigin)) :
+                createCaves(rand, cubeXOrigin, cubeYOrigin, cubeZOrigin);
+        carvePath(cube, carveMask.get(), caves, generatedCubePos);
+    }
+
+    /**
+     * Creates paths of all caves starting in the given source cube. The returned path has no steps, caves are its branches.
+     */
+    private CarvePath createCaves(Random rand, int cubeXOrigin, int cubeYOrigin, int cubeZOrigin) {
+        CarvePath caves = new CarvePath(0, true);
         //very low probability of generating high number
         int nodes = rand.nextInt(rand.nextInt(rand.nextInt(MAX_INIT_NODES + 1) + 1) + 1);
 
@@ -172,8 +215,8 @@ public class CubicCaveGenerator implements IFlexHandlerStructureGenerator {
             int subBranches = 1;
 
             if (rand.nextInt(LARGE_NODE_RARITY) == 0) {
-                this.generateLargeNode(cube, rand, rand.nextLong(), generatedCubePos,
-                        branchStartX, branchStartY, branchStartZ);
+                caves.addBranch(this.createLargeNode(rand, rand.nextLong(),
+                        branchStartX, branchStartY, branchStartZ));
                 subBranches += rand.nextInt(LARGE_NODE_MAX_BRANCHES);
             }
 
@@ -190,19 +233,41 @@ public class CubicCaveGenerator implements IFlexHandlerStructureGenerator {
                 int maxWalkedDistance = 0;
                 double vertCaveSizeMod = 1.0;
 
-                this.generateNode(cube, rand.nextLong(), generatedCubePos,
+                caves.addBranch(this.createNode(rand.nextLong(),
                         branchStartX, branchStartY, branchStartZ,
                         baseHorizSize, horizDirAngle, vertDirAngle,
-                        startWalkedDistance, maxWalkedDistance, vertCaveSizeMod);
+                        startWalkedDistance, maxWalkedDistance, vertCaveSizeMod));
+            }
+        }
+        return caves.build();
+    }
+
+    /**
+     * Carves steps of the given path and then its branches that can affect the given cube.
+     */
+    private void carvePath(CubePrimer cube, CarveMask mask, CarvePath path, CubePos generatedCubePos) {
+        if (!path.canAffect(generatedCubePos)) {
+            return;
+        }
+        for (int step = 0; step < path.getStepCount(); step++) {
+            //can this cube be reached at all?
+            //if even after going max distance allowed by remaining steps, it's still too far - stop
+            if (path.isOutOfReach(step, generatedCubePos)) {
+                return;
             }
+            tryCarveBlocks(cube, mask, generatedCubePos,
+                    path.getX(step), path.getY(step), path.getZ(step),
+                    path.getSizeHoriz(step), path.getSizeVert(step));
+        }
+        for (CarvePath branch : path.getBranches()) {
+            carvePath(cube, mask, branch, generatedCubePos);
         }
     }
 
     /**
-     * Generates a flattened cave "room", usually more caves split off it
+     * Creates a flattened cave "room", usually more caves split off it
      */
-    private void generateLargeNode(CubePrimer cube, Random rand, long seed, CubePos generatedCubePos,
-            double x, double y, double z) {
+    private CarvePath createLargeNode(Random rand, long seed, double x, double y, double z) {
         float baseHorizSize = 1.0F + rand.nextFloat() * 6.0F;
         float horizDirAngle = 0;
         float vertDirAngle = 0;
@@ -210,17 +275,15 @@ public class CubicCaveGenerator implements IFlexHandlerStructureGenerator {
         int startWalkedDistance = -1;
         int maxWalkedDistance = -1;
         double vertCaveSizeMod = 0.5;
-        this.generateNode(cube, seed, generatedCubePos, x, y, z,
+        return this.createNode(seed, x, y, z,
                 baseHorizSize, horizDirAngle, vertDirAngle,
                 startWalkedDistance, maxWalkedDistance, vertCaveSizeMod);
     }
 
     /**
-     * Recursively generates a node in the current cave system tree.
+     * Recursively walks a node in the current cave system tree and records the steps that carve blocks.
      *
-     * @param cube block buffer to modify
      * @param seed random seed to use
-     * @param generatedCubePos position of the cube to modify
      * @param caveX starting x coordinate of the cave
      * @param caveY starting Y coordinate of the cave
      * @param caveZ starting Z coordinate of the cave
@@ -233,13 +296,15 @@ public class CubicCaveGenerator implements IFlexHandlerStructureGenerator {
      * @param vertDirAngle changes vertical size of the cave, values < 1 result in flattened caves, > 1 result in
      * vertically stretched caves
      */
-    private void generateNode(CubePrimer cube, long seed,
-            CubePos generatedCubePos,
+    private CarvePath createNode(long seed,
             double caveX, double caveY, double caveZ,
             float baseCaveSize, float horizDirAngle, float vertDirAngle,
             int startWalkedDistance, int maxWalkedDistance, double vertCaveSizeMod) {
         Random rand = new Random(seed);
 
+        //CHANGE: multiply max(1, vertCaveSizeMod)
+        CarvePath path = new CarvePath(baseCaveSize * max(1, vertCaveSizeMod) + CAVE_SIZE_ADD + ICube.SIZE, true);
+
         //store by how much the horizontal and vertical direction angles will change each step
         float horizDirChange = 0.0F;
         float vertDirChange = 0.0F;
@@ -303,18 +368,17 @@ public class CubicCaveGenerator implements IFlexHandlerStructureGenerator {
             //if we reached split point - try to split
             //can split only if it's not final branch and the cave is still big enough (>1 block radius)
             if (!finalStep && walkedDistance == splitPoint && baseCaveSize > 1.0F) {
-                this.generateNode(cube, rand.nextLong(),
-                        generatedCubePos, caveX, caveY, caveZ,
+                path.addBranch(this.createNode(rand.nextLong(), caveX, caveY, caveZ,
                         rand.nextFloat() * 0.5F + 0.5F,//base cave size
                         horizDirAngle - ((float) Math.PI / 2F),//horiz. angle - subtract 90 degrees
                         vertDirAngle / 3.0F, walkedDistance, maxWalkedDistance,
-                        1.0D);
-                this.generateNode(cube, rand.nextLong(), generatedCubePos, caveX, caveY, caveZ,
+                        1.0D));
+                path.addBranch(this.createNode(rand.nextLong(), caveX, caveY, caveZ,
                         rand.nextFloat() * 0.5F + 0.5F,//base cave size
                         horizDirAngle + ((float) Math.PI / 2F),//horiz. angle - add 90 degrees
                         vertDirAngle / 3.0F, walkedDistance, maxWalkedDistance,
-                        1.0D);
-                return;
+                        1.0D));
+                return path.build();
             }
 
             //carve blocks only on some percentage of steps, unless this is the final branch
@@ -322,31 +386,19 @@ public class CubicCaveGenerator implements IFlexHandlerStructureGenerator {
                 continue;
             }
 
-            double xDist = caveX - generatedCubePos.getXCenter();
-            double yDist = caveY - generatedCubePos.getYCenter();
-            double zDist = caveZ - generatedCubePos.getZCenter();
             double maxStepsDist = maxWalkedDistance - walkedDistance;
-            //CHANGE: multiply max(1, vertCaveSizeMod)
-            double maxDistToCube = baseCaveSize * max(1, vertCaveSizeMod) + CAVE_SIZE_ADD + ICube.SIZE;
-
-            //can this cube be reached at all?
-            //if even after going max distance allowed by remaining steps, it's still too far - stop
-            //TODO: does it make any performance difference?
-            if (xDist * xDist + yDist * yDist + zDist * zDist - maxStepsDist * maxStepsDist > maxDistToCube * maxDistToCube) {
-                return;
-            }
-
-            tryCarveBlocks(cube, generatedCubePos,
-                    caveX, caveY, caveZ,
-                    caveSizeHoriz, caveSizeVert);
+            path.addStep(caveX, caveY, caveZ, caveSizeHoriz, caveSizeVert, maxStepsDist);
             if (finalStep) {
-                return;
+                break;
             }
         }
+        return path.build();
     }
 
-    //returns true if cave generation should be continued
-    private void tryCarveBlocks(@Nonnull CubePrimer cube, @Nonnull CubePos generatedCubePos,
+    /**
+     * Adds blocks carved by a single cave step to the mask, unless the step would carve into lava.
+     */
+    private void tryCarveBlocks(CubePrimer cube, CarveMask mask, CubePos generatedCubePos,
             double caveX, double caveY, double caveZ,
             double caveSizeHoriz, double caveSizeVert) {
         double genCubeCenterX = generatedCubePos.getXCenter();
@@ -376,35 +428,33 @@ public class CubicCaveGenerator implements IFlexHandlerStructureGenerator {
                 maxLocalZ <= 0 || minLocalZ >= ICube.SIZE) {
             return;
         }
-        StructureBoundingBox boundingBox = new StructureBoundingBox(minLocalX, minLocalY, minLocalZ, maxLocalX, maxLocalY, maxLocalZ);
+        minLocalX = max(minLocalX, 0);
+        minLocalY = max(minLocalY, 0);
+        minLocalZ = max(minLocalZ, 0);
+        maxLocalX = min(maxLocalX, ICube.SIZE);
+        maxLocalY = min(maxLocalY, ICube.SIZE);
+        maxLocalZ = min(maxLocalZ, ICube.SIZE);
 
-        StructureGenUtil.clampBoundingBoxToLocalCube(boundingBox);
-
-        boolean hitLiquid = StructureGenUtil.scanWallsForBlock(cube, boundingBox,
-                (b) -> b.getBlock() == Blocks.LAVA || b.getBlock() == Blocks.FLOWING_LAVA);
+        // caves never place lava, so checking blocks before anything is carved gives the same result
+        boolean hitLiquid = StructureGenUtil.scanWallsForBlock(cube,
+                minLocalX, minLocalY, minLocalZ, maxLocalX, maxLocalY, maxLocalZ, isLava);
 
         if (!hitLiquid) {
-            carveBlocks(cube, generatedCubePos, caveX, caveY, caveZ, caveSizeHoriz, caveSizeVert, boundingBox);
+            markBlocks(mask, generatedCubePos, caveX, caveY, caveZ, caveSizeHoriz, caveSizeVert,
+                    minLocalX, minLocalY, minLocalZ, maxLocalX, maxLocalY, maxLocalZ);
         }
     }
 
-    private void carveBlocks(CubePrimer cube,
+    private void markBlocks(CarveMask mask,
             CubePos generatedCubePos,
             double caveX, double caveY, double caveZ,
             double caveSizeHoriz, double caveSizeVert,
-            StructureBoundingBox boundingBox) {
+            int minX, int minY, int minZ, int maxX, int maxY, int maxZ) {
 
         int generatedCubeX = generatedCubePos.getX();
         int generatedCubeY = generatedCubePos.getY();
         int generatedCubeZ = generatedCubePos.getZ();
 
-        int minX = boundingBox.minX;
-        int maxX = boundingBox.maxX;
-        int minY = boundingBox.minY;
-        int maxY = boundingBox.maxY;
-        int minZ = boundingBox.minZ;
-        int maxZ = boundingBox.maxZ;
-
         for (int localX = minX; localX < maxX; ++localX) {
             double distX = normalizedDistance(generatedCubeX, localX, caveX, caveSizeHoriz);
 
@@ -417,16 +467,9 @@ public class CubicCaveGenerator implements IFlexHandlerStructureGenerator {
                 for (int localY = minY; localY < maxY; ++localY) {
                     double distY = normalizedDistance(generatedCubeY, localY, caveY, caveSizeVert);
 
-                    IBlockState state = cube.getBlockState(localX, localY, localZ);
-
-                    if (!isBlockReplaceable.test(state)) {
-                        continue;
-                    }
-
                     if (shouldCarveBlock(distX, distY, distZ)) {
-                        // No lava generation, infinite depth. Lava will be generated differently (or not generated)
-                        cube.setBlockState(localX, localY, localZ, Blocks.AIR.getDefaultState());
-                    } else if (state.getBlock() == Blocks.DIRT) {
+                        mask.setCarved(CarveMask.index(localX, localY, localZ));
+                    } else {
                         //vanilla dirt-grass replacement works by scanning top-down and moving the block
                         //cubic chunks needs to be a bit more hacky about it
                         //instead of keeping track of the encountered grass block
@@ -434,7 +477,7 @@ public class CubicCaveGenerator implements IFlexHandlerStructureGenerator {
                         //with grass, if the block above would be deleted by this cave generator step
                         double distYAbove = normalizedDistance(generatedCubeY, localY + 1, caveY, caveSizeVert);
                         if (shouldCarveBlock(distX, distYAbove, distZ)) {
-                            cube.setBlockState(localX, localY, localZ, Blocks.GRASS.getDefaultState());
+                            mask.setMarked(CarveMask.index(localX, localY, localZ));
                         }
                     }
                 }
@@ -442,6 +485,30 @@ public class CubicCaveGenerator implements IFlexHandlerStructureGenerator {
         }
     }
 
+    /**
+     * Carves all blocks in the mask. Carved blocks become air and marked dirt blocks become grass, the same as carving
+     * each step in order: once a block is air it's never replaced again, and dirt turned into grass can still be carved.
+     */
+    private void applyMask(CubePrimer cube, CarveMask mask) {
+        for (int i = mask.next(0); i >= 0; i = mask.next(i + 1)) {
+            int localX = CarveMask.localX(i);
+            int localY = CarveMask.localY(i);
+            int localZ = CarveMask.localZ(i);
+            IBlockState state = cube.getBlockState(localX, localY, localZ);
+
+            if (!isBlockReplaceable.test(state)) {
+                continue;
+            }
+
+            if (mask.isCarved(i)) {
+                // No lava generation, infinite depth. Lava will be generated differently (or not generated)
+                cube.setBlockState(localX, localY, localZ, Blocks.AIR.getDefaultState());
+            } else if (state.getBlock() == Blocks.DIRT) {
+                cube.setBlockState(localX, localY, localZ, Blocks.GRASS.getDefaultState());
+            }
+        }
+    }
+
     private static boolean shouldCarveBlock(double distX, double distY, double distZ) {
         //distY > CAVE_FLOOR_DEPTH --> flattened floor
         return distY > CAVE_FLOOR_DEPTH && distX * distX + distY * distY + distZ * distZ < 1.0D;
@@ -40,7 +40,6 @@ import mcp.MethodsReturnNonnullByDefault;
 import net.minecraft.block.state.IBlockState;
 import net.minecraft.init.Blocks;
 import net.minecraft.world.World;
-import net.minecraft.world.gen.structure.StructureBoundingBox;
 
 import java.util.Random;
 import java.util.function.Predicate;
@@ -130,29 +129,76 @@ public class CubicRavineGenerator implements IFlexHandlerStructureGenerator {
     @Nonnull private static final Predicate<IBlockState> isBlockReplaceable = (state ->
             state.getBlock() == Blocks.STONE || state.getBlock() == Blocks.DIRT || state.getBlock() == Blocks.GRASS);
 
-    private final int maxCubeY;
+    /**
+     * Ravines are not carved into blocks next to these blocks
+     */
+    @Nonnull private static final Predicate<IBlockState> isWater = (state ->
+            state.getBlock() == Blocks.WATER || state.getBlock() == Blocks.FLOWING_WATER);
 
     /**
-     * Contains values of ravine widths at each height.
-     * <p>
-     * For cubic chunks the height value used wraps around.
+     * Amount of source cubes with ravines for which ravine paths are kept, per thread
      */
-    @Nonnull private float[] widthDecreaseFactors = new float[1024];
+    private static final int PATH_CACHE_SIZE = 256;
+
+    private final int maxCubeY;
+
+    // ravine paths only depend on the seed and the source cube, and nearby cubes are affected by mostly the same source cubes
+    private static final ThreadLocal<SeededPathCache<Ravine>> pathCache = ThreadLocal.withInitial(() ->
+            new SeededPathCache<>(PATH_CACHE_SIZE, "CubicRavineGenerator.paths"));
+
+    private static final ThreadLocal<CarveMask> carveMask = ThreadLocal.withInitial(CarveMask::new);
 
     public CubicRavineGenerator(CustomGeneratorSettings cfg) {
         this.maxCubeY = Coords.blockToCube(cfg.expectedBaseHeight);
     }
 
+    @Override
+    public void generate(World world, CubePrimer cube, CubePos cubePos) {
+        CarveMask mask = carveMask.get();
+        mask.clear();
+        // ravines from all source cubes are first collected into the mask, and then carved at once
+        IFlexHandlerStructureGenerator.super.generate(world, cube, cubePos);
+        if (!mask.isEmpty()) {
+            applyMask(cube, mask);
+        }
+    }
+
     @Override
     public ICubicStructureGenerator.Handler getHandler() {
         return this::generate;
     }
 
+    /**
+     * Adds blocks carved by a ravine starting in the given source cube to the carve mask of the current thread. The cube
+     * is modified by {@link #generate(World, CubePrimer, CubePos)} once all source cubes are processed.
+     */
     protected void generate(World world, Random rand, CubePrimer cube, int structureX, int structureY, int structureZ,
             CubePos generatedCubePos) {
         if (rand.nextInt(RAVINE_RARITY) != 0 || structureY > maxCubeY) {
             return;
         }
+        Ravine ravine = CarvePath.hasSourceKey(structureX, structureY, structureZ) ?
+                pathCache.get().get(world.getSeed(), CarvePath.sourceKey(structureX, structureY, structureZ),
+                        key -> createRavine(rand, structureX, structureY, structureZ)) :
+                createRavine(rand, structureX, structureY, structureZ);
+        if (!ravine.path.canAffect(generatedCubePos)) {
+            return;
+        }
+        CarvePath path = ravine.path;
+        CarveMask mask = carveMask.get();
+        for (int step = 0; step < path.getStepCount(); step++) {
+            //can this cube be reached at all?
+            //if even after going max distance allowed by remaining steps, it's still too far - stop
+            if (path.isOutOfReach(step, generatedCubePos)) {
+                return;
+            }
+            tryCarveBlocks(cube, mask, generatedCubePos,
+                    path.getX(step), path.getY(step), path.getZ(step),
+                    path.getSizeHoriz(step), path.getSizeVert(step), ravine.lavaHeight, ravine.widthDecreaseFactors);
+        }
+    }
+
+    private Ravine createRavine(Random rand, int structureX, int structureY, int structureZ) {
         double startX = localToBlock(structureX, rand.nextInt(ICube.SIZE));
         double startY = localToBlock(structureY, rand.nextInt(ICube.SIZE));
         double startZ = localToBlock(structureZ, rand.nextInt(ICube.SIZE));
@@ -168,18 +214,22 @@ public class CubicRavineGenerator implements IFlexHandlerStructureGenerator {
                 (baseRavineSize + RAVINE_SIZE_ADD) * VERT_SIZE_FACTOR +
                 LAVA_HEIGHT_OFFSET + startY * LAVA_HEIGHT_Y_FACTOR);
 
-        this.generateNode(cube, rand.nextLong(), generatedCubePos, startX, startY, startZ,
+        return this.createNode(rand.nextLong(), startX, startY, startZ,
                 baseRavineSize, vertDirectionAngle, horizDirectionAngle,
                 startWalkedDistance, maxWalkedDistance, VERT_SIZE_FACTOR, lavaHeight);
     }
 
-    private void generateNode(CubePrimer cube, long seed, CubePos generatedCubePos,
+    private Ravine createNode(long seed,
             double ravineX, double ravineY, double ravineZ,
             float baseRavineSize, float horizDirAngle, float vertDirAngle,
             int startWalkedDistance, int maxWalkedDistance, double vertRavineSizeMod,
             int lavaHeight) {
         Random rand = new Random(seed);
 
+        //NOTE: don't check yDist, this is optimization and with Y scale stretched as much as with ravines
+        //the check would be useless
+        CarvePath path = new CarvePath(baseRavineSize + RAVINE_SIZE_ADD + ICube.SIZE, false);
+
         //store by how much the horizontal and vertical(?) direction angles will change each step
         float horizDirChange = 0.0F;
         float vertDirChange = 0.0F;
@@ -202,7 +252,9 @@ public class CubicRavineGenerator implements IFlexHandlerStructureGenerator {
             walkedDistance = startWalkedDistance;
         }
 
-        this.widthDecreaseFactors = generateRavineWidthFactors(rand);
+        // values of ravine widths at each height, for cubic chunks the height value used wraps around.
+        // Kept local to each node instead of in a field, so that multiple threads can generate ravines at the same time
+        float[] widthDecreaseFactors = generateRavineWidthFactors(rand);
 
         for (; walkedDistance < maxWalkedDistance; ++walkedDistance) {
             float fractionWalked = walkedDistance / (float) maxWalkedDistance;
@@ -241,33 +293,19 @@ public class CubicRavineGenerator implements IFlexHandlerStructureGenerator {
                 continue;
             }
 
-            double xDist = ravineX - generatedCubePos.getXCenter();
-            double zDist = ravineZ - generatedCubePos.getZCenter();
             double maxStepsDist = maxWalkedDistance - walkedDistance;
-
-            double maxDistToCube = baseRavineSize + RAVINE_SIZE_ADD + ICube.SIZE;
-            //can this cube be reached at all?
-            //if even after going max distance allowed by remaining steps, it's still too far - stop
-            //NOTE: don't check yDist, this is optimization and with Y scale stretched as much as with ravines
-            //the check would be useless
-            //TODO: does it make any performance difference?
-            if (xDist * xDist + zDist * zDist - maxStepsDist * maxStepsDist > maxDistToCube * maxDistToCube) {
-                return;
-            }
-
-            tryCarveBlocks(cube, generatedCubePos,
-                    ravineX, ravineY, ravineZ,
-                    ravineSizeHoriz, ravineSizeVert, lavaHeight);
+            path.addStep(ravineX, ravineY, ravineZ, ravineSizeHoriz, ravineSizeVert, maxStepsDist);
 
             if (finalStep) {
-                return;
+                break;
             }
         }
+        return new Ravine(path.build(), lavaHeight, widthDecreaseFactors);
     }
 
-    private void tryCarveBlocks(CubePrimer cube, CubePos generatedCubePos,
+    private void tryCarveBlocks(CubePrimer cube, CarveMask mask, CubePos generatedCubePos,
             double ravineX, double ravineY, double ravineZ,
-            double ravineSizeHoriz, double ravineSizeVert, int lavaHeight) {
+            double ravineSizeHoriz, double ravineSizeVert, int lavaHeight, float[] widthDecreaseFactors) {
         double genCubeCenterX = generatedCubePos.getXCenter();
         double genCubeCenterY = generatedCubePos.getYCenter();
         double genCubeCenterZ = generatedCubePos.getZCenter();
@@ -292,34 +330,32 @@ public class CubicRavineGenerator implements IFlexHandlerStructureGenerator {
                 maxLocalZ <= 0 || minLocalZ >= ICube.SIZE) {
             return;
         }
-        StructureBoundingBox boundingBox = new StructureBoundingBox(minLocalX, minLocalY, minLocalZ, maxLocalX, maxLocalY, maxLocalZ);
+        minLocalX = Math.max(minLocalX, 0);
+        minLocalY = Math.max(minLocalY, 0);
+        minLocalZ = Math.max(minLocalZ, 0);
+        maxLocalX = Math.min(maxLocalX, ICube.SIZE);
+        maxLocalY = Math.min(maxLocalY, ICube.SIZE);
+        maxLocalZ = Math.min(maxLocalZ, ICube.SIZE);
 
-        StructureGenUtil.clampBoundingBoxToLocalCube(boundingBox);
-
-        boolean hitLiquid = StructureGenUtil.scanWallsForBlock(cube, boundingBox,
-                (b) -> b.getBlock() == Blocks.WATER || b.getBlock() == Blocks.FLOWING_WATER);
+        // ravines never place water, so checking blocks before anything is carved gives the same result
+        boolean hitLiquid = StructureGenUtil.scanWallsForBlock(cube,
+                minLocalX, minLocalY, minLocalZ, maxLocalX, maxLocalY, maxLocalZ, isWater);
 
         if (!hitLiquid) {
-            carveBlocks(cube, generatedCubePos, ravineX, ravineY, ravineZ,
-                    ravineSizeHoriz, ravineSizeVert, boundingBox, lavaHeight);
+            markBlocks(mask, generatedCubePos, ravineX, ravineY, ravineZ, ravineSizeHoriz, ravineSizeVert,
+                    minLocalX, minLocalY, minLocalZ, maxLocalX, maxLocalY, maxLocalZ, lavaHeight, widthDecreaseFactors);
         }
     }
 
-    private void carveBlocks(CubePrimer cube, CubePos generatedCubePos,
+    private void markBlocks(CarveMask mask, CubePos generatedCubePos,
             double ravineX, double ravineY, double ravineZ,
-            double ravineSizeHoriz, double ravineSizeVert, StructureBoundingBox boundingBox,
-            int lavaHeight) {
+            double ravineSizeHoriz, double ravineSizeVert,
+            int minX, int minY, int minZ, int maxX, int maxY, int maxZ,
+            int lavaHeight, float[] widthDecreaseFactors) {
         int generatedCubeX = generatedCubePos.getX();
         int generatedCubeY = generatedCubePos.getY();
         int generatedCubeZ = generatedCubePos.getZ();
 
-        int minX = boundingBox.minX;
-        int maxX = boundingBox.maxX;
-        int minY = boundingBox.minY;
-        int maxY = boundingBox.maxY;
-        int minZ = boundingBox.minZ;
-        int maxZ = boundingBox.maxZ;
-
         for (int localX = minX; localX < maxX; ++localX) {
             double distX = StructureGenUtil.normalizedDistance(generatedCubeX, localX, ravineX, ravineSizeHoriz);
 
@@ -337,24 +373,60 @@ public class CubicRavineGenerator implements IFlexHandlerStructureGenerator {
                     //most of these blocks beyond the not-stretched height range are never carved out
                     //the result is that instead the ravine isn't very small at the bottom,
                     //but ends with actual floor instead
-                    double widthDecreaseFactor = this.widthDecreaseFactors[(localY + generatedCubeY * ICube.SIZE) & 0xFF];
+                    double widthDecreaseFactor = widthDecreaseFactors[(localY + generatedCubeY * ICube.SIZE) & 0xFF];
                     if ((distX * distX + distZ * distZ) * widthDecreaseFactor + distY * distY / STRETCH_Y_FACTOR >= 1.0D) {
                         continue;
                     }
 
-                    if (!isBlockReplaceable.test(cube.getBlockState(localX, localY, localZ))) {
+                    int index = CarveMask.index(localX, localY, localZ);
+                    // the first ravine to carve a block decides whether it's lava, later ones don't replace it
+                    if (mask.isCarved(index)) {
                         continue;
                     }
+                    mask.setCarved(index);
                     if (localToBlock(generatedCubeY, localY) < lavaHeight) {
-                        cube.setBlockState(localX, localY, localZ, Blocks.FLOWING_LAVA.getDefaultState());
-                    } else {
-                        cube.setBlockState(localX, localY, localZ, Blocks.AIR.getDefaultState());
+                        mask.setMarked(index);
                     }
                 }
             }
         }
     }
 
+    /**
+     * Carves all blocks in the mask, marked blocks are filled with lava.
+     */
+    private void applyMask(CubePrimer cube, CarveMask mask) {
+        for (int i = mask.next(0); i >= 0; i = mask.next(i + 1)) {
+            int localX = CarveMask.localX(i);
+            int localY = CarveMask.localY(i);
+            int localZ = CarveMask.localZ(i);
+            if (!isBlockReplaceable.test(cube.getBlockState(localX, localY, localZ))) {
+                continue;
+            }
+            if (mask.isMarked(i)) {
+                cube.setBlockState(localX, localY, localZ, Blocks.FLOWING_LAVA.getDefaultState());
+            } else {
+                cube.setBlockState(localX, localY, localZ, Blocks.AIR.getDefaultState());
+            }
+        }
+    }
+
+    /**
+     * Path of a ravine together with values needed to carve it, ravines never split.
+     */
+    private static final class Ravine {
+
+        final CarvePath path;
+        final int lavaHeight;
+        final float[] widthDecreaseFactors;
+
+        Ravine(CarvePath path, int lavaHeight, float[] widthDecreaseFactors) {
+            this.path = path;
+            this.lavaHeight = lavaHeight;
+            this.widthDecreaseFactors = widthDecreaseFactors;
+        }
+    }
+
     private float[] generateRavineWidthFactors(Random rand) {
         float[] values = new float[1024];
         float value = 1.0F;
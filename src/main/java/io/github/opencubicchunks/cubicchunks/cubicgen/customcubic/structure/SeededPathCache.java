@@ -0,0 +1,63 @@
+/*
+ *  This file is part of Cubic World Generation, licensed under the MIT License (MIT).
+ *
+ *  Copyright (c) 2015-2020 contributors
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ */
+package io.github.opencubicchunks.cubicchunks.cubicgen.customcubic.structure;
+
+import io.github.opencubicchunks.cubicchunks.cubicgen.cache.CachePolicy;
+import io.github.opencubicchunks.cubicchunks.cubicgen.cache.LongKeyedObjectCache;
+import mcp.MethodsReturnNonnullByDefault;
+
+import java.util.function.LongFunction;
+
+import javax.annotation.Nullable;
+import javax.annotation.ParametersAreNonnullByDefault;
+
+/**
+ * Cache of carve paths keyed by {@link CarvePath#sourceKey(int, int, int)}. Paths only depend on the world seed and the source
+ * cube, so one cache per thread is shared by all generators, and it's cleared when it's used for a world with a different seed.
+ * This way the caches don't keep anything from a world after it's unloaded.
+ */
+@ParametersAreNonnullByDefault
+@MethodsReturnNonnullByDefault
+final class SeededPathCache<T> {
+
+    private final int size;
+    private final String name;
+    @Nullable private LongKeyedObjectCache<T> cache;
+    private long seed;
+
+    SeededPathCache(int size, String name) {
+        this.size = size;
+        this.name = name;
+    }
+
+    T get(long seed, long key, LongFunction<T> source) {
+        if (cache == null || this.seed != seed) {
+            this.cache = LongKeyedObjectCache.<T>create(size, CachePolicy.FOUR_WAY, CarvePath::hashSourceKey, k -> {
+                throw new IllegalStateException("Paths can't be computed without random generator");
+            }).named(name);
+            this.seed = seed;
+        }
+        return cache.get(key, source);
+    }
+}
@@ -0,0 +1,175 @@
+/*
+ *  This file is part of Cubic World Generation, licensed under the MIT License (MIT).
+ *
+ *  Copyright (c) 2015-2020 contributors
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ */
+package io.github.opencubicchunks.cubicchunks.cubicgen.customcubic.structure.feature;
+
+import io.github.opencubicchunks.cubicchunks.api.util.CubePos;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import mcp.MethodsReturnNonnullByDefault;
+
+import javax.annotation.ParametersAreNonnullByDefault;
+
+/**
+ * Immutable set of cube positions that supports allocation free membership checks and nearest position queries that
+ * don't need to look at every position. Positions are bucketed into a horizontal grid of cells
+ * {@code 2^CELL_BITS} cubes wide, and the nearest position is found by searching rings of cells around the query.
+ */
+@ParametersAreNonnullByDefault
+@MethodsReturnNonnullByDefault
+public final class CubePosIndex {
+
+    private static final int CELL_BITS = 5;
+    private static final int CELL_BLOCKS = 16 << CELL_BITS;
+
+    private final CubePos[] positions;
+    /** Y coordinates of positions in each cube column, keyed by exact X and Z */
+    private final Long2ObjectOpenHashMap<int[]> columns = new Long2ObjectOpenHashMap<>();
+    /** Indices into positions, in increasing order, for each grid cell */
+    private final Long2ObjectOpenHashMap<int[]> cells = new Long2ObjectOpenHashMap<>();
+    private int minCellX = Integer.MAX_VALUE, minCellZ = Integer.MAX_VALUE;
+    private int maxCellX = Integer.MIN_VALUE, maxCellZ = Integer.MIN_VALUE;
+
+    public CubePosIndex(CubePos[] positions) {
+        this.positions = positions.clone();
+        Long2ObjectOpenHashMap<IntArrayList> lists = new Long2ObjectOpenHashMap<>();
+        Long2ObjectOpenHashMap<IntArrayList> columnLists = new Long2ObjectOpenHashMap<>();
+        for (int i = 0; i < positions.length; i++) {
+            CubePos pos = positions[i];
+            IntArrayList columnYs = columnLists.get(xzKey(pos.getX(), pos.getZ()));
+            if (columnYs == null) {
+                columnYs = new IntArrayList(1);
+                columnLists.put(xzKey(pos.getX(), pos.getZ()), columnYs);
+            }
+            columnYs.add(pos.getY());
+            int cellX = pos.getX() >> CELL_BITS;
+            int cellZ = pos.getZ() >> CELL_BITS;
+            IntArrayList list = lists.get(xzKey(cellX, cellZ));
+            if (list == null) {
+                list = new IntArrayList(1);
+                lists.put(xzKey(cellX, cellZ), list);
+            }
+            list.add(i);
+            minCellX = Math.min(minCellX, cellX);
+            minCellZ = Math.min(minCellZ, cellZ);
+            maxCellX = Math.max(maxCellX, cellX);
+            maxCellZ = Math.max(maxCellZ, cellZ);
+        }
+        for (Long2ObjectOpenHashMap.Entry<IntArrayList> entry : lists.long2ObjectEntrySet()) {
+            cells.put(entry.getLongKey(), entry.getValue().toIntArray());
+        }
+        for (Long2ObjectOpenHashMap.Entry<IntArrayList> entry : columnLists.long2ObjectEntrySet()) {
+            columns.put(entry.getLongKey(), entry.getValue().toIntArray());
+        }
+    }
+
+    public int size() {
+        return positions.length;
+    }
+
+    public CubePos get(int index) {
+        return positions[index];
+    }
+
+    public boolean contains(int cubeX, int cubeY, int cubeZ) {
+        int[] columnYs = columns.get(xzKey(cubeX, cubeZ));
+        if (columnYs == null) {
+            return false;
+        }
+        for (int y : columnYs) {
+            if (y == cubeY) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns index of the position with center block closest to the given block, using squared distance between block
+     * coordinates. If there is more than one closest position, returns the one with the lowest index. Returns -1 if there
+     * are no positions.
+     */
+    public int nearest(int blockX, int blockY, int blockZ) {
+        int cellX = blockX >> (4 + CELL_BITS);
+        int cellZ = blockZ >> (4 + CELL_BITS);
+        int best = -1;
+        double bestDist = Double.POSITIVE_INFINITY;
+        for (int r = 0; ; r++) {
+            if (r > 0 && best >= 0) {
+                // positions in cells r rings away are at least (r - 1) cells away horizontally
+                double minDist = (double) (r - 1) * CELL_BLOCKS;
+                if (minDist * minDist > bestDist) {
+                    return best;
+                }
+            }
+            if (r > 0 && cellX - r < minCellX && cellX + r > maxCellX && cellZ - r < minCellZ && cellZ + r > maxCellZ) {
+                // all cells with positions have already been visited
+                return best;
+            }
+            if ((long) (2 * r + 1) * (2 * r + 1) > 4L * cells.size() + 16) {
+                // far away from all positions, searching cell by cell would be slower than checking each position
+                return nearestLinear(blockX, blockY, blockZ);
+            }
+            for (int dx = -r; dx <= r; dx++) {
+                boolean edgeX = dx == -r || dx == r;
+                for (int dz = -r; dz <= r; dz += edgeX ? 1 : 2 * r) {
+                    int[] indices = cells.get(xzKey(cellX + dx, cellZ + dz));
+                    if (indices == null) {
+                        continue;
+                    }
+                    for (int index : indices) {
+                        double dist = distanceSq(positions[index], blockX, blockY, blockZ);
+                        if (dist < bestDist || (dist == bestDist && index < best)) {
+                            best = index;
+                            bestDist = dist;
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    private int nearestLinear(int blockX, int blockY, int blockZ) {
+        int best = -1;
+        double bestDist = Double.POSITIVE_INFINITY;
+        for (int i = 0; i < positions.length; i++) {
+            double dist = distanceSq(positions[i], blockX, blockY, blockZ);
+            if (dist < bestDist) {
+                best = i;
+                bestDist = dist;
+            }
+        }
+        return best;
+    }
+
+    private static double distanceSq(CubePos pos, int blockX, int blockY, int blockZ) {
+        double dx = (double) pos.getXCenter() - blockX;
+        double dy = (double) pos.getYCenter() - blockY;
+        double dz = (double) pos.getZCenter() - blockZ;
+        return dx * dx + dy * dy + dz * dz;
+    }
+
+    private static long xzKey(int x, int z) {
+        return (x & 0xFFFFFFFFL) | (z & 0xFFFFFFFFL) << 32;
+    }
+}
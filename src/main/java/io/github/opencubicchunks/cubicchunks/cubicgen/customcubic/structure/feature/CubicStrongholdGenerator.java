@@ -23,27 +23,38 @@
  */
 package io.github.opencubicchunks.cubicchunks.cubicgen.customcubic.structure.feature;
 
-import java.util.Collections;
-import java.util.HashSet;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.util.List;
 import java.util.Map;
 import java.util.Random;
-import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 
 import javax.annotation.Nullable;
 import javax.annotation.ParametersAreNonnullByDefault;
 
 import com.google.common.collect.Lists;
+import com.google.common.hash.Hashing;
 import io.github.opencubicchunks.cubicchunks.api.util.Bits;
 import io.github.opencubicchunks.cubicchunks.api.util.Coords;
 import io.github.opencubicchunks.cubicchunks.api.util.CubePos;
 import io.github.opencubicchunks.cubicchunks.api.worldgen.structure.feature.CubicFeatureGenerator;
 import io.github.opencubicchunks.cubicchunks.api.worldgen.structure.feature.ICubicFeatureStart;
+import io.github.opencubicchunks.cubicchunks.cubicgen.CustomCubicMod;
+import io.github.opencubicchunks.cubicchunks.cubicgen.common.biome.CubicBiomeProvider;
 import io.github.opencubicchunks.cubicchunks.cubicgen.customcubic.CustomGeneratorSettings;
+import io.github.opencubicchunks.cubicchunks.cubicgen.customcubic.CustomTerrainGenerator;
+import io.github.opencubicchunks.cubicchunks.cubicgen.profiler.GenerationProfiler;
 import mcp.MethodsReturnNonnullByDefault;
 import net.minecraftforge.common.BiomeManager;
 import net.minecraftforge.fml.common.registry.ForgeRegistries;
 
+import net.minecraft.nbt.CompressedStreamTools;
+import net.minecraft.nbt.NBTTagCompound;
 import net.minecraft.util.math.BlockPos;
 import net.minecraft.util.math.MathHelper;
 import net.minecraft.world.World;
@@ -63,12 +74,24 @@ import static java.lang.Math.sin;
 @ParametersAreNonnullByDefault
 public class CubicStrongholdGenerator extends CubicFeatureGenerator {
 
+    /**
+     * Stronghold starts without a portal room are generated again, up to this many times in total
+     */
+    private static final int MAX_START_ATTEMPTS = 64;
+    private static final GenerationProfiler.Stage START_STAGE = GenerationProfiler.stage("structures.strongholds.start");
+    private static final GenerationProfiler.Stage START_ATTEMPT_STAGE = GenerationProfiler.stage("structures.strongholds.start_attempt");
+
     private CubePos[] structureCoords;
-    private Set<CubePos> structureCoordsSet = new HashSet<>();
+    private CubePosIndex structureIndex = new CubePosIndex(new CubePos[0]);
     private double distance;
     private int spread;
     private List<Biome> allowedBiomes;
     private boolean positionsGenerated;
+    // positions being computed in the background, see preparePositions
+    @Nullable private CompletableFuture<CubePos[]> positionsFuture;
+    // file positions are saved in and the key stored in it, see initPositionsFile
+    @Nullable private File positionsFile;
+    @Nullable private String positionsKey;
     private final CustomGeneratorSettings conf;
 
     public CubicStrongholdGenerator(CustomGeneratorSettings conf) {
@@ -117,67 +140,142 @@ public class CubicStrongholdGenerator extends CubicFeatureGenerator {
     @Nullable @Override public BlockPos getNearestStructurePos(World world, BlockPos pos, boolean findUnexplored) {
         checkPositionsGenerated(world);
 
-        BlockPos.MutableBlockPos currentBlock = new BlockPos.MutableBlockPos(0, 0, 0);
-
-        BlockPos closestPos = null;
-        double minDist = Double.MAX_VALUE;
-
-        for (CubePos cubePos : this.structureCoords) {
-            currentBlock.setPos(cubePos.getXCenter(), cubePos.getYCenter(), cubePos.getZCenter());
-            double currentDist = currentBlock.distanceSq(pos);
-
-            if (closestPos == null || currentDist < minDist) {
-                closestPos = new BlockPos(currentBlock);
-                minDist = currentDist;
-            }
+        int closest = this.structureIndex.nearest(pos.getX(), pos.getY(), pos.getZ());
+        assert closest >= 0;
+        if (closest < 0) {
+            return null;
         }
 
-        assert closestPos != null;
-
-        return closestPos;
+        CubePos cubePos = this.structureIndex.get(closest);
+        return new BlockPos(cubePos.getXCenter(), cubePos.getYCenter(), cubePos.getZCenter());
     }
 
     @Override protected boolean canSpawnStructureAtCoords(World world, Random rand, int chunkX, int chunkY, int chunkZ) {
         checkPositionsGenerated(world);
-        return structureCoordsSet.contains(new CubePos(chunkX, chunkY, chunkZ));
+        return structureIndex.contains(chunkX, chunkY, chunkZ);
     }
 
     @Override protected StructureStart getStructureStart(World world, Random rand, int chunkX, int chunkY, int chunkZ) {
+        long t = GenerationProfiler.start();
         StructureStart start;
+        int attempts = 0;
         do {
+            attempts++;
+            long attemptStart = GenerationProfiler.start();
             start = new MapGenStronghold.Start(world, rand, chunkX, chunkZ);
             @SuppressWarnings("ConstantConditions")
             CubicStart cubic = (CubicStart) start;
             cubic.initCubicStronghold(world, chunkY,
                     conf.alternateStrongholdsPositions ?
                     Coords.localToBlock(chunkY, 8) : MathHelper.floor(conf.expectedBaseHeight - conf.expectedHeightVariation) + 10);
-        } while (start.getComponents().isEmpty() || ((StructureStrongholdPieces.Stairs2) start.getComponents().get(0)).strongholdPortalRoom == null);
+            START_ATTEMPT_STAGE.end(attemptStart);
+        } while (!hasPortalRoom(start) && attempts < MAX_START_ATTEMPTS);
+        if (!hasPortalRoom(start)) {
+            CustomCubicMod.LOGGER.warn("No stronghold with a portal room at cube {} {} {} after {} attempts, keeping the last one",
+                    chunkX, chunkY, chunkZ, attempts);
+        }
+        START_STAGE.end(t);
         return start;
     }
 
-    private void checkPositionsGenerated(World world) {
-        if (!this.positionsGenerated) {
-            this.generatePositions(world);
-            this.positionsGenerated = true;
-        }
+    private static boolean hasPortalRoom(StructureStart start) {
+        return !start.getComponents().isEmpty() && ((StructureStrongholdPieces.Stairs2) start.getComponents().get(0)).strongholdPortalRoom != null;
     }
 
-    private void generatePositions(World world) {
+    /**
+     * Loads stronghold positions saved by a previous run, or starts computing them in the background if the biome provider
+     * allows it. Called on the server thread once the world is loaded, so that searching for biomes doesn't stall the
+     * first lookup. Otherwise positions are computed on first use.
+     */
+    public synchronized void preparePositions(World world) {
+        if (this.positionsGenerated || this.positionsFuture != null || world.isRemote) {
+            return;
+        }
         this.initializeStructureData(world);
-        {
-            int i = 0;
-            for (ICubicFeatureStart start : this.structureMap) {
-                if (i >= this.structureCoords.length) {
-                    break;
-                }
-                this.structureCoords[i++] = start.getCubePos();
+        initPositionsFile(world);
+        CubePos[] saved = loadPositions(this.positionsFile, this.positionsKey, this.structureCoords.length);
+        if (saved != null) {
+            setPositions(saved);
+            return;
+        }
+        if (!CubicBiomeProvider.isThreadSafe(world.getBiomeProvider())) {
+            return;
+        }
+        int nextIndex = addExistingPositions();
+        if (nextIndex >= this.structureCoords.length) {
+            return;
+        }
+        CubePos[] coords = this.structureCoords.clone();
+        File file = this.positionsFile;
+        String key = this.positionsKey;
+        this.positionsFuture = CompletableFuture.supplyAsync(() -> {
+            computePositions(world, coords, nextIndex);
+            savePositions(file, key, coords);
+            return coords;
+        }, CustomTerrainGenerator.getGenerationPool());
+    }
+
+    private void checkPositionsGenerated(World world) {
+        if (this.positionsGenerated) {
+            return;
+        }
+        if (this.positionsFuture != null) {
+            try {
+                // usually already done by the time positions are needed
+                setPositions(this.positionsFuture.join());
+                return;
+            } catch (CompletionException e) {
+                CustomCubicMod.LOGGER.error("Failed to compute stronghold positions in the background, retrying", e.getCause());
+            } finally {
+                this.positionsFuture = null;
             }
         }
+        this.generatePositions(world);
+        setPositions(this.structureCoords);
+    }
 
-        int nextIndex = this.structureMap.getSize();
+    private void setPositions(CubePos[] positions) {
+        this.structureCoords = positions;
+        this.structureIndex = new CubePosIndex(positions);
+        this.positionsGenerated = true;
+    }
+
+    private void generatePositions(World world) {
+        this.initializeStructureData(world);
+        int nextIndex = addExistingPositions();
         if (nextIndex >= this.structureCoords.length) {
             return;
         }
+        computePositions(world, this.structureCoords, nextIndex);
+        if (!world.isRemote) {
+            initPositionsFile(world);
+            savePositions(this.positionsFile, this.positionsKey, this.structureCoords);
+        }
+    }
+
+    /**
+     * Copies positions of strongholds that already exist in the world to the start of structureCoords.
+     *
+     * @return index of the first position that needs to be computed
+     */
+    private int addExistingPositions() {
+        int i = 0;
+        for (ICubicFeatureStart start : this.structureMap) {
+            if (i >= this.structureCoords.length) {
+                break;
+            }
+            this.structureCoords[i++] = start.getCubePos();
+        }
+        return this.structureMap.getSize();
+    }
+
+    /**
+     * Computes stronghold positions starting at the given index. Only uses the world seed and the biome provider, so it
+     * can run on another thread if the biome provider is thread safe. Each position depends on random values used by
+     * previous biome searches, so positions are computed one after another.
+     */
+    private void computePositions(World world, CubePos[] structureCoords, int nextIndex) {
+        int spread = this.spread;
 
         Random rand = new Random();
         rand.setSeed(world.getSeed());
@@ -188,7 +286,7 @@ public class CubicStrongholdGenerator extends CubicFeatureGenerator {
 
         int distFactor = 0;
         int ringStep = 0;
-        for (int i = 0; i < this.structureCoords.length; ++i) {
+        for (int i = 0; i < structureCoords.length; ++i) {
             double distance = 4.0D * this.distance + this.distance * (double) distFactor * 6.0D + (rand.nextDouble() - 0.5D) * this.distance * 2.5D;
             int chunkX;
             int chunkY;
@@ -219,21 +317,83 @@ public class CubicStrongholdGenerator extends CubicFeatureGenerator {
             chunkZ = chunkZ & spacingBits;
 
             if (i >= nextIndex) {
-                this.structureCoords[i] = new CubePos(chunkX, chunkY, chunkZ);
+                structureCoords[i] = new CubePos(chunkX, chunkY, chunkZ);
             }
 
-            angle += (Math.PI * 2D) / (double) this.spread;
+            angle += (Math.PI * 2D) / (double) spread;
             ++ringStep;
 
-            if (ringStep == this.spread) {
+            if (ringStep == spread) {
                 ++distFactor;
                 ringStep = 0;
-                this.spread += 2 * this.spread / (distFactor + 1);
-                this.spread = Math.min(this.spread, this.structureCoords.length - i);
+                spread += 2 * spread / (distFactor + 1);
+                spread = Math.min(spread, structureCoords.length - i);
                 angle += rand.nextDouble() * Math.PI * 2.0D;
             }
         }
-        Collections.addAll(structureCoordsSet, structureCoords);
+    }
+
+    /**
+     * Sets the file stronghold positions are saved in. Positions depend on the seed, generator settings, stronghold
+     * settings and the biomes strongholds can be placed in. All of them are part of the key, which is stored in the file
+     * and checked when loading, and the file name is the SHA-256 digest of the key.
+     */
+    private void initPositionsFile(World world) {
+        if (this.positionsFile != null) {
+            return;
+        }
+        StringBuilder key = new StringBuilder().append(world.getSeed()).append(';').append(conf.toJsonObject().toJson());
+        key.append(";distance=").append(this.distance)
+                .append(";count=").append(this.structureCoords.length)
+                .append(";spread=").append(this.spread);
+        for (Biome biome : this.allowedBiomes) {
+            key.append(';').append(biome.getRegistryName());
+        }
+        String saveFolder = world.provider.getSaveFolder();
+        this.positionsKey = key.toString();
+        this.positionsFile = new File(world.getSaveHandler().getWorldDirectory(),
+                (saveFolder == null ? "" : saveFolder + "/") + "data/" + CustomCubicMod.MODID + "/strongholds_"
+                        + Hashing.sha256().hashString(this.positionsKey, StandardCharsets.UTF_8) + ".dat");
+    }
+
+    @Nullable
+    private static CubePos[] loadPositions(File file, String key, int count) {
+        if (!file.isFile()) {
+            return null;
+        }
+        try (FileInputStream in = new FileInputStream(file)) {
+            NBTTagCompound tag = CompressedStreamTools.readCompressed(in);
+            int[] data = tag.getIntArray("Positions");
+            if (!key.equals(tag.getString("Key")) || data.length != count * 3) {
+                return null;
+            }
+            CubePos[] positions = new CubePos[count];
+            for (int i = 0; i < count; i++) {
+                positions[i] = new CubePos(data[i * 3], data[i * 3 + 1], data[i * 3 + 2]);
+            }
+            return positions;
+        } catch (IOException e) {
+            CustomCubicMod.LOGGER.error("Failed to load stronghold positions from " + file, e);
+            return null;
+        }
+    }
+
+    private static void savePositions(File file, String key, CubePos[] positions) {
+        int[] data = new int[positions.length * 3];
+        for (int i = 0; i < positions.length; i++) {
+            data[i * 3] = positions[i].getX();
+            data[i * 3 + 1] = positions[i].getY();
+            data[i * 3 + 2] = positions[i].getZ();
+        }
+        NBTTagCompound tag = new NBTTagCompound();
+        tag.setString("Key", key);
+        tag.setIntArray("Positions", data);
+        file.getParentFile().mkdirs();
+        try (FileOutputStream out = new FileOutputStream(file)) {
+            CompressedStreamTools.writeCompressed(tag, out);
+        } catch (IOException e) {
+            CustomCubicMod.LOGGER.error("Failed to save stronghold positions to " + file, e);
+        }
     }
 
     public interface CubicStart extends ICubicFeatureStart {
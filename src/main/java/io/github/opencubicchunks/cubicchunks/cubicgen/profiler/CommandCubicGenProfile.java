@@ -0,0 +1,176 @@
+/*
+ *  This file is part of Cubic World Generation, licensed under the MIT License (MIT).
+ *
+ *  Copyright (c) 2015-2020 contributors
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ */
+package io.github.opencubicchunks.cubicchunks.cubicgen.profiler;
+
+import blue.endless.jankson.JsonObject;
+import blue.endless.jankson.JsonPrimitive;
+import io.github.opencubicchunks.cubicchunks.cubicgen.cache.CacheStats;
+import mcp.MethodsReturnNonnullByDefault;
+import net.minecraft.command.CommandBase;
+import net.minecraft.command.CommandException;
+import net.minecraft.command.ICommandSender;
+import net.minecraft.command.WrongUsageException;
+import net.minecraft.entity.player.EntityPlayer;
+import net.minecraft.server.MinecraftServer;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.util.text.TextComponentString;
+import net.minecraftforge.server.permission.PermissionAPI;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.text.SimpleDateFormat;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+
+import javax.annotation.Nullable;
+import javax.annotation.ParametersAreNonnullByDefault;
+
+/**
+ * {@code /cubicgen_profile <start|stop|reset|print|caches|dump>}, controls {@link GenerationProfiler} and shows {@link CacheStats}.
+ */
+@ParametersAreNonnullByDefault
+@MethodsReturnNonnullByDefault
+public class CommandCubicGenProfile extends CommandBase {
+
+    public static final String PERMISSION = "cubicgen.command.profile";
+
+    @Override
+    public String getName() {
+        return "cubicgen_profile";
+    }
+
+    @Override
+    public String getUsage(ICommandSender sender) {
+        return "/cubicgen_profile <start|stop|reset|print|caches|dump>";
+    }
+
+    @Override
+    public void execute(MinecraftServer server, ICommandSender sender, String[] args) throws CommandException {
+        if (args.length != 1) {
+            throw new WrongUsageException(getUsage(sender));
+        }
+        switch (args[0]) {
+            case "start":
+                GenerationProfiler.reset();
+                CacheStats.reset();
+                GenerationProfiler.setEnabled(true);
+                sender.sendMessage(new TextComponentString("World generation profiling started"));
+                break;
+            case "stop":
+                GenerationProfiler.setEnabled(false);
+                sender.sendMessage(new TextComponentString("World generation profiling stopped"));
+                break;
+            case "reset":
+                GenerationProfiler.reset();
+                CacheStats.reset();
+                sender.sendMessage(new TextComponentString("World generation profiler reset"));
+                break;
+            case "print":
+                print(sender);
+                break;
+            case "caches":
+                printCaches(sender);
+                break;
+            case "dump":
+                dump(server, sender);
+                break;
+            default:
+                throw new WrongUsageException(getUsage(sender));
+        }
+    }
+
+    private void print(ICommandSender sender) {
+        List<StageSnapshot> stages = GenerationProfiler.snapshot();
+        if (stages.isEmpty()) {
+            sender.sendMessage(new TextComponentString(GenerationProfiler.isEnabled() ?
+                    "Nothing recorded yet" : "Nothing recorded, use /cubicgen_profile start"));
+            return;
+        }
+        sender.sendMessage(new TextComponentString(String.format("World generation stages over %.1fs (total ms, count, mean/p99/max us):",
+                GenerationProfiler.getElapsedNanos() / 1e9)));
+        for (StageSnapshot stage : stages) {
+            sender.sendMessage(new TextComponentString(String.format("%s: %.1f, %d, %.1f/%.1f/%.1f",
+                    stage.getName(), stage.getTotalNanos() / 1e6, stage.getCount(),
+                    stage.getMeanNanos() / 1e3, stage.getPercentileNanos(0.99) / 1e3, stage.getMaxNanos() / 1e3)));
+        }
+    }
+
+    private void printCaches(ICommandSender sender) {
+        List<CacheStats.Snapshot> caches = CacheStats.snapshot();
+        if (caches.isEmpty()) {
+            sender.sendMessage(new TextComponentString(GenerationProfiler.isEnabled() ?
+                    "Nothing recorded yet" : "Nothing recorded, use /cubicgen_profile start"));
+            return;
+        }
+        sender.sendMessage(new TextComponentString("Generator caches (hit rate, misses, evictions, recompute ms):"));
+        for (CacheStats.Snapshot cache : caches) {
+            sender.sendMessage(new TextComponentString(String.format("%s: %.1f%%, %d, %d, %.1f",
+                    cache.getName(), cache.getHitRate() * 100, cache.getMisses(), cache.getEvictions(), cache.getRecomputeNanos() / 1e6)));
+        }
+    }
+
+    private void dump(MinecraftServer server, ICommandSender sender) throws CommandException {
+        JsonObject root = new JsonObject();
+        root.put("enabled", new JsonPrimitive(GenerationProfiler.isEnabled()));
+        root.put("elapsedNanos", new JsonPrimitive(GenerationProfiler.getElapsedNanos()));
+        JsonObject stages = new JsonObject();
+        for (StageSnapshot stage : GenerationProfiler.snapshot()) {
+            stages.put(stage.getName(), stage.toJson());
+        }
+        root.put("stages", stages);
+        JsonObject caches = new JsonObject();
+        for (CacheStats.Snapshot cache : CacheStats.snapshot()) {
+            caches.put(cache.getName(), cache.toJson());
+        }
+        root.put("caches", caches);
+
+        File file = server.getFile("cubicgen-profile-" + new SimpleDateFormat("yyyy-MM-dd_HH.mm.ss").format(new Date()) + ".json");
+        try {
+            Files.write(file.toPath(), root.toJson(false, true).getBytes(StandardCharsets.UTF_8));
+        } catch (IOException e) {
+            throw new CommandException("Could not write " + file + ": " + e);
+        }
+        sender.sendMessage(new TextComponentString("World generation profile written to " + file.getAbsolutePath()));
+    }
+
+    @Override
+    public List<String> getTabCompletions(MinecraftServer server, ICommandSender sender, String[] args, @Nullable BlockPos targetPos) {
+        if (args.length == 1) {
+            return getListOfStringsMatchingLastWord(args, "start", "stop", "reset", "print", "caches", "dump");
+        }
+        return Collections.emptyList();
+    }
+
+    @Override
+    public boolean checkPermission(MinecraftServer server, ICommandSender sender) {
+        if (sender instanceof EntityPlayer) {
+            return PermissionAPI.hasPermission((EntityPlayer) sender, PERMISSION);
+        } else {
+            return super.checkPermission(server, sender);
+        }
+    }
+}
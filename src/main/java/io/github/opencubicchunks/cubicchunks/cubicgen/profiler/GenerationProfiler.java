@@ -0,0 +1,195 @@
+/*
+ *  This file is part of Cubic World Generation, licensed under the MIT License (MIT).
+ *
+ *  Copyright (c) 2015-2020 contributors
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ */
+package io.github.opencubicchunks.cubicchunks.cubicgen.profiler;
+
+import mcp.MethodsReturnNonnullByDefault;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import javax.annotation.ParametersAreNonnullByDefault;
+
+/**
+ * Low overhead timing of world generation stages. Disabled by default, when disabled the only cost is reading a volatile field.
+ * <p>
+ * Usage:
+ * <pre>{@code
+ * long t = GenerationProfiler.start();
+ * ... // do the work
+ * SOME_STAGE.end(t);
+ * }</pre>
+ * Each thread records into its own counters, which are only summed up when a snapshot is requested. Snapshots taken while
+ * generation is running may be slightly inconsistent, which is fine for profiling.
+ */
+@ParametersAreNonnullByDefault
+@MethodsReturnNonnullByDefault
+public final class GenerationProfiler {
+
+    private static final Map<String, Stage> stages = new ConcurrentHashMap<>();
+    private static volatile boolean enabled = false;
+    // incremented on reset, counters from older epochs are cleared lazily by the thread that owns them
+    private static volatile int epoch = 0;
+    private static volatile long epochStartNanos = System.nanoTime();
+
+    private GenerationProfiler() {
+    }
+
+    /**
+     * Returns the stage with the given name, creating it if it doesn't exist yet. Stages should be stored in static fields when possible.
+     */
+    public static Stage stage(String name) {
+        return stages.computeIfAbsent(name, Stage::new);
+    }
+
+    /**
+     * @return start time to be passed to {@link Stage#end(long)}, or 0 if profiling is disabled
+     */
+    public static long start() {
+        return enabled ? System.nanoTime() : 0;
+    }
+
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    public static void setEnabled(boolean enabled) {
+        GenerationProfiler.enabled = enabled;
+    }
+
+    public static void reset() {
+        epochStartNanos = System.nanoTime();
+        epoch++;
+    }
+
+    /**
+     * @return time in nanoseconds since the last reset
+     */
+    public static long getElapsedNanos() {
+        return System.nanoTime() - epochStartNanos;
+    }
+
+    /**
+     * @return totals of all stages that have been recorded since the last reset, sorted by name
+     */
+    public static List<StageSnapshot> snapshot() {
+        List<StageSnapshot> result = new ArrayList<>();
+        int currentEpoch = epoch;
+        for (Stage stage : stages.values()) {
+            StageSnapshot snapshot = stage.snapshot(currentEpoch);
+            if (snapshot.getCount() > 0) {
+                result.add(snapshot);
+            }
+        }
+        result.sort((a, b) -> a.getName().compareTo(b.getName()));
+        return result;
+    }
+
+    public static final class Stage {
+
+        private final String name;
+        private final List<Counter> counters = new CopyOnWriteArrayList<>();
+        private final ThreadLocal<Counter> localCounter = ThreadLocal.withInitial(() -> {
+            Counter counter = new Counter();
+            counters.add(counter);
+            return counter;
+        });
+
+        private Stage(String name) {
+            this.name = name;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * Records time since {@code startTime}.
+         *
+         * @param startTime value returned by {@link GenerationProfiler#start()}
+         */
+        public void end(long startTime) {
+            if (startTime == 0) {
+                return;
+            }
+            record(System.nanoTime() - startTime);
+        }
+
+        public void record(long nanos) {
+            Counter counter = localCounter.get();
+            int currentEpoch = epoch;
+            if (counter.epoch != currentEpoch) {
+                counter.clear(currentEpoch);
+            }
+            counter.count++;
+            counter.totalNanos += nanos;
+            counter.maxNanos = Math.max(counter.maxNanos, nanos);
+            counter.histogram[bucket(nanos)]++;
+        }
+
+        private StageSnapshot snapshot(int currentEpoch) {
+            long count = 0;
+            long total = 0;
+            long max = 0;
+            long[] histogram = new long[StageSnapshot.BUCKETS];
+            for (Counter counter : counters) {
+                if (counter.epoch != currentEpoch) {
+                    continue;
+                }
+                count += counter.count;
+                total += counter.totalNanos;
+                max = Math.max(max, counter.maxNanos);
+                for (int i = 0; i < histogram.length; i++) {
+                    histogram[i] += counter.histogram[i];
+                }
+            }
+            return new StageSnapshot(name, count, total, max, histogram);
+        }
+
+        private static int bucket(long nanos) {
+            // bucket i contains times in range [2^i, 2^(i+1))
+            return Math.min(StageSnapshot.BUCKETS - 1, 63 - Long.numberOfLeadingZeros(Math.max(nanos, 1)));
+        }
+    }
+
+    private static final class Counter {
+
+        int epoch = GenerationProfiler.epoch;
+        long count;
+        long totalNanos;
+        long maxNanos;
+        final long[] histogram = new long[StageSnapshot.BUCKETS];
+
+        void clear(int epoch) {
+            this.epoch = epoch;
+            this.count = 0;
+            this.totalNanos = 0;
+            this.maxNanos = 0;
+            Arrays.fill(histogram, 0);
+        }
+    }
+}
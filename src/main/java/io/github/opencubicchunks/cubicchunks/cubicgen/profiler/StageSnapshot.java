@@ -0,0 +1,109 @@
+/*
+ *  This file is part of Cubic World Generation, licensed under the MIT License (MIT).
+ *
+ *  Copyright (c) 2015-2020 contributors
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ */
+package io.github.opencubicchunks.cubicchunks.cubicgen.profiler;
+
+import blue.endless.jankson.JsonArray;
+import blue.endless.jankson.JsonObject;
+import blue.endless.jankson.JsonPrimitive;
+import mcp.MethodsReturnNonnullByDefault;
+
+import javax.annotation.ParametersAreNonnullByDefault;
+
+/**
+ * Times of a single generation stage summed over all threads.
+ */
+@ParametersAreNonnullByDefault
+@MethodsReturnNonnullByDefault
+public final class StageSnapshot {
+
+    static final int BUCKETS = 40;
+
+    private final String name;
+    private final long count;
+    private final long totalNanos;
+    private final long maxNanos;
+    // power of 2 histogram, bucket i counts times in range [2^i, 2^(i+1)) nanoseconds
+    private final long[] histogram;
+
+    StageSnapshot(String name, long count, long totalNanos, long maxNanos, long[] histogram) {
+        this.name = name;
+        this.count = count;
+        this.totalNanos = totalNanos;
+        this.maxNanos = maxNanos;
+        this.histogram = histogram;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public long getTotalNanos() {
+        return totalNanos;
+    }
+
+    public long getMaxNanos() {
+        return maxNanos;
+    }
+
+    public double getMeanNanos() {
+        return count == 0 ? 0 : totalNanos / (double) count;
+    }
+
+    /**
+     * Returns an upper bound of the given percentile, accurate up to a factor of 2.
+     *
+     * @param percentile the percentile, between 0 and 1
+     */
+    public long getPercentileNanos(double percentile) {
+        long target = (long) Math.ceil(count * percentile);
+        long seen = 0;
+        for (int i = 0; i < histogram.length; i++) {
+            seen += histogram[i];
+            if (seen >= target && seen > 0) {
+                return Math.min(maxNanos, (1L << (i + 1)) - 1);
+            }
+        }
+        return maxNanos;
+    }
+
+    public JsonObject toJson() {
+        JsonObject obj = new JsonObject();
+        obj.put("count", new JsonPrimitive(count));
+        obj.put("totalNanos", new JsonPrimitive(totalNanos));
+        obj.put("meanNanos", new JsonPrimitive(getMeanNanos()));
+        obj.put("p50Nanos", new JsonPrimitive(getPercentileNanos(0.5)));
+        obj.put("p99Nanos", new JsonPrimitive(getPercentileNanos(0.99)));
+        obj.put("maxNanos", new JsonPrimitive(maxNanos));
+        JsonArray hist = new JsonArray();
+        for (long c : histogram) {
+            hist.add(new JsonPrimitive(c));
+        }
+        obj.put("histogramLog2Nanos", hist);
+        return obj;
+    }
+}
@@ -0,0 +1,151 @@
+/*
+ *  This file is part of Cubic World Generation, licensed under the MIT License (MIT).
+ *
+ *  Copyright (c) 2015-2020 contributors
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ */
+package io.github.opencubicchunks.cubicchunks.cubicgen;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import io.github.opencubicchunks.cubicchunks.api.util.CubePos;
+import io.github.opencubicchunks.cubicchunks.cubicgen.customcubic.CustomGeneratorSettings;
+import io.github.opencubicchunks.cubicchunks.cubicgen.customcubic.CustomTerrainGenerator;
+import io.github.opencubicchunks.cubicchunks.cubicgen.testutil.GenerationRegressionHarness;
+import io.github.opencubicchunks.cubicchunks.cubicgen.testutil.MinecraftEnvironment;
+import mcp.MethodsReturnNonnullByDefault;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+
+import javax.annotation.Nullable;
+import javax.annotation.ParametersAreNonnullByDefault;
+
+/**
+ * Verifies that terrain generation output doesn't change, by comparing per-cube checksums against golden files
+ * in {@code /assets/cubicworldgen/regression/}, and that it doesn't depend on the order cubes are generated in.
+ * <p>
+ * Golden files must come from a tree whose output is known to be correct. To (re)generate them there, or after
+ * an intentional change to generator output, run tests with {@code -Dcubicgen.regression.update=true}. Golden
+ * comparisons are skipped while the golden files are missing, generation order is always checked.
+ */
+@ParametersAreNonnullByDefault
+@MethodsReturnNonnullByDefault
+public class TestGenerationRegression {
+
+    private static final Logger LOGGER = LogManager.getLogger("TestGenerationRegression");
+    private static final long SEED = 42;
+    private static final CubePos MIN = new CubePos(-2, -4, -2);
+    private static final CubePos MAX = new CubePos(1, 3, 1);
+    private static final String DEFAULT = "default";
+    private static final String REALISTIC_MOUNTAINS = "test5_CC77X_WozatRealisticMountains";
+
+    @Before
+    public void setUp() {
+        MinecraftEnvironment.initCubicBiomes();
+    }
+
+    @Test
+    public void testDefaultPresetOrder() {
+        verifyOrder(DEFAULT, preset(DEFAULT));
+    }
+
+    @Test
+    public void testRealisticMountainsPresetOrder() {
+        verifyOrder(REALISTIC_MOUNTAINS, preset(REALISTIC_MOUNTAINS));
+    }
+
+    @Test
+    public void testDefaultPresetGolden() throws IOException {
+        verifyGolden(DEFAULT, preset(DEFAULT));
+    }
+
+    @Test
+    public void testRealisticMountainsPresetGolden() throws IOException {
+        verifyGolden(REALISTIC_MOUNTAINS, preset(REALISTIC_MOUNTAINS));
+    }
+
+    private static String preset(String name) {
+        return name.equals(DEFAULT) ? "" : MinecraftEnvironment.readResource("/assets/cubicworldgen/presets/" + name + "_V6.json5");
+    }
+
+    private void verifyOrder(String name, String preset) {
+        GenerationRegressionHarness harness = new GenerationRegressionHarness();
+        GenerationRegressionHarness.Result result = harness.run(createGenerator(preset), MIN, MAX, false);
+        LOGGER.info("Regression {}: aggregate {}, {} cubes/s", name, Long.toHexString(result.getAggregate()),
+                String.format("%.1f", result.getCubesPerSecond()));
+
+        // a fresh generator going in the opposite direction must produce the same output
+        GenerationRegressionHarness.Result reversed = harness.run(createGenerator(preset), MIN, MAX, true);
+        assertEquals("Generation depends on cube order", result.toGoldenString(), reversed.toGoldenString());
+    }
+
+    private void verifyGolden(String name, String preset) throws IOException {
+        GenerationRegressionHarness harness = new GenerationRegressionHarness();
+        GenerationRegressionHarness.Result result = harness.run(createGenerator(preset), MIN, MAX, false);
+
+        String goldenPath = "/assets/cubicworldgen/regression/" + name + ".txt";
+        if (Boolean.getBoolean("cubicgen.regression.update")) {
+            write(Paths.get("src/test/resources" + goldenPath), result.toGoldenString());
+            return;
+        }
+        String golden = readGolden(goldenPath);
+        if (golden == null) {
+            Path generated = Paths.get("build/regression/" + name + ".txt");
+            write(generated, result.toGoldenString());
+            Assume.assumeTrue("No golden file " + goldenPath + ", output with aggregate " + Long.toHexString(result.getAggregate())
+                    + " written to " + generated.toAbsolutePath(), false);
+        }
+
+        List<String> errors = result.compare(golden);
+        assertTrue(String.format("%s output changed, aggregate %x, %.1f cubes/s:%n%s", name, result.getAggregate(),
+                result.getCubesPerSecond(), String.join("\n", errors)), errors.isEmpty());
+    }
+
+    private static CustomTerrainGenerator createGenerator(String preset) {
+        CustomGeneratorSettings settings = MinecraftEnvironment.parsePreset(preset);
+        // stronghold starts rely on mixins, which aren't applied in unit tests
+        settings.strongholds = false;
+        return MinecraftEnvironment.createTerrainGenerator(settings, SEED);
+    }
+
+    @Nullable
+    private static String readGolden(String path) {
+        if (TestGenerationRegression.class.getResource(path) == null) {
+            return null;
+        }
+        return MinecraftEnvironment.readResource(path);
+    }
+
+    private static void write(Path path, String content) throws IOException {
+        Files.createDirectories(path.getParent());
+        Files.write(path, content.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,369 @@
+/*
+ *  This file is part of Cubic World Generation, licensed under the MIT License (MIT).
+ *
+ *  Copyright (c) 2015-2020 contributors
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ */
+package io.github.opencubicchunks.cubicchunks.cubicgen;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import io.github.opencubicchunks.cubicchunks.api.util.MathUtil;
+import io.github.opencubicchunks.cubicchunks.cubicgen.customcubic.builder.IBuilder;
+import mcp.MethodsReturnNonnullByDefault;
+import net.minecraft.util.math.MathHelper;
+import net.minecraft.util.math.Vec3i;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.function.DoublePredicate;
+
+import javax.annotation.ParametersAreNonnullByDefault;
+
+/**
+ * Checks that optimized IBuilder operations return exactly the same values as evaluating each operation separately.
+ */
+@ParametersAreNonnullByDefault
+@MethodsReturnNonnullByDefault
+public class TestIBuilderNodes {
+
+    private static final double[] CONSTANTS = {
+            0.0, -0.0, 1, -1, 2, -0.3, 0.5, 3, 8, 5.6, 0.2 * 17 / 64, 1e300, -1e300,
+            Double.POSITIVE_INFINITY, Double.NEGATIVE_INFINITY, Double.NaN
+    };
+    private static final DoublePredicate[] PREDICATES = {
+            IBuilder.NEGATIVE, IBuilder.POSITIVE, IBuilder.NOT_NEGATIVE, IBuilder.NOT_POSITIVE, x -> x > 0.5
+    };
+
+    /**
+     * Unoptimized implementation, the same as IBuilder operations used to be
+     */
+    @FunctionalInterface
+    private interface Reference {
+
+        double get(int x, int y, int z);
+    }
+
+    private static final class Expr {
+
+        final IBuilder builder;
+        final Reference reference;
+
+        Expr(IBuilder builder, Reference reference) {
+            this.builder = builder;
+            this.reference = reference;
+        }
+    }
+
+    @Test public void testTerrainChain() {
+        Random rand = new Random(42);
+        Expr selector = unary(bounded(1, -1, 1), 0, 25.0 / 6, 0.5);
+        selector = new Expr(selector.builder.clamp(0, 1), clamp(selector.reference, 0, 1));
+        Expr low = unary(bounded(2, -1, 1), 0, 1, 0);
+        Expr high = unary(bounded(3, -1, 1), 0, 1, 0);
+        Expr height = new Expr(IBuilder.constant(0.125), (x, y, z) -> 0.125);
+        Expr depth = bounded(4, -1, 1);
+        Expr rh = new Expr(depth.builder.mulIf(IBuilder.NEGATIVE, -0.3).mul(3).sub(2).clamp(-2, 1)
+                .divIf(IBuilder.NEGATIVE, 2 * 2 * 1.4).divIf(IBuilder.POSITIVE, 8).mul(0.2 * 17 / 64),
+                mul(divIf(divIf(clamp(sub(mul(mulIf(depth.reference, IBuilder.NEGATIVE, -0.3), 3), 2), -2, 1),
+                        IBuilder.NEGATIVE, 2 * 2 * 1.4), IBuilder.POSITIVE, 8), 0.2 * 17 / 64));
+
+        IBuilder terrain = selector.builder.lerp(low.builder, high.builder).add(rh.builder).mul(2).add(height.builder)
+                .sub(IBuilder.constant(1).signum().mul((x, y, z) -> y));
+        Reference reference = add(mul(add(lerp(selector.reference, low.reference, high.reference), rh.reference), 2), height.reference);
+        Reference signum = (x, y, z) -> Math.signum(1.0);
+        Reference expected = (x, y, z) -> reference.get(x, y, z) - signum.get(x, y, z) * y;
+
+        for (int i = 0; i < 100000; i++) {
+            int x = rand.nextInt(200) - 100, y = rand.nextInt(200) - 100, z = rand.nextInt(200) - 100;
+            assertEqualsExact(expected.get(x, y, z), terrain.get(x, y, z));
+        }
+    }
+
+    @Test public void testRandomChains() {
+        Random rand = new Random(123);
+        for (int chain = 0; chain < 2000; chain++) {
+            Expr expr = randomExpr(rand, 4);
+            for (int i = 0; i < 200; i++) {
+                int x = rand.nextInt(64) - 32, y = rand.nextInt(64) - 32, z = rand.nextInt(64) - 32;
+                double value = expr.builder.get(x, y, z);
+                assertEqualsExact(expr.reference.get(x, y, z), value);
+                assertInBounds(expr.builder, value);
+            }
+        }
+    }
+
+    @Test public void testFillGrid() {
+        Random rand = new Random(321);
+        for (int chain = 0; chain < 2000; chain++) {
+            Expr expr = randomExpr(rand, 4);
+            IBuilder builder = rand.nextBoolean() ? expr.builder : expr.builder.cached2d(16, (x, y, z) -> x + z * 4);
+            boolean is2d = builder != expr.builder;
+            int nx = rand.nextInt(6) + 1, ny = rand.nextInt(4) + 1, nz = rand.nextInt(6) + 1;
+            int stepX = rand.nextInt(5) + 1, stepY = rand.nextInt(9) + 1, stepZ = rand.nextInt(5) + 1;
+            int x0 = rand.nextInt(64) - 32, y0 = rand.nextInt(64) - 32, z0 = rand.nextInt(64) - 32;
+            double[] grid = new double[nx * ny * nz];
+            builder.fillGrid(grid, x0, y0, z0, nx, ny, nz, stepX, stepY, stepZ);
+            int i = 0;
+            for (int iy = 0; iy < ny; iy++) {
+                for (int iz = 0; iz < nz; iz++) {
+                    for (int ix = 0; ix < nx; ix++) {
+                        int x = x0 + ix * stepX, y = y0 + iy * stepY, z = z0 + iz * stepZ;
+                        assertEqualsExact(expr.reference.get(x, is2d ? 0 : y, z), grid[i++]);
+                    }
+                }
+            }
+        }
+    }
+
+    @Test public void testForEachScaled() {
+        Expr expr = randomExpr(new Random(7), 4);
+        Reference ref = expr.reference;
+        // a lambda uses default fillGrid implementation, which calls get for each point
+        IBuilder unoptimized = ref::get;
+        List<double[]> expected = new ArrayList<>();
+        unoptimized.forEachScaled(new Vec3i(-1, -1, -1), new Vec3i(3, 1, 3), new Vec3i(4, 8, 4),
+                (x, y, z, dx, dy, dz, v) -> expected.add(new double[]{x, y, z, dx, dy, dz, v}));
+        List<double[]> actual = new ArrayList<>();
+        expr.builder.forEachScaled(new Vec3i(-1, -1, -1), new Vec3i(3, 1, 3), new Vec3i(4, 8, 4),
+                (x, y, z, dx, dy, dz, v) -> actual.add(new double[]{x, y, z, dx, dy, dz, v}));
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            for (int j = 0; j < expected.get(i).length; j++) {
+                assertEqualsExact(expected.get(i)[j], actual.get(i)[j]);
+            }
+        }
+    }
+
+    @Test public void testConstantFolding() {
+        IBuilder folded = IBuilder.constant(3).mul(2).add(IBuilder.constant(-1)).clamp(0, 4).signum();
+        assertEqualsExact(1, folded.get(0, 0, 0));
+        assertEqualsExact(1, folded.getMinValue());
+        assertEqualsExact(1, folded.getMaxValue());
+    }
+
+    private static Expr randomExpr(Random rand, int depth) {
+        if (depth == 0 || rand.nextInt(4) == 0) {
+            switch (rand.nextInt(4)) {
+                case 0:
+                    return bounded(rand.nextInt(), -rand.nextInt(3), rand.nextInt(3));
+                case 1: {
+                    double c = CONSTANTS[rand.nextInt(CONSTANTS.length)];
+                    return new Expr(IBuilder.constant(c), (x, y, z) -> c);
+                }
+                case 2:
+                    return new Expr((x, y, z) -> y, (x, y, z) -> y);
+                default: {
+                    // unbounded, may return NaN and infinity
+                    int seed = rand.nextInt();
+                    Reference ref = (x, y, z) -> {
+                        int v = hash(seed, x, y, z) & 15;
+                        return v < CONSTANTS.length ? CONSTANTS[v] : v;
+                    };
+                    return new Expr(ref::get, ref);
+                }
+            }
+        }
+        final Expr e = randomExpr(rand, depth - 1);
+        int op = rand.nextInt(12);
+        double c = CONSTANTS[rand.nextInt(CONSTANTS.length)];
+        double c2 = CONSTANTS[rand.nextInt(CONSTANTS.length)];
+        DoublePredicate p = PREDICATES[rand.nextInt(PREDICATES.length)];
+        switch (op) {
+            case 0:
+                return unary(e, rand.nextInt(4), c, c2);
+            case 1:
+                return new Expr(e.builder.clamp(Math.min(c, c2), Math.max(c, c2)), clamp(e.reference, Math.min(c, c2), Math.max(c, c2)));
+            case 2:
+                return new Expr(e.builder.signum(), (x, y, z) -> Math.signum(e.reference.get(x, y, z)));
+            case 3:
+                return new Expr(e.builder.addIf(p, c), (x, y, z) -> {
+                    double v = e.reference.get(x, y, z);
+                    return p.test(v) ? v + c : v;
+                });
+            case 4:
+                return new Expr(e.builder.subIf(p, c), (x, y, z) -> {
+                    double v = e.reference.get(x, y, z);
+                    return p.test(v) ? v - c : v;
+                });
+            case 5:
+                return new Expr(e.builder.mulIf(p, c), mulIf(e.reference, p, c));
+            case 6:
+                return new Expr(e.builder.divIf(p, c), divIf(e.reference, p, c));
+            case 7:
+                return new Expr(e.builder.clampIf(p, Math.min(c, c2), Math.max(c, c2)), (x, y, z) -> {
+                    double v = e.reference.get(x, y, z);
+                    return p.test(v) ? MathHelper.clamp(v, Math.min(c, c2), Math.max(c, c2)) : v;
+                });
+            case 8: {
+                Expr e2 = randomExpr(rand, depth - 1);
+                int binOp = rand.nextInt(4);
+                boolean conditional = rand.nextBoolean();
+                return binary(e, e2, binOp, conditional ? p : null);
+            }
+            default: {
+                Expr low = randomExpr(rand, depth - 1);
+                Expr high = randomExpr(rand, depth - 1);
+                Expr selector = rand.nextBoolean() ? new Expr(e.builder.clamp(0, 1), clamp(e.reference, 0, 1)) : e;
+                return new Expr(selector.builder.lerp(low.builder, high.builder), lerp(selector.reference, low.reference, high.reference));
+            }
+        }
+    }
+
+    private static Expr unary(Expr e, int op, double c, double c2) {
+        switch (op) {
+            case 0:
+                return new Expr(e.builder.mul(c).add(c2), add(mul(e.reference, c), c2));
+            case 1:
+                return new Expr(e.builder.sub(c), sub(e.reference, c));
+            case 2:
+                return new Expr(e.builder.div(c), div(e.reference, c));
+            default:
+                return new Expr(e.builder.add(c).mul(c2), mul(add(e.reference, c), c2));
+        }
+    }
+
+    private static Expr binary(Expr a, Expr b, int op, DoublePredicate p) {
+        Reference ra = a.reference, rb = b.reference;
+        switch (op) {
+            case 0:
+                return new Expr(p == null ? a.builder.add(b.builder) : a.builder.addIf(p, b.builder), (x, y, z) -> {
+                    double v = ra.get(x, y, z);
+                    return p == null || p.test(v) ? v + rb.get(x, y, z) : v;
+                });
+            case 1:
+                return new Expr(p == null ? a.builder.sub(b.builder) : a.builder.subIf(p, b.builder), (x, y, z) -> {
+                    double v = ra.get(x, y, z);
+                    return p == null || p.test(v) ? v - rb.get(x, y, z) : v;
+                });
+            case 2:
+                return new Expr(p == null ? a.builder.mul(b.builder) : a.builder.mulIf(p, b.builder), (x, y, z) -> {
+                    double v = ra.get(x, y, z);
+                    return p == null || p.test(v) ? v * rb.get(x, y, z) : v;
+                });
+            default:
+                return new Expr(p == null ? a.builder.div(b.builder) : a.builder.divIf(p, b.builder), (x, y, z) -> {
+                    double v = ra.get(x, y, z);
+                    return p == null || p.test(v) ? v / rb.get(x, y, z) : v;
+                });
+        }
+    }
+
+    /**
+     * Builder with known bounds, returns values between min and max, including exact 0, -0.0 and the bounds
+     */
+    private static Expr bounded(int seed, double min, double max) {
+        Reference ref = (x, y, z) -> {
+            int h = hash(seed, x, y, z);
+            switch (h & 7) {
+                case 0:
+                    return min <= 0 && max >= 0 ? 0.0 : min;
+                case 1:
+                    return min <= 0 && max >= 0 ? -0.0 : max;
+                case 2:
+                    return min;
+                case 3:
+                    return max;
+                default:
+                    return min + (max - min) * ((h >>> 8) / (double) (1 << 24));
+            }
+        };
+        IBuilder builder = new IBuilder() {
+            @Override public double get(int x, int y, int z) {
+                return ref.get(x, y, z);
+            }
+
+            @Override public double getMinValue() {
+                return min;
+            }
+
+            @Override public double getMaxValue() {
+                return max;
+            }
+        };
+        return new Expr(builder, ref);
+    }
+
+    private static int hash(int seed, int x, int y, int z) {
+        int h = seed * 0x9E3779B9 + x * 73856093 ^ y * 19349663 ^ z * 83492791;
+        h ^= h >>> 16;
+        h *= 0x85EBCA6B;
+        h ^= h >>> 13;
+        return h;
+    }
+
+    private static Reference add(Reference r, double c) {
+        return (x, y, z) -> r.get(x, y, z) + c;
+    }
+
+    private static Reference add(Reference a, Reference b) {
+        return (x, y, z) -> a.get(x, y, z) + b.get(x, y, z);
+    }
+
+    private static Reference sub(Reference r, double c) {
+        return (x, y, z) -> r.get(x, y, z) - c;
+    }
+
+    private static Reference mul(Reference r, double c) {
+        return (x, y, z) -> r.get(x, y, z) * c;
+    }
+
+    private static Reference div(Reference r, double c) {
+        return (x, y, z) -> r.get(x, y, z) / c;
+    }
+
+    private static Reference mulIf(Reference r, DoublePredicate p, double c) {
+        return (x, y, z) -> {
+            double v = r.get(x, y, z);
+            return p.test(v) ? v * c : v;
+        };
+    }
+
+    private static Reference divIf(Reference r, DoublePredicate p, double c) {
+        return (x, y, z) -> {
+            double v = r.get(x, y, z);
+            return p.test(v) ? v / c : v;
+        };
+    }
+
+    private static Reference clamp(Reference r, double min, double max) {
+        return (x, y, z) -> MathHelper.clamp(r.get(x, y, z), min, max);
+    }
+
+    private static Reference lerp(Reference a, Reference low, Reference high) {
+        return (x, y, z) -> MathUtil.lerp(a.get(x, y, z), low.get(x, y, z), high.get(x, y, z));
+    }
+
+    private static void assertInBounds(IBuilder builder, double value) {
+        double min = builder.getMinValue(), max = builder.getMaxValue();
+        if (Double.isFinite(min) && Double.isFinite(max)) {
+            assertTrue(builder + " = " + value + " not in [" + min + ", " + max + "]", value >= min && value <= max);
+        } else if (!Double.isNaN(value)) {
+            assertTrue(builder + " = " + value + " not in [" + min + ", " + max + "]", value >= min && value <= max);
+        }
+    }
+
+    private static void assertEqualsExact(double expected, double value) {
+        assertEquals(Double.doubleToLongBits(expected), Double.doubleToLongBits(value));
+    }
+}
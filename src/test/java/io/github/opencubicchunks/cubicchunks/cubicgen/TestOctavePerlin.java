@@ -0,0 +1,107 @@
+/*
+ *  This file is part of Cubic World Generation, licensed under the MIT License (MIT).
+ *
+ *  Copyright (c) 2015-2020 contributors
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ */
+package io.github.opencubicchunks.cubicchunks.cubicgen;
+
+import static org.junit.Assert.assertEquals;
+
+import com.flowpowered.noise.Utils;
+import com.flowpowered.noise.module.Module;
+import com.flowpowered.noise.module.modifier.ScaleBias;
+import com.flowpowered.noise.module.modifier.ScalePoint;
+import com.flowpowered.noise.module.source.Perlin;
+import io.github.opencubicchunks.cubicchunks.cubicgen.customcubic.builder.OctavePerlin;
+import mcp.MethodsReturnNonnullByDefault;
+import org.junit.Test;
+
+import java.util.Random;
+
+import javax.annotation.ParametersAreNonnullByDefault;
+
+@ParametersAreNonnullByDefault
+@MethodsReturnNonnullByDefault
+public class TestOctavePerlin {
+
+    @Test public void testSameAsFlowNoise() {
+        Random rand = new Random(42);
+        for (int i = 0; i < 200; i++) {
+            testRandomSettings(rand);
+        }
+    }
+
+    @Test public void testSameAsFlowNoiseModifiedGradients() {
+        double[] original = Utils.RANDOM_VECTORS.clone();
+        try {
+            // similar to ConversionUtils.initFlowNoiseHack, which can't run without Minecraft
+            Random rand = new Random(123456789);
+            for (int i = 0; i < Utils.RANDOM_VECTORS.length / 4; i++) {
+                for (int j = 0; j < 3; j++) {
+                    Utils.RANDOM_VECTORS[i * 4 + j] = (rand.nextInt(3) - 1) / 2.0;
+                }
+            }
+            Random settingsRand = new Random(43);
+            for (int i = 0; i < 200; i++) {
+                testRandomSettings(settingsRand);
+            }
+        } finally {
+            System.arraycopy(original, 0, Utils.RANDOM_VECTORS, 0, original.length);
+        }
+    }
+
+    private void testRandomSettings(Random rand) {
+        Perlin perlin = new Perlin();
+        perlin.setSeed(rand.nextInt());
+        perlin.setOctaveCount(rand.nextInt(16) + 1);
+        double fx = rand.nextDouble() * 0.1, fy = rand.nextDouble() * 0.1, fz = rand.nextDouble() * 0.1;
+        if (rand.nextInt(4) == 0) {
+            fy = 0;
+        }
+        int steps = rand.nextInt(3);
+        double[] scales = new double[steps];
+        double[] biases = new double[steps];
+        Module reference = perlin;
+        for (int i = 0; i < steps; i++) {
+            scales[i] = rand.nextDouble() * 4 - 2;
+            biases[i] = rand.nextDouble() * 4 - 2;
+            ScaleBias scaleBias = new ScaleBias();
+            scaleBias.setScale(scales[i]);
+            scaleBias.setBias(biases[i]);
+            scaleBias.setSourceModule(0, reference);
+            reference = scaleBias;
+        }
+        ScalePoint scaled = new ScalePoint();
+        scaled.setXScale(fx);
+        scaled.setYScale(fy);
+        scaled.setZScale(fz);
+        scaled.setSourceModule(0, reference);
+        reference = scaled;
+
+        OctavePerlin noise = new OctavePerlin(perlin, fx, fy, fz, scales, biases);
+        for (int i = 0; i < 500; i++) {
+            // include coordinates far away, where flow-noise wraps the coordinates around
+            int range = rand.nextBoolean() ? 1000 : Integer.MAX_VALUE;
+            int x = rand.nextInt(range) - range / 2, y = rand.nextInt(range) - range / 2, z = rand.nextInt(range) - range / 2;
+            assertEquals(Double.doubleToLongBits(reference.getValue(x, y, z)), Double.doubleToLongBits(noise.getValue(x, y, z)));
+        }
+    }
+}
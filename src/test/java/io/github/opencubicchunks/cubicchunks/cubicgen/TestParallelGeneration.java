@@ -0,0 +1,96 @@
+/*
+ *  This file is part of Cubic World Generation, licensed under the MIT License (MIT).
+ *
+ *  Copyright (c) 2015-2020 contributors
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ */
+package io.github.opencubicchunks.cubicchunks.cubicgen;
+
+import static org.junit.Assert.assertEquals;
+
+import io.github.opencubicchunks.cubicchunks.api.util.CubePos;
+import io.github.opencubicchunks.cubicchunks.api.worldgen.CubePrimer;
+import io.github.opencubicchunks.cubicchunks.cubicgen.customcubic.CustomGeneratorSettings;
+import io.github.opencubicchunks.cubicchunks.cubicgen.customcubic.CustomTerrainGenerator;
+import io.github.opencubicchunks.cubicchunks.cubicgen.testutil.GenerationRegressionHarness;
+import io.github.opencubicchunks.cubicchunks.cubicgen.testutil.MinecraftEnvironment;
+import mcp.MethodsReturnNonnullByDefault;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ForkJoinPool;
+
+import javax.annotation.ParametersAreNonnullByDefault;
+
+@ParametersAreNonnullByDefault
+@MethodsReturnNonnullByDefault
+public class TestParallelGeneration {
+
+    private static final long SEED = 42;
+
+    @Before
+    public void setUp() {
+        MinecraftEnvironment.initCubicBiomes();
+    }
+
+    @Test
+    public void testParallelMatchesSequential() {
+        List<CubePos> positions = new ArrayList<>();
+        for (int x = -2; x <= 1; x++) {
+            for (int z = -2; z <= 1; z++) {
+                for (int y = -3; y <= 2; y++) {
+                    positions.add(new CubePos(x, y, z));
+                }
+            }
+        }
+        // generation order must not matter, so don't submit them in column order
+        Collections.shuffle(positions, new Random(SEED));
+
+        GenerationRegressionHarness harness = new GenerationRegressionHarness();
+        CustomTerrainGenerator sequential = createGenerator();
+        CustomTerrainGenerator parallel = createGenerator();
+
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            Map<CubePos, CompletableFuture<CubePrimer>> futures = parallel.generateCubes(positions, pool);
+            assertEquals(positions.size(), futures.size());
+            for (CubePos pos : positions) {
+                long expected = harness.checksum(sequential.generateCube(pos.getX(), pos.getY(), pos.getZ()));
+                long actual = harness.checksum(futures.get(pos).join());
+                assertEquals("Cube " + pos, expected, actual);
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    private static CustomTerrainGenerator createGenerator() {
+        CustomGeneratorSettings settings = MinecraftEnvironment.parsePreset("");
+        // stronghold starts rely on mixins, which aren't applied in unit tests
+        settings.strongholds = false;
+        return MinecraftEnvironment.createTerrainGenerator(settings, SEED);
+    }
+}
@@ -0,0 +1,204 @@
+/*
+ *  This file is part of Cubic World Generation, licensed under the MIT License (MIT).
+ *
+ *  Copyright (c) 2015-2020 contributors
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ */
+package io.github.opencubicchunks.cubicchunks.cubicgen.testutil;
+
+import io.github.opencubicchunks.cubicchunks.api.util.CubePos;
+import io.github.opencubicchunks.cubicchunks.api.world.ICube;
+import io.github.opencubicchunks.cubicchunks.api.worldgen.CubePrimer;
+import io.github.opencubicchunks.cubicchunks.cubicgen.customcubic.CustomTerrainGenerator;
+import mcp.MethodsReturnNonnullByDefault;
+import net.minecraft.block.state.IBlockState;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import javax.annotation.ParametersAreNonnullByDefault;
+
+/**
+ * Generates a region of cubes and computes a content checksum of each cube, so that changes to the generator
+ * can be verified to produce exactly the same output as before.
+ * <p>
+ * {@link CustomTerrainGenerator#generateCube(int, int, int)} already runs
+ * {@link CustomTerrainGenerator#generateStructures} on the generated cube, so the checksums include caves,
+ * ravines and strongholds (if enabled in the preset).
+ */
+@ParametersAreNonnullByDefault
+@MethodsReturnNonnullByDefault
+public class GenerationRegressionHarness {
+
+    private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    // block state ids depend on registration order, the string representation is stable
+    private final Map<IBlockState, Long> stateHashes = new IdentityHashMap<>();
+
+    /**
+     * Generates all cubes between min and max (inclusive), iterating in x, z, y order (y changes the fastest).
+     *
+     * @param reverse if true, the cubes are generated in reverse order. The result should be the same, this can be used
+     * to verify that caches don't make the output depend on generation order.
+     */
+    public Result run(CustomTerrainGenerator generator, CubePos min, CubePos max, boolean reverse) {
+        List<CubePos> positions = new ArrayList<>();
+        for (int x = min.getX(); x <= max.getX(); x++) {
+            for (int z = min.getZ(); z <= max.getZ(); z++) {
+                for (int y = min.getY(); y <= max.getY(); y++) {
+                    positions.add(new CubePos(x, y, z));
+                }
+            }
+        }
+        if (reverse) {
+            Collections.reverse(positions);
+        }
+        Map<CubePos, Long> checksums = new TreeMap<>(GenerationRegressionHarness::comparePos);
+        long start = System.nanoTime();
+        for (CubePos pos : positions) {
+            CubePrimer primer = generator.generateCube(pos.getX(), pos.getY(), pos.getZ());
+            checksums.put(pos, checksum(primer));
+        }
+        long time = System.nanoTime() - start;
+        return new Result(checksums, time);
+    }
+
+    public long checksum(CubePrimer primer) {
+        long hash = FNV_OFFSET;
+        for (int x = 0; x < ICube.SIZE; x++) {
+            for (int y = 0; y < ICube.SIZE; y++) {
+                for (int z = 0; z < ICube.SIZE; z++) {
+                    hash = (hash ^ stateHash(primer.getBlockState(x, y, z))) * FNV_PRIME;
+                }
+            }
+        }
+        return hash;
+    }
+
+    private long stateHash(IBlockState state) {
+        Long hash = stateHashes.get(state);
+        if (hash == null) {
+            long h = FNV_OFFSET;
+            for (byte b : state.toString().getBytes(StandardCharsets.UTF_8)) {
+                h = (h ^ (b & 0xFF)) * FNV_PRIME;
+            }
+            hash = h;
+            stateHashes.put(state, hash);
+        }
+        return hash;
+    }
+
+    private static int comparePos(CubePos a, CubePos b) {
+        if (a.getX() != b.getX()) {
+            return Integer.compare(a.getX(), b.getX());
+        }
+        if (a.getZ() != b.getZ()) {
+            return Integer.compare(a.getZ(), b.getZ());
+        }
+        return Integer.compare(a.getY(), b.getY());
+    }
+
+    public static class Result {
+
+        private final Map<CubePos, Long> checksums;
+        private final long aggregate;
+        private final long nanos;
+
+        Result(Map<CubePos, Long> checksums, long nanos) {
+            this.checksums = checksums;
+            this.nanos = nanos;
+            long hash = FNV_OFFSET;
+            for (Map.Entry<CubePos, Long> e : checksums.entrySet()) {
+                hash = (hash ^ e.getKey().getX()) * FNV_PRIME;
+                hash = (hash ^ e.getKey().getY()) * FNV_PRIME;
+                hash = (hash ^ e.getKey().getZ()) * FNV_PRIME;
+                hash = (hash ^ e.getValue()) * FNV_PRIME;
+            }
+            this.aggregate = hash;
+        }
+
+        public Map<CubePos, Long> getChecksums() {
+            return Collections.unmodifiableMap(checksums);
+        }
+
+        public long getAggregate() {
+            return aggregate;
+        }
+
+        public double getCubesPerSecond() {
+            return checksums.size() * 1e9 / Math.max(nanos, 1);
+        }
+
+        /**
+         * Converts the result to the golden file format: the aggregate hash in the first line,
+         * followed by one line per cube with cube coordinates and the checksum.
+         */
+        public String toGoldenString() {
+            StringBuilder sb = new StringBuilder();
+            sb.append("aggregate ").append(Long.toHexString(aggregate)).append('\n');
+            for (Map.Entry<CubePos, Long> e : checksums.entrySet()) {
+                CubePos pos = e.getKey();
+                sb.append(pos.getX()).append(' ').append(pos.getY()).append(' ').append(pos.getZ()).append(' ')
+                        .append(Long.toHexString(e.getValue())).append('\n');
+            }
+            return sb.toString();
+        }
+
+        /**
+         * Compares this result with a golden file.
+         *
+         * @return descriptions of all differences, empty if the results are identical
+         */
+        public List<String> compare(String golden) {
+            List<String> errors = new ArrayList<>();
+            Map<CubePos, Long> expected = new TreeMap<>(GenerationRegressionHarness::comparePos);
+            for (String line : golden.split("\n")) {
+                line = line.trim();
+                if (line.isEmpty() || line.startsWith("#") || line.startsWith("aggregate")) {
+                    continue;
+                }
+                String[] parts = line.split(" ");
+                CubePos pos = new CubePos(Integer.parseInt(parts[0]), Integer.parseInt(parts[1]), Integer.parseInt(parts[2]));
+                expected.put(pos, Long.parseUnsignedLong(parts[3], 16));
+            }
+            for (Map.Entry<CubePos, Long> e : expected.entrySet()) {
+                Long actual = checksums.get(e.getKey());
+                if (actual == null) {
+                    errors.add("Cube " + e.getKey() + " not generated");
+                } else if (!actual.equals(e.getValue())) {
+                    errors.add("Cube " + e.getKey() + " checksum " + Long.toHexString(actual)
+                            + ", expected " + Long.toHexString(e.getValue()));
+                }
+            }
+            for (CubePos pos : checksums.keySet()) {
+                if (!expected.containsKey(pos)) {
+                    errors.add("Cube " + pos + " missing in golden file");
+                }
+            }
+            return errors;
+        }
+    }
+}
@@ -23,7 +23,31 @@
  */
 package io.github.opencubicchunks.cubicchunks.cubicgen.testutil;
 
+import static org.mockito.Mockito.when;
+
+import blue.endless.jankson.api.DeserializationException;
+import io.github.opencubicchunks.cubicchunks.api.world.ICubicWorld;
+import io.github.opencubicchunks.cubicchunks.cubicgen.CustomCubicMod;
+import io.github.opencubicchunks.cubicchunks.cubicgen.common.biome.CubicBiome;
+import io.github.opencubicchunks.cubicchunks.cubicgen.customcubic.CustomCubicWorldType;
+import io.github.opencubicchunks.cubicchunks.cubicgen.customcubic.CustomGeneratorSettings;
+import io.github.opencubicchunks.cubicchunks.cubicgen.customcubic.CustomTerrainGenerator;
+import io.github.opencubicchunks.cubicchunks.cubicgen.preset.fixer.CustomGeneratorSettingsFixer;
 import net.minecraft.init.Bootstrap;
+import net.minecraft.world.GameType;
+import net.minecraft.world.World;
+import net.minecraft.world.WorldSettings;
+import net.minecraft.world.WorldType;
+import net.minecraft.world.biome.BiomeProvider;
+import net.minecraft.world.storage.WorldInfo;
+import org.apache.logging.log4j.LogManager;
+import org.mockito.Mockito;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
 
 public class MinecraftEnvironment {
     private static boolean isInit = false;
@@ -38,4 +62,88 @@ public class MinecraftEnvironment {
         isInit = true;
         Bootstrap.register();
     }
+
+    /**
+     * Initializes cubic biomes, needed to create terrain generators. Biomes get default block replacers and decorators.
+     */
+    public static void initCubicBiomes() {
+        init();
+        if (CustomCubicMod.LOGGER == null) {
+            CustomCubicMod.LOGGER = LogManager.getLogger("CustomCubicModTest");
+        }
+        if (CubicBiome.REGISTRY == null) {
+            CubicBiome.init();
+        }
+        CubicBiome.postInit();
+    }
+
+    /**
+     * Creates a mock world with the given seed, that can be used to create world generators without running Minecraft
+     */
+    public static World createWorld(long seed, String generatorOptions) {
+        World world = Mockito.mock(World.class, Mockito.withSettings().extraInterfaces(ICubicWorld.class));
+        WorldSettings settings = new WorldSettings(seed, GameType.SURVIVAL, true, false, WorldType.DEFAULT);
+        settings.setGeneratorOptions(generatorOptions);
+        WorldInfo worldInfo = new WorldInfo(settings, "test");
+        when(world.getWorldInfo()).thenReturn(worldInfo);
+        when(world.getSeed()).thenReturn(seed);
+        return world;
+    }
+
+    /**
+     * Creates a terrain generator for a mock world, without running Minecraft.
+     *
+     * @param presetJson the preset, in any version supported by the preset fixer. Empty string means default preset.
+     * @param seed world seed
+     */
+    public static CustomTerrainGenerator createTerrainGenerator(String presetJson, long seed) {
+        return createTerrainGenerator(parsePreset(presetJson), seed);
+    }
+
+    /**
+     * Creates a terrain generator for a mock world, without running Minecraft.
+     *
+     * @param settings the generator settings
+     * @param seed world seed
+     */
+    public static CustomTerrainGenerator createTerrainGenerator(CustomGeneratorSettings settings, long seed) {
+        initCubicBiomes();
+        World world = createWorld(seed, settings.toJsonObject().toJson());
+        BiomeProvider biomeProvider = CustomCubicWorldType.makeBiomeProvider(world, settings);
+        when(world.getBiomeProvider()).thenReturn(biomeProvider);
+        return new CustomTerrainGenerator(world, biomeProvider, settings, seed);
+    }
+
+    /**
+     * Converts a preset in any version supported by the preset fixer to generator settings.
+     * Empty string means default preset.
+     */
+    public static CustomGeneratorSettings parsePreset(String presetJson) {
+        initCubicBiomes();
+        try {
+            return CustomGeneratorSettingsFixer.INSTANCE.fixPreset(presetJson);
+        } catch (DeserializationException e) {
+            throw new IllegalArgumentException("Invalid preset", e);
+        }
+    }
+
+    /**
+     * Reads a resource from test resources as string, for example a preset
+     */
+    public static String readResource(String path) {
+        try (InputStream stream = MinecraftEnvironment.class.getResourceAsStream(path)) {
+            if (stream == null) {
+                throw new IllegalArgumentException("Resource " + path + " not found");
+            }
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[4096];
+            int read;
+            while ((read = stream.read(buffer)) >= 0) {
+                out.write(buffer, 0, read);
+            }
+            return new String(out.toByteArray(), StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
 }
@@ -0,0 +1,89 @@
+/*
+ *  This file is part of Cubic World Generation, licensed under the MIT License (MIT).
+ *
+ *  Copyright (c) 2015-2020 contributors
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ */
+package io.github.opencubicchunks.cubicchunks.cubicgen.util;
+
+import static org.junit.Assert.assertEquals;
+
+import io.github.opencubicchunks.cubicchunks.cubicgen.cache.CachePolicy;
+import io.github.opencubicchunks.cubicchunks.cubicgen.cache.LongKeyedDoubleCache;
+import io.github.opencubicchunks.cubicchunks.cubicgen.cache.LongKeyedObjectCache;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+public class TestCachePolicy {
+
+    @Test
+    public void testSetsAndWays() {
+        assertEquals(1, CachePolicy.DIRECT_MAPPED.ways(9));
+        assertEquals(9, CachePolicy.DIRECT_MAPPED.sets(9));
+        assertEquals(2, CachePolicy.TWO_WAY.ways(9));
+        assertEquals(4, CachePolicy.TWO_WAY.sets(9));
+        assertEquals(4, CachePolicy.FOUR_WAY.ways(256));
+        assertEquals(64, CachePolicy.FOUR_WAY.sets(256));
+        assertEquals(9, CachePolicy.LRU.ways(9));
+        assertEquals(1, CachePolicy.LRU.sets(9));
+        assertEquals(1, CachePolicy.FOUR_WAY.ways(1));
+    }
+
+    @Test
+    public void testAlternatingCollidingKeys() {
+        List<Long> computed = new ArrayList<>();
+        // all keys hash to the same set
+        LongKeyedDoubleCache cache = LongKeyedDoubleCache.create(8, CachePolicy.TWO_WAY, k -> 0, k -> {
+            computed.add(k);
+            return k * 2;
+        });
+        for (int i = 0; i < 10; i++) {
+            assertEquals(2.0, cache.get(1), 0);
+            assertEquals(4.0, cache.get(2), 0);
+        }
+        assertEquals(2, computed.size());
+
+        // least recently used key is evicted
+        cache.get(1);
+        cache.get(3);
+        computed.clear();
+        cache.get(1);
+        cache.get(2);
+        assertEquals(1, computed.size());
+        assertEquals(2L, (long) computed.get(0));
+    }
+
+    @Test
+    public void testMatchesSourceForAllPolicies() {
+        for (CachePolicy policy : CachePolicy.values()) {
+            LongKeyedObjectCache<Long> objects = LongKeyedObjectCache.create(16, policy, k -> (int) k, k -> k * 3);
+            LongKeyedDoubleCache doubles = LongKeyedDoubleCache.create(16, policy, k -> (int) k, k -> k * 3);
+            Random rand = new Random(42);
+            for (int i = 0; i < 10000; i++) {
+                long key = rand.nextInt(40) - 20;
+                assertEquals(key * 3, (long) objects.get(key));
+                assertEquals(key * 3, doubles.get(key), 0);
+            }
+        }
+    }
+}
@@ -0,0 +1,113 @@
+/*
+ *  This file is part of Cubic World Generation, licensed under the MIT License (MIT).
+ *
+ *  Copyright (c) 2015-2020 contributors
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ */
+package io.github.opencubicchunks.cubicchunks.cubicgen.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import io.github.opencubicchunks.cubicchunks.cubicgen.cache.CacheStats;
+import io.github.opencubicchunks.cubicchunks.cubicgen.cache.LongKeyedDoubleCache;
+import io.github.opencubicchunks.cubicchunks.cubicgen.cache.XYZKeyedClockDoubleCache;
+import io.github.opencubicchunks.cubicchunks.cubicgen.profiler.GenerationProfiler;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TestCacheStats {
+
+    @Before
+    public void setUp() {
+        GenerationProfiler.setEnabled(true);
+        CacheStats.reset();
+    }
+
+    @After
+    public void tearDown() {
+        GenerationProfiler.setEnabled(false);
+    }
+
+    @Test
+    public void testDirectMappedCollisions() {
+        LongKeyedDoubleCache cache = LongKeyedDoubleCache.create(4, k -> (int) k, k -> k).named("test.directMapped");
+        cache.get(0);
+        cache.get(0);
+        // 4 maps to the same slot as 0
+        cache.get(4);
+        cache.get(0);
+        CacheStats.Snapshot stats = get("test.directMapped");
+        assertEquals(1, stats.getHits());
+        assertEquals(3, stats.getMisses());
+        assertEquals(2, stats.getEvictions());
+    }
+
+    @Test
+    public void testClockEvictions() {
+        XYZKeyedClockDoubleCache cache = XYZKeyedClockDoubleCache.create(2, (x, y, z) -> x).named("test.clock");
+        cache.get(0, 0, 0);
+        cache.get(1, 0, 0);
+        cache.get(1, 0, 0);
+        cache.get(2, 0, 0);
+        CacheStats.Snapshot stats = get("test.clock");
+        assertEquals(1, stats.getHits());
+        assertEquals(3, stats.getMisses());
+        assertEquals(1, stats.getEvictions());
+    }
+
+    @Test
+    public void testDisabled() {
+        GenerationProfiler.setEnabled(false);
+        LongKeyedDoubleCache cache = LongKeyedDoubleCache.create(4, k -> (int) k, k -> k).named("test.disabled");
+        cache.get(0);
+        cache.get(0);
+        assertTrue(CacheStats.snapshot().stream().noneMatch(s -> s.getName().equals("test.disabled")));
+    }
+
+    @Test
+    public void testOnlyFinalNameRegistered() {
+        LongKeyedDoubleCache cache = LongKeyedDoubleCache.create(4, k -> (int) k, k -> k).named("test.finalName");
+        cache.get(0);
+        cache.get(0);
+        assertEquals(1, get("test.finalName").getHits());
+        assertTrue(CacheStats.snapshot().stream().noneMatch(s -> s.getName().equals("LongKeyedDoubleCache")));
+    }
+
+    @Test
+    public void testResetFromOtherThread() throws InterruptedException {
+        LongKeyedDoubleCache cache = LongKeyedDoubleCache.create(4, k -> (int) k, k -> k).named("test.reset");
+        cache.get(0);
+        cache.get(0);
+        Thread thread = new Thread(CacheStats::reset);
+        thread.start();
+        thread.join();
+        assertTrue(CacheStats.snapshot().stream().noneMatch(s -> s.getName().equals("test.reset")));
+        cache.get(0);
+        assertEquals(1, get("test.reset").getHits());
+        assertEquals(0, get("test.reset").getMisses());
+    }
+
+    private static CacheStats.Snapshot get(String name) {
+        return CacheStats.snapshot().stream().filter(s -> s.getName().equals(name)).findFirst()
+                .orElseThrow(() -> new AssertionError("No stats for " + name));
+    }
+}
@@ -0,0 +1,105 @@
+/*
+ *  This file is part of Cubic World Generation, licensed under the MIT License (MIT).
+ *
+ *  Copyright (c) 2015-2020 contributors
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ */
+package io.github.opencubicchunks.cubicchunks.cubicgen.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import io.github.opencubicchunks.cubicchunks.api.util.CubePos;
+import io.github.opencubicchunks.cubicchunks.cubicgen.customcubic.structure.feature.CubePosIndex;
+import org.junit.Test;
+
+import java.util.Random;
+
+public class TestCubePosIndex {
+
+    @Test
+    public void testContains() {
+        CubePos[] positions = {new CubePos(0, 0, 0), new CubePos(-5, 3, 100), new CubePos(1000, -20, -1000)};
+        CubePosIndex index = new CubePosIndex(positions);
+        for (CubePos pos : positions) {
+            assertTrue(index.contains(pos.getX(), pos.getY(), pos.getZ()));
+        }
+        assertFalse(index.contains(0, 1, 0));
+        assertFalse(index.contains(-5, 3, -100));
+        assertFalse(index.contains(1000, 20, -1000));
+    }
+
+    @Test
+    public void testContainsAliasingCoordinates() {
+        // these would be equal if coordinates were packed into 21 bits each
+        CubePosIndex index = new CubePosIndex(new CubePos[]{new CubePos(-1875000, 1 << 21, 5), new CubePos(0, 7, 0)});
+        assertTrue(index.contains(-1875000, 1 << 21, 5));
+        assertFalse(index.contains(222152, 1 << 21, 5));
+        assertFalse(index.contains(-1875000, 0, 5));
+        assertFalse(index.contains(-1875000, 1 << 21, 5 + (1 << 21)));
+        assertTrue(index.contains(0, 7, 0));
+        assertFalse(index.contains(0, 7 + (1 << 21), 0));
+    }
+
+    @Test
+    public void testNearestMatchesLinearSearch() {
+        Random rand = new Random(42);
+        for (int test = 0; test < 50; test++) {
+            int range = 1 + rand.nextInt(5000);
+            CubePos[] positions = new CubePos[1 + rand.nextInt(300)];
+            for (int i = 0; i < positions.length; i++) {
+                positions[i] = new CubePos(rand.nextInt(range * 2) - range, rand.nextInt(64) - 32, rand.nextInt(range * 2) - range);
+            }
+            CubePosIndex index = new CubePosIndex(positions);
+            for (int query = 0; query < 200; query++) {
+                // also query far outside of the area with positions
+                int queryRange = range * 16 * (query % 4 == 0 ? 10 : 1);
+                int x = rand.nextInt(queryRange * 2) - queryRange;
+                int y = rand.nextInt(2048) - 1024;
+                int z = rand.nextInt(queryRange * 2) - queryRange;
+                assertEquals(nearestLinear(positions, x, y, z), index.nearest(x, y, z));
+            }
+        }
+    }
+
+    @Test
+    public void testNearestPrefersLowestIndex() {
+        CubePos[] positions = {new CubePos(2, 0, 0), new CubePos(-2, 0, 0), new CubePos(0, 0, 2)};
+        CubePosIndex index = new CubePosIndex(positions);
+        assertEquals(0, index.nearest(8, 8, 8));
+    }
+
+    private static int nearestLinear(CubePos[] positions, int x, int y, int z) {
+        int best = -1;
+        double bestDist = 0;
+        for (int i = 0; i < positions.length; i++) {
+            double dx = (double) positions[i].getXCenter() - x;
+            double dy = (double) positions[i].getYCenter() - y;
+            double dz = (double) positions[i].getZCenter() - z;
+            double dist = dx * dx + dy * dy + dz * dz;
+            if (best < 0 || dist < bestDist) {
+                best = i;
+                bestDist = dist;
+            }
+        }
+        return best;
+    }
+}
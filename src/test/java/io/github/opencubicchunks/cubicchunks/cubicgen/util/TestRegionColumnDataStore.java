@@ -0,0 +1,100 @@
+/*
+ *  This file is part of Cubic World Generation, licensed under the MIT License (MIT).
+ *
+ *  Copyright (c) 2015-2020 contributors
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ */
+package io.github.opencubicchunks.cubicchunks.cubicgen.util;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import io.github.opencubicchunks.cubicchunks.cubicgen.cache.RegionColumnDataStore;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.Random;
+
+public class TestRegionColumnDataStore {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testReadWrittenColumns() throws Exception {
+        File dir = new File(folder.getRoot(), RegionColumnDataStore.directoryName("42;{}"));
+        RegionColumnDataStore store = new RegionColumnDataStore(dir, "42;{}");
+        Random rand = new Random(42);
+        // columns in different regions, including negative coordinates
+        int[][] positions = {{0, 0}, {31, 31}, {32, 0}, {-1, -1}, {-33, 100}};
+        byte[][] biomes = new byte[positions.length][RegionColumnDataStore.BIOMES_SIZE];
+        double[][][] values = new double[positions.length][RegionColumnDataStore.VALUE_ARRAYS][RegionColumnDataStore.VALUES_SIZE];
+        for (int i = 0; i < positions.length; i++) {
+            rand.nextBytes(biomes[i]);
+            for (double[] array : values[i]) {
+                for (int j = 0; j < array.length; j++) {
+                    array[j] = rand.nextGaussian();
+                }
+            }
+            store.write(positions[i][0], positions[i][1], biomes[i], values[i]);
+        }
+
+        // a new store reads columns written by the previous one from disk
+        RegionColumnDataStore reopened = new RegionColumnDataStore(dir, "42;{}");
+        for (RegionColumnDataStore s : new RegionColumnDataStore[]{store, reopened}) {
+            for (int i = 0; i < positions.length; i++) {
+                byte[] readBiomes = new byte[RegionColumnDataStore.BIOMES_SIZE];
+                double[][] readValues = new double[RegionColumnDataStore.VALUE_ARRAYS][RegionColumnDataStore.VALUES_SIZE];
+                assertTrue(s.read(positions[i][0], positions[i][1], readBiomes, readValues));
+                assertArrayEquals(biomes[i], readBiomes);
+                for (int j = 0; j < readValues.length; j++) {
+                    assertArrayEquals(values[i][j], readValues[j], 0);
+                }
+            }
+        }
+        double[][] unused = new double[RegionColumnDataStore.VALUE_ARRAYS][RegionColumnDataStore.VALUES_SIZE];
+        assertFalse(reopened.read(1, 0, new byte[RegionColumnDataStore.BIOMES_SIZE], unused));
+        assertFalse(reopened.read(-32, -32, new byte[RegionColumnDataStore.BIOMES_SIZE], unused));
+    }
+
+    @Test
+    public void testDifferentKey() throws Exception {
+        File dir = folder.newFolder();
+        byte[] biomes = new byte[RegionColumnDataStore.BIOMES_SIZE];
+        double[][] values = new double[RegionColumnDataStore.VALUE_ARRAYS][RegionColumnDataStore.VALUES_SIZE];
+        RegionColumnDataStore store = new RegionColumnDataStore(dir, "42;{\"a\":1}");
+        store.write(0, 0, biomes, values);
+        store.close();
+        assertFalse(store.read(0, 0, biomes, values));
+
+        // same directory, as if directory names collided
+        RegionColumnDataStore other = new RegionColumnDataStore(dir, "42;{\"a\":2}");
+        assertFalse(other.read(0, 0, biomes, values));
+        other.write(1, 0, biomes, values);
+        other.close();
+
+        RegionColumnDataStore reopened = new RegionColumnDataStore(dir, "42;{\"a\":1}");
+        assertFalse(reopened.read(0, 0, biomes, values));
+        assertFalse(reopened.read(1, 0, biomes, values));
+    }
+}
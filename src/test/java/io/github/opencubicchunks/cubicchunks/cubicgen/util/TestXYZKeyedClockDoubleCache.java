@@ -0,0 +1,91 @@
+/*
+ *  This file is part of Cubic World Generation, licensed under the MIT License (MIT).
+ *
+ *  Copyright (c) 2015-2020 contributors
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ */
+package io.github.opencubicchunks.cubicchunks.cubicgen.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import io.github.opencubicchunks.cubicchunks.cubicgen.cache.XYZKeyedClockDoubleCache;
+import org.junit.Test;
+
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class TestXYZKeyedClockDoubleCache {
+
+    @Test public void testRepeatedGetComputesOnce() {
+        AtomicInteger calls = new AtomicInteger();
+        XYZKeyedClockDoubleCache cache = XYZKeyedClockDoubleCache.create(100, (x, y, z) -> {
+            calls.incrementAndGet();
+            return x + y * 1000.0 + z * 1000000.0;
+        });
+        for (int i = 0; i < 10; i++) {
+            for (int x = 0; x < 4; x++) {
+                for (int z = 0; z < 4; z++) {
+                    assertEqualsExact(x + 5 * 1000.0 + z * 1000000.0, cache.get(x, 5, z));
+                }
+            }
+        }
+        assertEquals(16, calls.get());
+    }
+
+    @Test public void testCapacityIsRespected() {
+        XYZKeyedClockDoubleCache cache = XYZKeyedClockDoubleCache.create(37, (x, y, z) -> x * 31.0 + y * 17.0 + z);
+        Random rand = new Random(42);
+        for (int i = 0; i < 100000; i++) {
+            int x = rand.nextInt(20) - 10, y = rand.nextInt(20) - 10, z = rand.nextInt(20) - 10;
+            assertEqualsExact(x * 31.0 + y * 17.0 + z, cache.get(x, y, z));
+            assertTrue(cache.size() <= 37);
+        }
+        assertEquals(37, cache.size());
+    }
+
+    @Test public void testFrequentlyUsedEntryIsKept() {
+        AtomicInteger calls = new AtomicInteger();
+        XYZKeyedClockDoubleCache cache = XYZKeyedClockDoubleCache.create(16, (x, y, z) -> {
+            if (x == 0 && y == 0 && z == 0) {
+                calls.incrementAndGet();
+            }
+            return x;
+        });
+        for (int i = 1; i < 1000; i++) {
+            cache.get(0, 0, 0);
+            cache.get(i, -i, i * 3);
+        }
+        assertEquals(1, calls.get());
+    }
+
+    @Test public void testZeroCapacity() {
+        AtomicInteger calls = new AtomicInteger();
+        XYZKeyedClockDoubleCache cache = XYZKeyedClockDoubleCache.create(0, (x, y, z) -> calls.incrementAndGet());
+        cache.get(1, 2, 3);
+        cache.get(1, 2, 3);
+        assertEquals(2, calls.get());
+        assertEquals(0, cache.size());
+    }
+
+    private void assertEqualsExact(double expected, double value) {
+        assertEquals(Double.doubleToLongBits(expected), Double.doubleToLongBits(value));
+    }
+}